@@ -0,0 +1,50 @@
+#!/usr/bin/env bash
+# Runs loadtest/statements.js against the packaged application twice, once on platform threads and once on virtual
+# threads, and prints the generate and download latencies side by side. Needs k6, a built jar (./mvnw -DskipTests
+# package) and the compose stack (docker compose up -d postgres minio).
+# Each run also records target/loadtest-<mode>.jfr; open it in JMC or: jfr print --events jdk.VirtualThreadPinned
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+JAR=$(ls target/secure-file-statement-delivery-*.jar | grep -v plain | head -1)
+BASE_URL=${BASE_URL:-https://localhost:8443}
+mkdir -p loadtest/results
+
+run() {
+	local mode=$1 virtual=$2
+	echo "== $mode threads"
+	java -XX:StartFlightRecording=filename=target/loadtest-$mode.jfr,settings=profile \
+		-jar "$JAR" \
+		--spring.threads.virtual.enabled="$virtual" \
+		--config.rate_limit.requests_per_minute=1000000 \
+		> "target/loadtest-$mode.log" 2>&1 &
+	local pid=$!
+	trap "kill $pid 2>/dev/null || true" EXIT
+	until curl -ksf "$BASE_URL/actuator/health" > /dev/null; do
+		kill -0 $pid 2>/dev/null || { echo "Application failed to start, see target/loadtest-$mode.log"; exit 1; }
+		sleep 1
+	done
+	k6 run -e BASE_URL="$BASE_URL" -e RESULT="loadtest/results/$mode" loadtest/statements.js || true
+	kill $pid
+	wait $pid || true
+	trap - EXIT
+}
+
+run platform false
+run virtual true
+
+printf '\n%-10s %-9s %10s %10s %10s %10s %8s\n' mode scenario req/s p50_ms p95_ms p99_ms failed
+for mode in platform virtual; do
+	for scenario in generate download; do
+		jq -r --arg mode "$mode" --arg s "$scenario" '
+			.metrics as $m
+			| [$mode, $s,
+			   ($m["http_reqs{scenario:\($s)}"].values.rate // 0),
+			   $m["http_req_duration{scenario:\($s)}"].values["p(50)"],
+			   $m["http_req_duration{scenario:\($s)}"].values["p(95)"],
+			   $m["http_req_duration{scenario:\($s)}"].values["p(99)"],
+			   $m["http_req_failed{scenario:\($s)}"].values.rate]
+			| "\(.[0])\t\(.[1])\t\(.[2]|floor)\t\(.[3]|floor)\t\(.[4]|floor)\t\(.[5]|floor)\t\(.[6]*100|floor)%"' \
+			"loadtest/results/$mode.json" | awk -F'\t' '{ printf "%-10s %-9s %10s %10s %10s %10s %8s\n", $1, $2, $3, $4, $5, $6, $7 }'
+	done
+done
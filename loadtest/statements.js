@@ -0,0 +1,70 @@
+// Generate and download load for the statement endpoints, used to compare platform and virtual threads.
+// See compare-threading.sh; run on its own with: k6 run -e BASE_URL=https://localhost:8443 loadtest/statements.js
+import http from 'k6/http';
+import encoding from 'k6/encoding';
+import { check } from 'k6';
+import { textSummary } from 'https://jslib.k6.io/k6-summary/0.0.2/index.js';
+
+const BASE_URL = __ENV.BASE_URL || 'https://localhost:8443';
+const AUTHORIZATION = 'Basic ' + encoding.b64encode(`${__ENV.API_USER || 'postmanuser'}:${__ENV.API_PASSWORD || 'postmanuserpass'}`);
+const ACCOUNT_IDS = (__ENV.ACCOUNT_IDS || '1000000001,1000000002,1000000003').split(',');
+const VUS = parseInt(__ENV.VUS || '400');
+const DURATION = __ENV.DURATION || '2m';
+const DOWNLOAD_TOKENS = parseInt(__ENV.DOWNLOAD_TOKENS || '50');
+
+export const options = {
+	insecureSkipTLSVerify: true,
+	setupTimeout: '5m',
+	scenarios: {
+		generate: { executor: 'constant-vus', exec: 'generate', vus: VUS, duration: DURATION },
+		download: { executor: 'constant-vus', exec: 'download', vus: VUS, duration: DURATION },
+	},
+	summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+	// Per-scenario sub-metrics only appear in the summary when a threshold names them
+	thresholds: {
+		'http_reqs{scenario:generate}': ['count>=0'],
+		'http_reqs{scenario:download}': ['count>=0'],
+		'http_req_failed{scenario:generate}': ['rate<0.01'],
+		'http_req_failed{scenario:download}': ['rate<0.01'],
+		'http_req_duration{scenario:generate}': ['p(95)>=0'],
+		'http_req_duration{scenario:download}': ['p(95)>=0'],
+	},
+};
+
+function createStatement(accountId) {
+	return http.post(`${BASE_URL}/api/v1/statements/create`, JSON.stringify({ accountId: Number(accountId) }), {
+		headers: { 'Content-Type': 'application/json', Authorization: AUTHORIZATION },
+		tags: { name: 'create' },
+	});
+}
+
+// Statements for the download scenario, so it measures downloads alone
+export function setup() {
+	const tokens = [];
+	for (let i = 0; i < DOWNLOAD_TOKENS; i++) {
+		const response = createStatement(ACCOUNT_IDS[i % ACCOUNT_IDS.length]);
+		if (response.status !== 201) throw new Error(`Could not create a statement for the download scenario: HTTP ${response.status}`);
+		// The response carries the public link; its last path segment is the token
+		tokens.push(response.json('retrievalLink').split('/').pop());
+	}
+	return { tokens };
+}
+
+export function generate() {
+	const response = createStatement(ACCOUNT_IDS[Math.floor(Math.random() * ACCOUNT_IDS.length)]);
+	check(response, { 'statement created': (r) => r.status === 201 });
+}
+
+export function download(data) {
+	const token = data.tokens[Math.floor(Math.random() * data.tokens.length)];
+	const response = http.get(`${BASE_URL}/api/v1/public/${token}`, { tags: { name: 'download' } });
+	check(response, { 'statement downloaded': (r) => r.status === 200 });
+}
+
+export function handleSummary(data) {
+	const result = __ENV.RESULT || 'loadtest/results/summary';
+	return {
+		stdout: textSummary(data, { indent: ' ', enableColors: true }),
+		[`${result}.json`]: JSON.stringify(data, null, 2),
+	};
+}
@@ -0,0 +1,116 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.MDC;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import za.co.cbank.securefilestatementdelivery.Audit.annotation.Auditable;
+import za.co.cbank.securefilestatementdelivery.Audit.aspect.aspect.AuditAspect;
+import za.co.cbank.securefilestatementdelivery.Audit.service.AuditLogService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of auditing a call shaped like {@code TransactionService.getTransactionPage}:
+ * no aspect, the aspect as it was (parse and build a StandardEvaluationContext per call), and the current aspect.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuditAspectBenchmark {
+
+	private TransactionLookup direct;
+	private TransactionLookup previousAspect;
+	private TransactionLookup currentAspect;
+	private int accountId = 1000000001;
+
+	@Setup
+	public void setUp() {
+		AuditLogService auditLogService = new DiscardingAuditLogService();
+		direct = new TransactionLookup();
+		previousAspect = proxy(new PreviousAuditAspect(auditLogService));
+		currentAspect = proxy(new AuditAspect(auditLogService));
+	}
+
+	@Benchmark
+	public Integer noAspect() {
+		return direct.getTransactionsByAccountId(accountId);
+	}
+
+	@Benchmark
+	public Integer previousAspect() {
+		return previousAspect.getTransactionsByAccountId(accountId);
+	}
+
+	@Benchmark
+	public Integer currentAspect() {
+		return currentAspect.getTransactionsByAccountId(accountId);
+	}
+
+	private TransactionLookup proxy(Object aspect) {
+		AspectJProxyFactory factory = new AspectJProxyFactory(new TransactionLookup());
+		factory.setProxyTargetClass(true);
+		factory.addAspect(aspect);
+		return factory.getProxy();
+	}
+
+	public static class TransactionLookup {
+		@Auditable(action = "Transactions fetched by accountId", detail = "#accountId")
+		public Integer getTransactionsByAccountId(Integer accountId) {
+			return accountId;
+		}
+	}
+
+	static class DiscardingAuditLogService extends AuditLogService {
+		DiscardingAuditLogService() {
+			super(null);
+		}
+
+		@Override
+		public void logAction(String traceId, String username, String ipAddress, String metadata) {
+		}
+	}
+
+	//AuditAspect before per-method caching, kept here for comparison
+	@Aspect
+	public static class PreviousAuditAspect {
+		private final AuditLogService auditLogService;
+		private final ExpressionParser parser = new SpelExpressionParser();
+
+		PreviousAuditAspect(AuditLogService auditLogService) {
+			this.auditLogService = auditLogService;
+		}
+
+		@AfterReturning(value = "@annotation(auditable)", returning = "result")
+		public void auditAction(JoinPoint joinPoint, Auditable auditable, Object result) {
+			String detail = auditable.detail();
+
+			if (!detail.isEmpty()) {
+				StandardEvaluationContext context = new StandardEvaluationContext();
+				Object[] args = joinPoint.getArgs();
+				String[] paramNames = ((MethodSignature) joinPoint.getSignature()).getParameterNames();
+
+				for (int i = 0; i < args.length; i++) {
+					context.setVariable(paramNames[i], args[i]);
+				}
+
+				detail = parser.parseExpression(detail).getValue(context, String.class);
+			}
+			auditLogService.logAction(
+					MDC.get("traceId"),
+					MDC.get("currentUser"),
+					MDC.get("ipAddress"),
+					auditable.action() + ": " + detail
+			);
+		}
+	}
+}
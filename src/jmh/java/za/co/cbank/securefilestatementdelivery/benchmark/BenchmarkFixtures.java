@@ -0,0 +1,71 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.service.FileCreationService;
+import za.co.cbank.securefilestatementdelivery.service.HtmlStatementRenderer;
+import za.co.cbank.securefilestatementdelivery.service.PdfRenderingResources;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+final class BenchmarkFixtures {
+
+	private BenchmarkFixtures() {
+	}
+
+	//Mirrors the Spring Boot Thymeleaf auto-configuration, including the parsed template cache
+	static TemplateEngine templateEngine() {
+		ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+		resolver.setPrefix("templates/");
+		resolver.setSuffix(".html");
+		resolver.setTemplateMode(TemplateMode.HTML);
+		resolver.setCharacterEncoding("UTF-8");
+		resolver.setCacheable(true);
+		SpringTemplateEngine engine = new SpringTemplateEngine();
+		engine.setTemplateResolver(resolver);
+		return engine;
+	}
+
+	static FileCreationService fileCreationService() {
+		return new FileCreationService(new PdfRenderingResources("passwd", List.of()));
+	}
+
+	static HtmlStatementRenderer htmlStatementRenderer(TemplateEngine templateEngine) {
+		return new HtmlStatementRenderer(templateEngine, fileCreationService());
+	}
+
+	static CustomerAccount customerAccount() {
+		return CustomerAccount.builder()
+				.accountId(1000000001)
+				.firstName("John")
+				.lastName("Doe")
+				.emailAddress("john.doe@cbank.co.za")
+				.cellphoneNumber("0712345678")
+				.idNumber("9001010000083")
+				.build();
+	}
+
+	static List<Transaction> transactions(int count) {
+		CustomerAccount account = customerAccount();
+		List<Transaction> transactions = new ArrayList<>(count);
+		LocalDate postDate = LocalDate.of(2015, 1, 1);
+		for (int i = 0; i < count; i++) {
+			transactions.add(Transaction.builder()
+					.transactionId(i + 1)
+					.postDate(postDate.plusDays(i / 20))
+					.amount(BigDecimal.valueOf(10_000 + (i * 37L) % 90_000, 2))
+					.description("POS PURCHASE " + (i % 500) + " CBANK MERCHANT")
+					.drOrCr(i % 3 == 0 ? "CR" : "DR")
+					.customerAccount(account)
+					.build());
+		}
+		return transactions;
+	}
+}
@@ -0,0 +1,59 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import za.co.cbank.securefilestatementdelivery.dto.TransactionDTO;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Statement;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.mapper.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MapStruct mapping as done by the transaction, statement and customer account endpoints.
+ * {@code transactionsToDto} maps a whole account's history the way {@code TransactionService} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	public int transactionCount;
+
+	private final TransactionMapper transactionMapper = new TransactionMapperImpl();
+	private final StatementMapper statementMapper = new StatementMapperImpl();
+	private final CustomerAccountMapper customerAccountMapper = new CustomerAccountMapperImpl();
+
+	private List<Transaction> transactions;
+	private Statement statement;
+	private CustomerAccount customerAccount;
+
+	@Setup
+	public void setUp() {
+		transactions = BenchmarkFixtures.transactions(transactionCount);
+		customerAccount = BenchmarkFixtures.customerAccount();
+		statement = Statement.builder()
+				.statementId(1)
+				.customerAccount(customerAccount)
+				.filename("49a26347453d40b1a9bcb4939f259828.pdf")
+				.build();
+	}
+
+	@Benchmark
+	public List<TransactionDTO> transactionsToDto() {
+		return transactions.stream().map(transactionMapper::toDto).toList();
+	}
+
+	@Benchmark
+	public void singleEntityRoundTrip(Blackhole blackhole) {
+		blackhole.consume(transactionMapper.toEntity(transactionMapper.toDto(transactions.getFirst())));
+		blackhole.consume(statementMapper.toEntity(statementMapper.toDto(statement)));
+		blackhole.consume(customerAccountMapper.toEntity(customerAccountMapper.toDto(customerAccount)));
+	}
+}
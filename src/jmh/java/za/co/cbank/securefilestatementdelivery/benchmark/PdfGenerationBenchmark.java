@@ -0,0 +1,50 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.*;
+import za.co.cbank.securefilestatementdelivery.service.FileCreationService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning statement HTML into a PDF: layout alone ({@code unprotected}) against the full
+ * {@code FileCreationService.GeneratePdfFile} path that also applies AES-256 protection. The HTML is
+ * rendered once in setup so only the PDF stage is measured; output goes to a discarding stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PdfGenerationBenchmark {
+
+	private static final String SECRET_KEY = "9001010000083";
+
+	@Param({"100", "1000", "10000"})
+	public int transactionCount;
+
+	private FileCreationService fileCreationService;
+	private String statementHtml;
+
+	@Setup
+	public void setUp() {
+		fileCreationService = BenchmarkFixtures.fileCreationService();
+		statementHtml = BenchmarkFixtures.htmlStatementRenderer(BenchmarkFixtures.templateEngine())
+				.formatStatementTransactions(BenchmarkFixtures.transactions(transactionCount));
+	}
+
+	@Benchmark
+	public void unprotected() throws IOException {
+		try (PDDocument document = fileCreationService.renderPdfDocument(statementHtml)) {
+			document.save(OutputStream.nullOutputStream());
+		}
+	}
+
+	@Benchmark
+	public void aes256Protected() {
+		fileCreationService.GeneratePdfFile(statementHtml, SECRET_KEY, OutputStream.nullOutputStream());
+	}
+}
@@ -0,0 +1,42 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import za.co.cbank.securefilestatementdelivery.service.FileCreationService;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for the first protected statement a fresh JVM renders, with and without a warm-up render beforehand, as
+ * {@code StatementRendererWarmUp} does at startup. Each fork is a new JVM and measures exactly one statement, so the
+ * {@code warmedUp=false} score is what the first request after a deploy used to pay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 10, jvmArgsAppend = "-Xmx1g")
+public class PdfRenderingColdStartBenchmark {
+
+	private static final String SECRET_KEY = "9001010000083";
+
+	@Param({"false", "true"})
+	public boolean warmedUp;
+
+	private FileCreationService fileCreationService;
+	private String statementHtml;
+
+	@Setup
+	public void setUp() {
+		fileCreationService = BenchmarkFixtures.fileCreationService();
+		statementHtml = BenchmarkFixtures.htmlStatementRenderer(BenchmarkFixtures.templateEngine())
+				.formatStatementTransactions(BenchmarkFixtures.transactions(100));
+		if (warmedUp) firstStatement();
+	}
+
+	@Benchmark
+	public void firstStatement() {
+		fileCreationService.GeneratePdfFile(statementHtml, SECRET_KEY, OutputStream.nullOutputStream());
+	}
+}
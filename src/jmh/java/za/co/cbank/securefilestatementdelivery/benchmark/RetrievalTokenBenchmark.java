@@ -0,0 +1,114 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import za.co.cbank.securefilestatementdelivery.service.RetrievalTokenClaims;
+import za.co.cbank.securefilestatementdelivery.service.RetrievalTokenService;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving a retrieval token to its statement file: a lookup by {@code retrieval_token} through a 10-connection
+ * pool, as the public endpoint does for UUID tokens, against checking an HMAC-signed token in memory.
+ * By default the table lives in an in-process H2 database, which leaves out the network round trip and so flatters
+ * the lookup; point {@code -Dbench.db.url} (with {@code bench.db.username} and {@code bench.db.password}) at Postgres
+ * for production-like numbers. Run with {@code -t 16} to see the pool become the limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RetrievalTokenBenchmark {
+
+	private static final String TABLE = "retrieval_token_bench";
+
+	@Param({"100000"})
+	public int statementCount;
+
+	private HikariDataSource dataSource;
+	private RetrievalTokenService retrievalTokenService;
+	private String[] uuidTokens;
+	private String[] signedTokens;
+
+	@Setup
+	public void setUp() throws SQLException {
+		HikariConfig config = new HikariConfig();
+		config.setJdbcUrl(System.getProperty("bench.db.url", "jdbc:h2:mem:retrieval;DB_CLOSE_DELAY=-1"));
+		config.setUsername(System.getProperty("bench.db.username", "sa"));
+		config.setPassword(System.getProperty("bench.db.password", ""));
+		config.setMaximumPoolSize(10);
+		dataSource = new HikariDataSource(config);
+
+		byte[] secret = new byte[32];
+		ThreadLocalRandom.current().nextBytes(secret);
+		retrievalTokenService = new RetrievalTokenService(RetrievalTokenService.Format.SIGNED,
+				List.of("bench:" + Base64.getEncoder().encodeToString(secret)), "bench", null);
+
+		uuidTokens = new String[statementCount];
+		signedTokens = new String[statementCount];
+		Instant expiresAt = Instant.now().plus(1, ChronoUnit.DAYS);
+		try (Connection connection = dataSource.getConnection()) {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("drop table if exists " + TABLE);
+				statement.execute("create table " + TABLE + " (statement_id integer primary key, filename varchar(255), " +
+						"retrieval_token varchar(255) unique, expires_at timestamp)");
+			}
+			try (PreparedStatement insert = connection.prepareStatement("insert into " + TABLE + " values (?, ?, ?, ?)")) {
+				for (int i = 0; i < statementCount; i++) {
+					String filename = UUID.randomUUID().toString().replace("-", "") + ".pdf";
+					uuidTokens[i] = UUID.randomUUID().toString();
+					signedTokens[i] = retrievalTokenService.issue(1000000000 + i, filename, expiresAt);
+					insert.setInt(1, i);
+					insert.setString(2, filename);
+					insert.setString(3, uuidTokens[i]);
+					insert.setTimestamp(4, Timestamp.from(expiresAt));
+					insert.addBatch();
+					if (i % 1000 == 999) insert.executeBatch();
+				}
+				insert.executeBatch();
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws SQLException {
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("drop table if exists " + TABLE);
+		}
+		dataSource.close();
+	}
+
+	@Benchmark
+	public String databaseLookup() throws SQLException {
+		String token = uuidTokens[ThreadLocalRandom.current().nextInt(statementCount)];
+		try (Connection connection = dataSource.getConnection();
+			 PreparedStatement query = connection.prepareStatement("select filename, expires_at from " + TABLE + " where retrieval_token = ?")) {
+			query.setString(1, token);
+			try (ResultSet result = query.executeQuery()) {
+				if (!result.next() || result.getTimestamp(2).toInstant().isBefore(Instant.now())) return null;
+				return result.getString(1);
+			}
+		}
+	}
+
+	@Benchmark
+	public String statelessValidation() {
+		RetrievalTokenClaims claims = retrievalTokenService.verify(signedTokens[ThreadLocalRandom.current().nextInt(statementCount)]);
+		return claims.filename();
+	}
+}
@@ -0,0 +1,115 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.*;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.service.DirectStatementRenderer;
+import za.co.cbank.securefilestatementdelivery.service.SegmentedStatementRenderer;
+import za.co.cbank.securefilestatementdelivery.service.StatementContent;
+import za.co.cbank.securefilestatementdelivery.service.StatementRenderer;
+import za.co.cbank.securefilestatementdelivery.service.StatementSegment;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A very large statement rendered as one document ({@code whole}) against segments rendered in parallel and merged
+ * into a scratch-file-backed document ({@code segmented}), format through saved PDF. Run with {@code -prof gc} to
+ * compare allocation, or lower {@code -Xmx} with {@code -jvmArgsAppend} to see which still fits; the segmented
+ * time falls with {@code -p parallelism} up to the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SegmentedRenderingBenchmark {
+
+	@Param({"200000"})
+	public int transactionCount;
+
+	@Param({"html", "direct"})
+	public String renderer;
+
+	@Param({"5000"})
+	public int rowsPerSegment;
+
+	@Param({"0"})
+	public int parallelism;
+
+	private StatementRenderer<?> statementRenderer;
+	private List<Transaction> transactions;
+	private List<StatementSegment> segments;
+	private ForkJoinPool segmentPool;
+	private SegmentedStatementRenderer segmentedRenderer;
+
+	@Setup
+	public void setUp() {
+		statementRenderer = "html".equals(renderer)
+				? BenchmarkFixtures.htmlStatementRenderer(BenchmarkFixtures.templateEngine())
+				: new DirectStatementRenderer();
+		transactions = BenchmarkFixtures.transactions(transactionCount);
+		segments = segments();
+		segmentPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+		segmentedRenderer = new SegmentedStatementRenderer(segmentPool, 16, System.getProperty("java.io.tmpdir"), 1);
+	}
+
+	@TearDown
+	public void tearDown() {
+		segmentPool.shutdown();
+	}
+
+	@Benchmark
+	public void whole() throws IOException {
+		renderWhole(statementRenderer);
+	}
+
+	@Benchmark
+	public void segmented() throws IOException {
+		renderSegmented(statementRenderer);
+	}
+
+	private <F> void renderWhole(StatementRenderer<F> renderer) throws IOException {
+		F formatted = renderer.format(content(0, transactions.size(), BigDecimal.ZERO, true, true));
+		try (PDDocument document = renderer.render(formatted)) {
+			document.save(OutputStream.nullOutputStream());
+		}
+	}
+
+	private <F> void renderSegmented(StatementRenderer<F> renderer) throws IOException {
+		try (PDDocument document = segmentedRenderer.render(renderer, segments, segment -> {
+			int from = segment.index() * rowsPerSegment;
+			return renderer.format(content(from, Math.min(transactions.size(), from + rowsPerSegment), segment.openingBalance(),
+					segment.first(), segment.last()));
+		})) {
+			document.save(OutputStream.nullOutputStream());
+		}
+	}
+
+	//The rows are already in memory, so each segment is a slice of them rather than a keyset query
+	private List<StatementSegment> segments() {
+		List<StatementSegment> segments = new ArrayList<>();
+		BigDecimal balance = BigDecimal.ZERO;
+		for (int from = 0, index = 0; from < transactions.size(); from += rowsPerSegment, index++) {
+			int to = Math.min(transactions.size(), from + rowsPerSegment);
+			Transaction start = transactions.get(from);
+			segments.add(new StatementSegment(index, start.getPostDate(), start.getTransactionId(), null, null, balance,
+					from == 0, to == transactions.size()));
+			for (Transaction trn : transactions.subList(from, to)) {
+				balance = balance.add("CR".equals(trn.getDrOrCr()) ? trn.getAmount() : trn.getAmount().negate());
+			}
+		}
+		return segments;
+	}
+
+	private StatementContent content(int from, int to, BigDecimal openingBalance, boolean first, boolean last) {
+		return new StatementContent(BenchmarkFixtures.customerAccount(), transactions.getFirst().getPostDate(),
+				transactions.getLast().getPostDate(), openingBalance, transactions.subList(from, to).iterator(), first, last);
+	}
+}
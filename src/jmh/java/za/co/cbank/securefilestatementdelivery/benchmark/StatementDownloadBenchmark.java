@@ -0,0 +1,139 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import za.co.cbank.securefilestatementdelivery.entity.Statement;
+import za.co.cbank.securefilestatementdelivery.repository.StatementRepository;
+import za.co.cbank.securefilestatementdelivery.service.FileStorageService;
+import za.co.cbank.securefilestatementdelivery.service.RetrievalTokenFilter;
+import za.co.cbank.securefilestatementdelivery.service.RetrievalTokenService;
+import za.co.cbank.securefilestatementdelivery.service.StatementDownload;
+import za.co.cbank.securefilestatementdelivery.service.StatementService;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads a statement from a local HTTP server standing in for file storage, with many downloads in flight at once.
+ * {@code buffered} is the old path that collects each PDF into a byte[] before writing it; {@code streamed} is the
+ * public endpoint's path. Run with {@code -prof gc}: buffered allocation grows with PDF size times concurrency,
+ * streamed allocation only with the network chunks in flight. To see the heap stay flat, run 500 concurrent
+ * downloads with {@code -jvmArgsAppend "-Xmx64m -XX:MaxDirectMemorySize=512m"}: streamed completes, buffered
+ * runs out of heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g", "-XX:MaxDirectMemorySize=1g"})
+public class StatementDownloadBenchmark {
+
+	private static final String TOKEN = "6b0d607e-ff22-4c56-b149-f586e528977c";
+	private static final String FILENAME = "statement.pdf";
+
+	@Param({"1", "500"})
+	public int concurrentDownloads;
+
+	@Param({"512"})
+	public int pdfSizeKb;
+
+	private DisposableServer fileStorage;
+	private ConnectionProvider connectionProvider;
+	private WebClient webClient;
+	private WebClient bufferingWebClient;
+	private StatementService statementService;
+	private ExecutorService clients;
+	private String link;
+
+	@Setup
+	public void setUp() {
+		//Served from off-heap memory so the stand-in for file storage adds nothing to the heap being measured
+		ByteBuf pdf = Unpooled.unreleasableBuffer(Unpooled.directBuffer(pdfSizeKb * 1024).writeZero(pdfSizeKb * 1024));
+		fileStorage = HttpServer.create()
+				.host("127.0.0.1")
+				.port(0)
+				.route(routes -> routes.get("/files/statement.pdf", (request, response) -> response
+						.header(HttpHeaderNames.CONTENT_TYPE, "application/pdf")
+						.header(HttpHeaderNames.CONTENT_LENGTH, String.valueOf(pdf.readableBytes()))
+						.send(Mono.just(pdf.duplicate()))))
+				.bindNow();
+		link = "http://127.0.0.1:" + fileStorage.port() + "/files/statement.pdf";
+
+		//Same pool shape as WebClientConfig
+		connectionProvider = ConnectionProvider.builder("benchmark").maxConnections(500).build();
+		webClient = WebClient.builder()
+				.clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+				.build();
+		//The buffered path also needs the 256 KB in-memory codec limit lifted to hold a whole PDF
+		bufferingWebClient = webClient.mutate()
+				.codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(-1))
+				.build();
+
+		StatementRepository statementRepository = Mockito.mock(StatementRepository.class);
+		Mockito.when(statementRepository.findByRetrievalToken(TOKEN)).thenReturn(Statement.builder().filename(FILENAME).build());
+		FileStorageService fileStorageService = Mockito.mock(FileStorageService.class);
+		Mockito.when(fileStorageService.createPresignedLink(FILENAME)).thenReturn(link);
+		RetrievalTokenService retrievalTokenService = new RetrievalTokenService(RetrievalTokenService.Format.UUID, List.of(), "", null);
+		//Disabled, so every token goes to the repository as it did before the filter
+		RetrievalTokenFilter retrievalTokenFilter = new RetrievalTokenFilter(statementRepository, retrievalTokenService,
+				Mockito.mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), false, 1, 0.01, 5, 30);
+		statementService = new StatementService(statementRepository, null, null, null, fileStorageService, null, null, null, null, null, null, webClient, null, null, null,
+				retrievalTokenService, retrievalTokenFilter);
+		//Stands in for the MVC async threads copying each download to its client
+		clients = Executors.newVirtualThreadPerTaskExecutor();
+	}
+
+	@TearDown
+	public void tearDown() {
+		clients.shutdownNow();
+		connectionProvider.dispose();
+		fileStorage.disposeNow();
+	}
+
+	@Benchmark
+	public void buffered() throws Exception {
+		runConcurrently(() -> {
+			byte[] pdf = bufferingWebClient.get().uri(link).retrieve().bodyToMono(byte[].class).block();
+			OutputStream.nullOutputStream().write(pdf);
+			return null;
+		});
+	}
+
+	@Benchmark
+	public void streamed() throws Exception {
+		runConcurrently(() -> {
+			StatementDownload download = statementService.downloadStatementUsingToken(TOKEN).block();
+			download.writeTo(OutputStream.nullOutputStream());
+			return null;
+		});
+	}
+
+	private void runConcurrently(Callable<Void> download) throws Exception {
+		List<Future<Void>> downloads = new ArrayList<>(concurrentDownloads);
+		for (int i = 0; i < concurrentDownloads; i++) {
+			downloads.add(clients.submit(download));
+		}
+		for (Future<Void> future : downloads) {
+			future.get();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import za.co.cbank.securefilestatementdelivery.service.FileCreationService;
+import za.co.cbank.securefilestatementdelivery.service.StatementPipeline;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statements per second for a batch rendered on one thread per core: each statement rendered and then published on
+ * the same thread, as {@code StatementService.generateStatement} does, against {@code StatementPipeline}, where
+ * publishing overlaps on its own executor. Rendering is a real PDF layout of {@code transactionCount} rows.
+ * Publishing saves the document, which is the serialisation the upload stage does, then waits {@code ioMillis} to
+ * stand in for the S3 upload, presign and insert round trips.
+ * Compare on an 8-core machine, or emulate one with {@code -jvmArgsAppend -XX:ActiveProcessorCount=8}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StatementPipelineBenchmark {
+
+	private static final int STATEMENTS_PER_BATCH = 64;
+	private static final int UPLOAD_THREADS = 16;
+	private static final int HANDOFF_CAPACITY = 16;
+
+	@Param({"100"})
+	public int transactionCount;
+
+	@Param({"50"})
+	public int ioMillis;
+
+	private FileCreationService fileCreationService;
+	private String statementHtml;
+	private ThreadPoolTaskExecutor sequentialExecutor;
+	private ThreadPoolTaskExecutor renderExecutor;
+	private ThreadPoolTaskExecutor uploadExecutor;
+	private StatementPipeline statementPipeline;
+
+	@Setup
+	public void setUp() {
+		fileCreationService = BenchmarkFixtures.fileCreationService();
+		statementHtml = BenchmarkFixtures.htmlStatementRenderer(BenchmarkFixtures.templateEngine())
+				.formatStatementTransactions(BenchmarkFixtures.transactions(transactionCount));
+		int cores = Runtime.getRuntime().availableProcessors();
+		sequentialExecutor = executor(cores);
+		renderExecutor = executor(cores);
+		uploadExecutor = executor(UPLOAD_THREADS);
+		statementPipeline = new StatementPipeline(renderExecutor, uploadExecutor, new SimpleMeterRegistry(), HANDOFF_CAPACITY);
+	}
+
+	@TearDown
+	public void tearDown() {
+		sequentialExecutor.shutdown();
+		renderExecutor.shutdown();
+		uploadExecutor.shutdown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STATEMENTS_PER_BATCH)
+	public void sequential() {
+		CompletableFuture<?>[] statements = new CompletableFuture<?>[STATEMENTS_PER_BATCH];
+		for (int i = 0; i < STATEMENTS_PER_BATCH; i++) {
+			statements[i] = CompletableFuture.runAsync(() -> {
+				try (PDDocument document = render()) {
+					publish(document);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, sequentialExecutor);
+		}
+		CompletableFuture.allOf(statements).join();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STATEMENTS_PER_BATCH)
+	public void pipelined() {
+		CompletableFuture<?>[] statements = new CompletableFuture<?>[STATEMENTS_PER_BATCH];
+		for (int i = 0; i < STATEMENTS_PER_BATCH; i++) {
+			statements[i] = statementPipeline.submit(this::render, this::publish);
+		}
+		CompletableFuture.allOf(statements).join();
+	}
+
+	private PDDocument render() {
+		return fileCreationService.renderPdfDocument(statementHtml);
+	}
+
+	private PDDocument publish(PDDocument document) {
+		try {
+			document.save(OutputStream.nullOutputStream());
+			Thread.sleep(ioMillis);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return document;
+	}
+
+	private static ThreadPoolTaskExecutor executor(int threads) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.initialize();
+		return executor;
+	}
+}
@@ -0,0 +1,115 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One month of one account's transactions, read the way {@code TransactionRepository.streamStatementTransactions}
+ * reads them, with and without {@code transactions_account_id_post_date_idx}. Needs a running Postgres
+ * ({@code -Dbench.db.url}, {@code -Dbench.db.username}, {@code -Dbench.db.password}; defaults match compose.yaml).
+ * The table is built in its own schema on first use and kept, so later runs skip the load; at 50M rows that
+ * first load takes several minutes and around 4GB of disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class StatementRangeQueryBenchmark {
+
+	private static final String SCHEMA = "statement_range_bench";
+	private static final int ACCOUNTS = 100_000;
+	private static final int FIRST_ACCOUNT_ID = 1000000000;
+	private static final LocalDate FIRST_POST_DATE = LocalDate.of(2021, 1, 1);
+	private static final int DAYS = 5 * 365;
+	private static final String RANGE_SQL = "select transaction_id, created_at, post_date, account_id, amount, description, dr_or_cr " +
+			"from %s where account_id = ? and post_date between ? and ? order by post_date, transaction_id";
+
+	@Param({"50000000"})
+	public long rowCount;
+
+	@Param({"true", "false"})
+	public boolean indexed;
+
+	private Connection connection;
+	private PreparedStatement rangeQuery;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection(
+				System.getProperty("bench.db.url", "jdbc:postgresql://localhost:5432/cbank"),
+				System.getProperty("bench.db.username", "postgres"),
+				System.getProperty("bench.db.password", "passwd"));
+		String table = SCHEMA + ".transactions_" + rowCount;
+		String index = "transactions_" + rowCount + "_account_id_post_date_idx";
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create schema if not exists " + SCHEMA);
+			if (!tableExists(table)) {
+				loadTable(statement, table);
+			}
+			if (indexed) {
+				statement.execute("create index if not exists " + index + " on " + table + " (account_id, post_date, transaction_id)");
+			} else {
+				statement.execute("drop index if exists " + SCHEMA + "." + index);
+			}
+			statement.execute("analyze " + table);
+		}
+		//Matches the repository cursor: a transaction so the driver honours the fetch size
+		connection.setAutoCommit(false);
+		connection.setReadOnly(true);
+		rangeQuery = connection.prepareStatement(RANGE_SQL.formatted(table));
+		rangeQuery.setFetchSize(1000);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		connection.rollback();
+		connection.close();
+	}
+
+	@Benchmark
+	public void oneMonthForOneAccount(Blackhole blackhole) throws SQLException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		LocalDate from = FIRST_POST_DATE.plusMonths(random.nextInt(DAYS / 31));
+		rangeQuery.setInt(1, FIRST_ACCOUNT_ID + random.nextInt(ACCOUNTS));
+		rangeQuery.setObject(2, from);
+		rangeQuery.setObject(3, from.plusMonths(1).minusDays(1));
+		try (ResultSet rows = rangeQuery.executeQuery()) {
+			while (rows.next()) {
+				blackhole.consume(rows.getInt(1));
+				blackhole.consume(rows.getObject(3));
+				blackhole.consume(rows.getBigDecimal(5));
+				blackhole.consume(rows.getString(7));
+			}
+		}
+	}
+
+	private boolean tableExists(String table) throws SQLException {
+		try (PreparedStatement exists = connection.prepareStatement("select to_regclass(?) is not null")) {
+			exists.setString(1, table);
+			try (ResultSet result = exists.executeQuery()) {
+				result.next();
+				return result.getBoolean(1);
+			}
+		}
+	}
+
+	//Rows arrive in posting order with accounts interleaved, as they would in production, so an account's rows
+	//are spread over the whole heap rather than stored together
+	private void loadTable(Statement statement, String table) throws SQLException {
+		statement.execute("create unlogged table " + table + " (" +
+				"transaction_id bigint primary key, created_at timestamp not null default now(), post_date date not null, " +
+				"account_id bigint, amount numeric(38,2), description varchar(255), dr_or_cr varchar(255))");
+		statement.execute("insert into " + table + " (transaction_id, post_date, account_id, amount, description, dr_or_cr) " +
+				"select g, date '" + FIRST_POST_DATE + "' + (g * " + DAYS + " / " + rowCount + ")::int, " +
+				FIRST_ACCOUNT_ID + " + (g * 7919) % " + ACCOUNTS + ", (g % 100000) / 100.0, 'Benchmark transaction', " +
+				"case when g % 3 = 0 then 'CR' else 'DR' end " +
+				"from generate_series(1::bigint, " + rowCount + ") g");
+	}
+}
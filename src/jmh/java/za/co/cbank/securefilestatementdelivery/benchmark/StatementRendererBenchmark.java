@@ -0,0 +1,62 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.*;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.service.DirectStatementRenderer;
+import za.co.cbank.securefilestatementdelivery.service.HtmlStatementRenderer;
+import za.co.cbank.securefilestatementdelivery.service.StatementContent;
+import za.co.cbank.securefilestatementdelivery.service.StatementRenderer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to turn a statement's transactions into a saved, unprotected PDF with each renderer: {@code html} formats the
+ * Thymeleaf template and lays it out with openhtmltopdf, {@code direct} writes the same table straight to PDFBox.
+ * Both format and render are measured, as statement generation runs them back to back. The html renderer takes
+ * minutes per statement at 100k rows, so expect few samples there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StatementRendererBenchmark {
+
+	@Param({"100", "10000", "100000"})
+	public int transactionCount;
+
+	private HtmlStatementRenderer htmlRenderer;
+	private DirectStatementRenderer directRenderer;
+	private List<Transaction> transactions;
+
+	@Setup
+	public void setUp() {
+		htmlRenderer = BenchmarkFixtures.htmlStatementRenderer(BenchmarkFixtures.templateEngine());
+		directRenderer = new DirectStatementRenderer();
+		transactions = BenchmarkFixtures.transactions(transactionCount);
+	}
+
+	@Benchmark
+	public void html() throws IOException {
+		render(htmlRenderer);
+	}
+
+	@Benchmark
+	public void direct() throws IOException {
+		render(directRenderer);
+	}
+
+	private <F> void render(StatementRenderer<F> renderer) throws IOException {
+		F formatted = renderer.format(new StatementContent(BenchmarkFixtures.customerAccount(), transactions.getFirst().getPostDate(),
+				transactions.getLast().getPostDate(), BigDecimal.ZERO, transactions.iterator()));
+		try (PDDocument document = renderer.render(formatted)) {
+			document.save(OutputStream.nullOutputStream());
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.FastByteArrayOutputStream;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.service.HtmlStatementRenderer;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares rendering the statement template to one String with streaming it through a Writer
+ * into the chunked buffer used by statement generation. Run with {@code -prof gc} to see the
+ * allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatementTemplateRenderingBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	public int transactionCount;
+
+	private HtmlStatementRenderer htmlStatementRenderer;
+	private List<Transaction> transactions;
+
+	@Setup
+	public void setUp() {
+		htmlStatementRenderer = BenchmarkFixtures.htmlStatementRenderer(BenchmarkFixtures.templateEngine());
+		transactions = BenchmarkFixtures.transactions(transactionCount);
+	}
+
+	@Benchmark
+	public void renderToString(Blackhole blackhole) {
+		blackhole.consume(htmlStatementRenderer.formatStatementTransactions(transactions));
+	}
+
+	@Benchmark
+	public void renderToStream(Blackhole blackhole) throws IOException {
+		FastByteArrayOutputStream html = new FastByteArrayOutputStream();
+		try (Writer writer = new OutputStreamWriter(html, StandardCharsets.UTF_8)) {
+			htmlStatementRenderer.formatStatementTransactions(transactions, writer);
+		}
+		blackhole.consume(html.getInputStream());
+	}
+}
@@ -0,0 +1,101 @@
+package za.co.cbank.securefilestatementdelivery.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import tools.jackson.databind.json.JsonMapper;
+import za.co.cbank.securefilestatementdelivery.dto.TransactionBatchResultDTO;
+import za.co.cbank.securefilestatementdelivery.service.TransactionBatchService;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second through {@code TransactionBatchService} for an NDJSON upload spread over 100k accounts.
+ * Needs a running Postgres ({@code -Dbench.db.url}, {@code -Dbench.db.username}, {@code -Dbench.db.password};
+ * defaults match compose.yaml). The tables, with the production index on transactions, are built in their own
+ * schema and emptied before each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TransactionIngestBenchmark {
+
+	private static final String SCHEMA = "transaction_ingest_bench";
+	private static final int ACCOUNTS = 100_000;
+	private static final int FIRST_ACCOUNT_ID = 1000000000;
+	private static final int ROWS_PER_UPLOAD = 100_000;
+
+	private HikariDataSource dataSource;
+	private TransactionBatchService transactionBatchService;
+	private byte[] upload;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		HikariConfig config = new HikariConfig();
+		config.setJdbcUrl(System.getProperty("bench.db.url",
+				"jdbc:postgresql://localhost:5432/cbank?currentSchema=" + SCHEMA + "&reWriteBatchedInserts=true"));
+		config.setUsername(System.getProperty("bench.db.username", "postgres"));
+		config.setPassword(System.getProperty("bench.db.password", "passwd"));
+		config.setMaximumPoolSize(2);
+		dataSource = new HikariDataSource(config);
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("create schema if not exists " + SCHEMA);
+			statement.execute("create table if not exists " + SCHEMA + ".customer_accounts (account_id integer primary key)");
+			statement.execute("create table if not exists " + SCHEMA + ".transactions (transaction_id integer primary key, " +
+					"created_at timestamp, post_date date, account_id integer not null references " + SCHEMA + ".customer_accounts, " +
+					"amount numeric(38,2), description varchar(255), dr_or_cr varchar(255))");
+			statement.execute("create index if not exists transactions_account_id_post_date_idx on " + SCHEMA +
+					".transactions (account_id, post_date, transaction_id)");
+			statement.execute("create table if not exists " + SCHEMA + ".balance_checkpoints (checkpoint_id serial primary key, " +
+					"account_id integer not null, period_start date not null, opening_balance numeric(38,2), closing_balance numeric(38,2))");
+			statement.execute("create index if not exists balance_checkpoints_account_idx on " + SCHEMA + ".balance_checkpoints (account_id)");
+			statement.execute("create sequence if not exists " + SCHEMA + ".transactions_seq increment by 50");
+			statement.execute("insert into " + SCHEMA + ".customer_accounts select g from generate_series(" + FIRST_ACCOUNT_ID +
+					", " + (FIRST_ACCOUNT_ID + ACCOUNTS - 1) + ") g on conflict do nothing");
+		}
+		transactionBatchService = new TransactionBatchService(new NamedParameterJdbcTemplate(dataSource),
+				new DataSourceTransactionManager(dataSource), JsonMapper.builder().build(), 1000, 100);
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		StringBuilder ndjson = new StringBuilder(ROWS_PER_UPLOAD * 128);
+		LocalDate postDate = LocalDate.of(2025, 6, 1);
+		for (int i = 0; i < ROWS_PER_UPLOAD; i++) {
+			ndjson.append("{\"accountId\":").append(FIRST_ACCOUNT_ID + random.nextInt(ACCOUNTS))
+					.append(",\"postDate\":\"").append(postDate.plusDays(random.nextInt(30)))
+					.append("\",\"amount\":").append(random.nextInt(1, 100000) / 100.0)
+					.append(",\"description\":\"Card purchase ").append(i)
+					.append("\",\"drOrCr\":\"").append(random.nextInt(3) == 0 ? "CR" : "DR").append("\"}\n");
+		}
+		upload = ndjson.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Setup(Level.Iteration)
+	public void emptyTransactions() throws SQLException {
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("truncate " + SCHEMA + ".transactions");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		dataSource.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS_PER_UPLOAD)
+	public TransactionBatchResultDTO ndjsonUpload() {
+		return transactionBatchService.ingestTransactions(new ByteArrayInputStream(upload));
+	}
+}
@@ -9,42 +9,80 @@ import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.MDC;
 import org.springframework.core.DefaultParameterNameDiscoverer;
 import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
 import org.springframework.stereotype.Component;
 import za.co.cbank.securefilestatementdelivery.Audit.annotation.Auditable;
 import za.co.cbank.securefilestatementdelivery.Audit.service.AuditLogService;
 
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Slf4j
 @Aspect
 @Component
 @RequiredArgsConstructor
 public class AuditAspect {
+	//Set while a thread does work no user asked for, such as the startup warm-up render
+	private static final ThreadLocal<Boolean> SUPPRESSED = new ThreadLocal<>();
+
 	private final AuditLogService auditLogService;
-	private final ExpressionParser parser = new SpelExpressionParser();
+	//MIXED compiles hot expressions to bytecode and falls back to interpreting if a compiled one fails
+	private final ExpressionParser parser = new SpelExpressionParser(
+			new SpelParserConfiguration(SpelCompilerMode.MIXED, AuditAspect.class.getClassLoader()));
 	private final ParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
+	private final Map<Method, AuditMetadata> metadataByMethod = new ConcurrentHashMap<>();
 
-	@AfterReturning(value = "@annotation(auditable)", returning = "result")
-	public void auditAction(JoinPoint joinPoint, Auditable auditable, Object result) {
-		String detail = auditable.detail();
-
-		if (!detail.isEmpty()) {
-			StandardEvaluationContext context = new StandardEvaluationContext();
-			Object[] args = joinPoint.getArgs();
-			String[] paramNames = ((MethodSignature) joinPoint.getSignature()).getParameterNames();
-
-			for (int i = 0; i < args.length; i++) {
-				context.setVariable(paramNames[i], args[i]);
-			}
+	//The annotation is read from the cached metadata rather than bound by the pointcut, which AspectJ resolves reflectively on every call
+	@AfterReturning("@annotation(za.co.cbank.securefilestatementdelivery.Audit.annotation.Auditable)")
+	public void auditAction(JoinPoint joinPoint) {
+		if (SUPPRESSED.get() != null) return;
+		Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+		AuditMetadata auditMetadata = metadataByMethod.computeIfAbsent(method, this::resolveMetadata);
 
-			detail = parser.parseExpression(detail).getValue(context, String.class);
-		}
 		auditLogService.logAction(
 				MDC.get("traceId"),
 				MDC.get("currentUser"),
 				MDC.get("ipAddress"),
-				auditable.action() + ": " + detail
+				auditMetadata.describe(joinPoint.getArgs())
 		);
 	}
+
+	//Runs the work without recording the audited methods it calls on this thread
+	public static void withoutAuditing(Runnable work) {
+		Boolean previous = SUPPRESSED.get();
+		SUPPRESSED.set(Boolean.TRUE);
+		try {
+			work.run();
+		} finally {
+			if (previous == null) SUPPRESSED.remove();
+		}
+	}
+
+	//Resolved once per audited method: the annotation, the parsed detail expression and the parameter names
+	private AuditMetadata resolveMetadata(Method method) {
+		Auditable auditable = AnnotationUtils.findAnnotation(method, Auditable.class);
+		String detail = auditable.detail();
+		if (detail.isEmpty()) return new AuditMetadata(auditable.action(), null, new String[0]);
+		String[] paramNames = nameDiscoverer.getParameterNames(method);
+		return new AuditMetadata(auditable.action(), parser.parseExpression(detail), paramNames != null ? paramNames : new String[0]);
+	}
+
+	private record AuditMetadata(String action, Expression detail, String[] paramNames) {
+		String describe(Object[] args) {
+			if (detail == null) return action + ": ";
+			//Read-only property access is all a detail expression needs, and is far cheaper to build than a StandardEvaluationContext
+			SimpleEvaluationContext context = SimpleEvaluationContext.forReadOnlyDataBinding().build();
+			for (int i = 0; i < paramNames.length && i < args.length; i++) {
+				context.setVariable(paramNames[i], args[i]);
+			}
+			return action + ": " + detail.getValue(context, String.class);
+		}
+	}
 }
@@ -13,7 +13,9 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class AuditLog {
 	@Id
-	@GeneratedValue(strategy = GenerationType.SEQUENCE)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "audit_logs_seq")
+	//Shared with AuditLogWriter, which allocates ids from the same pooled blocks
+	@SequenceGenerator(name = "audit_logs_seq", sequenceName = "audit_logs_seq", allocationSize = 50)
 	@Column(name = "audit_id")
 	private Integer auditId;
 	@Column(name = "timestamp", nullable = false)
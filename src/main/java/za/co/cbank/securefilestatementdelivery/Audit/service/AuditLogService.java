@@ -3,23 +3,24 @@ package za.co.cbank.securefilestatementdelivery.Audit.service;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import za.co.cbank.securefilestatementdelivery.Audit.entity.AuditLog;
-import za.co.cbank.securefilestatementdelivery.Audit.repository.AuditLogRepository;
+
+import java.time.LocalDateTime;
 
 @Service
 @RequiredArgsConstructor
 public class AuditLogService {
 
-	private final AuditLogRepository auditLogRepository;
+	private final AuditLogWriter auditLogWriter;
 
-//	@Async
-//	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	//Queued for the background writer; the timestamp is taken now rather than when the batch is inserted
 	public void logAction(String traceId, String username, String ipAddress, String metadata) {
 		AuditLog log = new AuditLog();
+		log.setTimestamp(LocalDateTime.now());
 		log.setTraceId(traceId);
 		log.setSystemUsername(username);
 		log.setIpAddress(ipAddress);
 		log.setMetadata(metadata);
 
-		auditLogRepository.save(log);
+		auditLogWriter.write(log);
 	}
 }
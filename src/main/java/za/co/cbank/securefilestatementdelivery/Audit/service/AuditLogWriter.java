@@ -0,0 +1,300 @@
+package za.co.cbank.securefilestatementdelivery.Audit.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
+import za.co.cbank.securefilestatementdelivery.Audit.entity.AuditLog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Takes audit records off the request thread. Records are queued in a bounded buffer and a single
+ * background thread drains them into JDBC batch inserts. Ids come from {@code audit_logs_seq} using the
+ * same pooled allocation as Hibernate, so rows written here and through JPA never collide.
+ * What happens when the buffer is full is set by {@code config.audit.overflow_mode}.
+ */
+@Slf4j
+@Component
+public class AuditLogWriter implements SmartLifecycle {
+	//Stop after the web server has finished its graceful shutdown so in-flight requests can still audit
+	static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+	static final int ID_ALLOCATION_SIZE = 50;
+	private static final String INSERT_SQL = "INSERT INTO audit_logs (audit_id, timestamp, trace_id, ip_address, system_username, metadata) VALUES (?, ?, ?, ?, ?, ?)";
+	private static final String NEXT_ID_SQL = "SELECT nextval('audit_logs_seq')";
+	private static final String SPILL_FILE = "audit-spill.ndjson";
+
+	public enum OverflowMode {
+		//Wait for room in the buffer; no record is lost but callers slow down to the writer's pace
+		BLOCK,
+		//Discard the record and count it in audit.logs.dropped
+		DROP,
+		//Append the record to a local file that is replayed once the writer catches up
+		SPILL
+	}
+
+	private final JdbcTemplate jdbcTemplate;
+	private final ObjectMapper objectMapper;
+	private final Counter writtenCounter;
+	private final Counter droppedCounter;
+	private final Counter spilledCounter;
+	//A lock rather than a monitor: spills come from request threads, which may be virtual, and write to disk while held
+	private final Lock spillLock = new ReentrantLock();
+	//Not a monitor either: ids are fetched from the database while it is held, which would pin a virtual thread
+	private final Lock idLock = new ReentrantLock();
+
+	@Value("${config.audit.queue_capacity}")
+	private Integer queueCapacity;
+	@Value("${config.audit.batch_size}")
+	private Integer batchSize;
+	@Value("${config.audit.flush_interval_ms}")
+	private Long flushIntervalMs;
+	@Value("${config.audit.overflow_mode}")
+	private OverflowMode overflowMode;
+	@Value("${config.audit.spill_dir}")
+	private Path spillDir;
+
+	private volatile BlockingQueue<AuditLog> queue;
+	private volatile boolean running;
+	private volatile Runnable stopCallback;
+	private Thread writerThread;
+	private Long hiValue;
+	private long nextId;
+
+	public AuditLogWriter(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.objectMapper = objectMapper;
+		this.writtenCounter = meterRegistry.counter("audit.logs.written");
+		this.droppedCounter = meterRegistry.counter("audit.logs.dropped");
+		this.spilledCounter = meterRegistry.counter("audit.logs.spilled");
+		Gauge.builder("audit.logs.queued", this, writer -> writer.queue == null ? 0 : writer.queue.size())
+				.register(meterRegistry);
+	}
+
+	public void write(AuditLog auditLog) {
+		BlockingQueue<AuditLog> buffer = queue;
+		if (!running || buffer == null) {
+			//Before start-up or after shutdown there is no writer thread, so write on the caller
+			insertBatch(List.of(auditLog));
+			return;
+		}
+		if (buffer.offer(auditLog)) return;
+
+		switch (overflowMode) {
+			case BLOCK -> {
+				try {
+					buffer.put(auditLog);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					insertBatch(List.of(auditLog));
+				}
+			}
+			case DROP -> {
+				droppedCounter.increment();
+				log.warn("Audit buffer full, dropped audit record: {}", auditLog.getMetadata());
+			}
+			case SPILL -> spill(List.of(auditLog));
+		}
+	}
+
+	@Override
+	public void start() {
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+		running = true;
+		writerThread = new Thread(this::drain, "audit-log-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	@Override
+	public void stop(Runnable callback) {
+		if (writerThread == null) {
+			callback.run();
+			return;
+		}
+		stopCallback = callback;
+		running = false;
+		writerThread.interrupt();
+	}
+
+	@Override
+	public void stop() {
+		stop(() -> { });
+		if (writerThread == null) return;
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public int getPhase() {
+		return PHASE;
+	}
+
+	private void drain() {
+		List<AuditLog> batch = new ArrayList<>(batchSize);
+		replaySpill();
+		try {
+			while (running) {
+				try {
+					AuditLog first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+					if (first == null) {
+						replaySpill();
+						continue;
+					}
+					batch.add(first);
+					queue.drainTo(batch, batchSize - 1);
+					flush(batch);
+				} catch (InterruptedException e) {
+					//Interrupted by stop(); fall through and flush what is left
+				}
+			}
+			//Shutdown: everything still buffered goes out before the datasource closes
+			while (queue.drainTo(batch, batchSize) > 0) {
+				flush(batch);
+			}
+			replaySpill();
+			log.info("Audit log writer flushed and stopped.");
+		} finally {
+			Runnable callback = stopCallback;
+			if (callback != null) callback.run();
+		}
+	}
+
+	private void flush(List<AuditLog> batch) {
+		try {
+			insertBatch(batch);
+		} catch (Exception e) {
+			log.error("Failed to write {} audit records", batch.size(), e);
+			if (overflowMode == OverflowMode.SPILL) {
+				spill(batch);
+			} else {
+				droppedCounter.increment(batch.size());
+			}
+		} finally {
+			batch.clear();
+		}
+	}
+
+	private void insertBatch(List<AuditLog> batch) {
+		List<Object[]> rows = new ArrayList<>(batch.size());
+		for (AuditLog auditLog : batch) {
+			rows.add(new Object[]{
+					nextId(),
+					auditLog.getTimestamp(),
+					auditLog.getTraceId(),
+					auditLog.getIpAddress(),
+					auditLog.getSystemUsername(),
+					auditLog.getMetadata()
+			});
+		}
+		jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+		writtenCounter.increment(batch.size());
+	}
+
+	//Mirrors Hibernate's pooled optimizer: each sequence value is the top of a block of ID_ALLOCATION_SIZE ids
+	private int nextId() {
+		idLock.lock();
+		try {
+			if (hiValue == null) {
+				long value = jdbcTemplate.queryForObject(NEXT_ID_SQL, Long.class);
+				if (value < ID_ALLOCATION_SIZE) {
+					//Fresh sequence: its first value is the initial value rather than the top of a block
+					hiValue = jdbcTemplate.queryForObject(NEXT_ID_SQL, Long.class);
+					nextId = value;
+				} else {
+					hiValue = value;
+					nextId = value - ID_ALLOCATION_SIZE + 1;
+				}
+			} else if (nextId > hiValue) {
+				hiValue = jdbcTemplate.queryForObject(NEXT_ID_SQL, Long.class);
+				nextId = hiValue - ID_ALLOCATION_SIZE + 1;
+			}
+			return Math.toIntExact(nextId++);
+		} finally {
+			idLock.unlock();
+		}
+	}
+
+	private void spill(List<AuditLog> auditLogs) {
+		spillLock.lock();
+		try {
+			Files.createDirectories(spillDir);
+			try (BufferedWriter writer = Files.newBufferedWriter(spillDir.resolve(SPILL_FILE), StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+				for (AuditLog auditLog : auditLogs) {
+					writer.write(objectMapper.writeValueAsString(auditLog));
+					writer.newLine();
+				}
+			}
+			spilledCounter.increment(auditLogs.size());
+		} catch (IOException e) {
+			droppedCounter.increment(auditLogs.size());
+			log.error("Failed to spill {} audit records to {}", auditLogs.size(), spillDir, e);
+		} finally {
+			spillLock.unlock();
+		}
+	}
+
+	//Moves the spill file aside so new spills start a fresh file, then writes it back in batches
+	private void replaySpill() {
+		Path replaying = spillDir.resolve(SPILL_FILE + ".replaying");
+		spillLock.lock();
+		try {
+			Path spillFile = spillDir.resolve(SPILL_FILE);
+			if (!Files.exists(replaying)) {
+				if (!Files.exists(spillFile)) return;
+				Files.move(spillFile, replaying, StandardCopyOption.ATOMIC_MOVE);
+			}
+		} catch (IOException e) {
+			log.error("Failed to pick up spilled audit records in {}", spillDir, e);
+			return;
+		} finally {
+			spillLock.unlock();
+		}
+		List<AuditLog> batch = new ArrayList<>(batchSize);
+		try (BufferedReader reader = Files.newBufferedReader(replaying, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank()) continue;
+				batch.add(objectMapper.readValue(line, AuditLog.class));
+				if (batch.size() == batchSize) {
+					insertBatch(batch);
+					batch.clear();
+				}
+			}
+			if (!batch.isEmpty()) insertBatch(batch);
+			Files.delete(replaying);
+			log.info("Replayed spilled audit records from {}", replaying);
+		} catch (Exception e) {
+			//Left in place and retried on the next idle poll; rows already inserted may be written again
+			log.error("Failed to replay spilled audit records from {}", replaying, e);
+		}
+	}
+}
@@ -1,20 +1,35 @@
 package za.co.cbank.securefilestatementdelivery.config;
 
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.Bucket4j;
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Refill;
+import io.github.bucket4j.distributed.ExpirationAfterWriteStrategy;
+import io.github.bucket4j.distributed.jdbc.PrimaryKeyMapper;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.postgresql.Bucket4jPostgreSQL;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
+import javax.sql.DataSource;
 import java.time.Duration;
 
 @Configuration
+@EnableScheduling
 public class RateLimitConfig {
+	@Value("${config.rate_limit.idle_expiry_mins}")
+	private Integer idleExpiryMins;
 
+	//Buckets shared by every replica through the rate_limit_buckets table; without it each node limits on its own
 	@Bean
-	public Bucket bucket() {
-		Bandwidth limit = Bandwidth.classic(10, Refill.greedy(10, Duration.ofMinutes(1)));
-		return Bucket4j.builder().addLimit(limit).build();
+	@ConditionalOnProperty(name = "config.rate_limit.store", havingValue = "postgres")
+	public ProxyManager<String> rateLimitProxyManager(DataSource dataSource) {
+		return Bucket4jPostgreSQL.selectForUpdateBasedBuilder(dataSource)
+				.primaryKeyMapper(PrimaryKeyMapper.STRING)
+				.table("rate_limit_buckets")
+				.idColumn("client_ip")
+				.stateColumn("state")
+				.expiresAtColumn("expires_at")
+				.expirationAfterWrite(ExpirationAfterWriteStrategy.basedOnTimeForRefillingBucketUpToMax(Duration.ofMinutes(idleExpiryMins)))
+				.build();
 	}
-}
\ No newline at end of file
+}
@@ -14,6 +14,10 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.header.writers.CacheControlHeadersWriter;
+import org.springframework.security.web.header.writers.DelegatingRequestMatcherHeaderWriter;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -32,7 +36,13 @@ public class SecurityConfig {
 						.requestMatchers("/actuator/**").permitAll()
 						.anyRequest().authenticated()
 				)
-				.httpBasic(Customizer.withDefaults());
+				.httpBasic(Customizer.withDefaults())
+				//Statement downloads set their own Cache-Control so browsers can revalidate them with If-None-Match
+				.headers(headers -> headers
+						.cacheControl(cacheControl -> cacheControl.disable())
+						.addHeaderWriter(new DelegatingRequestMatcherHeaderWriter(
+								new NegatedRequestMatcher(PathPatternRequestMatcher.pathPattern("/api/v1/public/**")),
+								new CacheControlHeadersWriter())));
 
 		return http.build();
 	}
@@ -0,0 +1,77 @@
+package za.co.cbank.securefilestatementdelivery.config;
+
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+@Configuration
+public class StatementExecutorConfig {
+	@Value("${config.statement.batch.render_threads}")
+	private Integer renderThreads;
+	@Value("${config.statement.batch.upload_threads}")
+	private Integer uploadThreads;
+	@Value("${config.statement.segmented.parallelism}")
+	private Integer segmentParallelism;
+	@Value("${spring.threads.virtual.enabled}")
+	private boolean virtualThreads;
+
+	//Rendering is CPU-bound, so one thread per core unless configured otherwise
+	@Bean
+	public ThreadPoolTaskExecutor statementRenderExecutor() {
+		int threads = renderThreads > 0 ? renderThreads : Runtime.getRuntime().availableProcessors();
+		return createExecutor("statement-render-", threads);
+	}
+
+	//Uploading, presigning and persisting mostly wait on S3 and Postgres, so these run on virtual threads when
+	//spring.threads.virtual.enabled is set. upload_threads still caps how many run at once
+	@Bean
+	public ThreadPoolTaskExecutor statementUploadExecutor() {
+		ThreadPoolTaskExecutor executor = createExecutor("statement-upload-", uploadThreads);
+		executor.setVirtualThreads(virtualThreads);
+		return executor;
+	}
+
+	//Segments of a large statement render side by side; also CPU-bound, so one thread per core unless configured otherwise
+	@Bean
+	public ForkJoinPool statementSegmentPool() {
+		int parallelism = segmentParallelism > 0 ? segmentParallelism : Runtime.getRuntime().availableProcessors();
+		return new ForkJoinPool(parallelism, pool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("statement-segment-" + thread.getPoolIndex());
+			return thread;
+		}, null, false);
+	}
+
+	private ThreadPoolTaskExecutor createExecutor(String threadNamePrefix, int threads) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setThreadNamePrefix(threadNamePrefix);
+		executor.setTaskDecorator(mdcPropagatingDecorator());
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		executor.setAwaitTerminationSeconds(30);
+		return executor;
+	}
+
+	//Audit records read the user and IP from the MDC of the submitting request
+	private TaskDecorator mdcPropagatingDecorator() {
+		return runnable -> {
+			Map<String, String> context = MDC.getCopyOfContextMap();
+			return () -> {
+				if (context != null) MDC.setContextMap(context);
+				try {
+					runnable.run();
+				} finally {
+					MDC.clear();
+				}
+			};
+		};
+	}
+}
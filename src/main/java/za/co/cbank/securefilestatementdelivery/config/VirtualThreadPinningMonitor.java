@@ -0,0 +1,102 @@
+package za.co.cbank.securefilestatementdelivery.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.thread.Threading;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Watches JFR for virtual threads that block while pinned to their carrier, which on JDK 21 happens when they wait
+ * inside a {@code synchronized} block or a native frame. Each pinning longer than
+ * {@code config.threads.pinning_monitor.threshold_ms} is timed in {@code jvm.threads.virtual.pinned}, tagged with the
+ * first frame outside the JDK, and the first one from each site is logged with its stack. Only runs with
+ * {@code spring.threads.virtual.enabled}.
+ */
+@Slf4j
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+	static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+	static final String PINNED_TIMER = "jvm.threads.virtual.pinned";
+	private static final int LOGGED_FRAMES = 12;
+
+	private final MeterRegistry meterRegistry;
+	private final Duration threshold;
+	private final Set<String> loggedSites = ConcurrentHashMap.newKeySet();
+	private volatile RecordingStream recordingStream;
+
+	public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+									   @Value("${config.threads.pinning_monitor.threshold_ms}") long thresholdMs) {
+		this.meterRegistry = meterRegistry;
+		this.threshold = Duration.ofMillis(thresholdMs);
+	}
+
+	@Override
+	public void start() {
+		RecordingStream stream = new RecordingStream();
+		stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+		stream.onEvent(PINNED_EVENT, this::onPinned);
+		stream.startAsync();
+		recordingStream = stream;
+		log.info("Watching for virtual threads pinned longer than {} ms", threshold.toMillis());
+	}
+
+	@Override
+	public void stop() {
+		RecordingStream stream = recordingStream;
+		recordingStream = null;
+		if (stream != null) stream.close();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return recordingStream != null;
+	}
+
+	void onPinned(RecordedEvent event) {
+		List<RecordedFrame> frames = frames(event.getStackTrace());
+		String site = site(frames);
+		Timer.builder(PINNED_TIMER)
+				.description("Time virtual threads spent blocked while pinned to their carrier")
+				.tag("site", site)
+				.register(meterRegistry)
+				.record(event.getDuration());
+		if (loggedSites.add(site)) {
+			log.warn("Virtual thread pinned for {} ms at {}:\n\t{}", event.getDuration().toMillis(), site,
+					frames.stream().limit(LOGGED_FRAMES).map(VirtualThreadPinningMonitor::describe).collect(Collectors.joining("\n\t")));
+		}
+	}
+
+	//The frame that blocked is usually inside the JDK; the first caller outside it says which library is responsible
+	static String site(List<RecordedFrame> frames) {
+		for (RecordedFrame frame : frames) {
+			String type = frame.getMethod().getType().getName();
+			if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+				return type + "." + frame.getMethod().getName();
+			}
+		}
+		return frames.isEmpty() ? "unknown" : frames.getFirst().getMethod().getType().getName() + "." + frames.getFirst().getMethod().getName();
+	}
+
+	private static List<RecordedFrame> frames(RecordedStackTrace stackTrace) {
+		return stackTrace == null ? List.of() : stackTrace.getFrames();
+	}
+
+	private static String describe(RecordedFrame frame) {
+		return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+	}
+}
@@ -1,15 +1,39 @@
 package za.co.cbank.securefilestatementdelivery.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration
 public class WebClientConfig {
+	@Value("${config.webclient.max_connections}")
+	private Integer maxConnections;
+	@Value("${config.webclient.pending_acquire_timeout_secs}")
+	private Integer pendingAcquireTimeoutSecs;
+	@Value("${config.webclient.max_idle_time_secs}")
+	private Integer maxIdleTimeSecs;
+
+	//One connection pool shared by every request instead of a new client per download
+	@Bean(destroyMethod = "dispose")
+	public ConnectionProvider webClientConnectionProvider(){
+		return ConnectionProvider.builder("webclient")
+				.maxConnections(maxConnections)
+				.pendingAcquireTimeout(Duration.ofSeconds(pendingAcquireTimeoutSecs))
+				.maxIdleTime(Duration.ofSeconds(maxIdleTimeSecs))
+				.metrics(true)
+				.build();
+	}
+
 	@Bean
-	public WebClient webClient(WebClient.Builder builder){
-		return builder.build();
+	public WebClient webClient(WebClient.Builder builder, ConnectionProvider webClientConnectionProvider){
+		return builder
+				.clientConnector(new ReactorClientHttpConnector(HttpClient.create(webClientConnectionProvider)))
+				.build();
 	}
 }
-
-
@@ -1,19 +1,21 @@
 package za.co.cbank.securefilestatementdelivery.controller.api.v1;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import reactor.core.publisher.Mono;
+import za.co.cbank.securefilestatementdelivery.service.StatementDownload;
 import za.co.cbank.securefilestatementdelivery.service.StatementService;
 
-import java.util.UUID;
-
 
 @RestController
 @RequiredArgsConstructor
@@ -24,12 +26,25 @@ public class PublicController {
 	private final StatementService statementService;
 
 	@GetMapping(path = "/{retrievalToken}")
-	public Mono<ResponseEntity<byte[]>> getStatementByLink(@PathVariable UUID retrievalToken){
+	public Mono<ResponseEntity<StreamingResponseBody>> getStatementByLink(@PathVariable String retrievalToken,
+																		  @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+																		  @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch){
 		try {
-		Mono<byte[]> fileBody = statementService.downloadStatementUsingToken(retrievalToken.toString());
-			return fileBody.map(bytes -> ResponseEntity.ok()
-					.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_PDF_VALUE)
-					.body(bytes));
+		Mono<StatementDownload> download = statementService.downloadStatementUsingToken(retrievalToken, range, ifNoneMatch);
+			return download.map(file -> {
+				//Only this customer's browser may keep the PDF, and it checks the ETag before reusing it
+				ResponseEntity.BodyBuilder response = ResponseEntity.status(file.getStatus())
+						.header(HttpHeaders.ACCEPT_RANGES, "bytes")
+						.cacheControl(CacheControl.noCache().cachePrivate());
+				if (file.getEntityTag() != null) response.eTag(file.getEntityTag());
+				if (file.getContentRange() != null) response.header(HttpHeaders.CONTENT_RANGE, file.getContentRange());
+				if (!file.getStatus().is2xxSuccessful()) return response.build();
+
+				response.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_PDF_VALUE);
+				if (file.getContentLength() >= 0) response.contentLength(file.getContentLength());
+				StreamingResponseBody body = file::writeTo;
+				return response.body(body);
+			});
 		}
 		catch (Exception e){
 			return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
@@ -5,7 +5,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import za.co.cbank.securefilestatementdelivery.dto.StatementBatchJobDTO;
+import za.co.cbank.securefilestatementdelivery.dto.StatementBatchRequestDTO;
+import za.co.cbank.securefilestatementdelivery.dto.StatementCycleDTO;
+import za.co.cbank.securefilestatementdelivery.dto.StatementCycleRequestDTO;
 import za.co.cbank.securefilestatementdelivery.dto.StatementDTO;
+import za.co.cbank.securefilestatementdelivery.service.StatementBatchService;
+import za.co.cbank.securefilestatementdelivery.service.StatementCycleService;
 import za.co.cbank.securefilestatementdelivery.service.StatementService;
 
 import java.util.Map;
@@ -16,12 +22,48 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class StatementController {
 	private final StatementService statementService;
+	private final StatementBatchService statementBatchService;
+	private final StatementCycleService statementCycleService;
 
 	@PostMapping(path = "/create",consumes = "application/json", produces = "application/json")
 	public ResponseEntity<Map<String, Object>> generateStatement(@RequestBody StatementDTO statementDTO){
 		log.info("Request to generate statement for accountId: {}", statementDTO.getAccountId());
 		Map<String, Object> statementResult = statementService.generateStatement(
-				statementDTO.getAccountId());
+				statementDTO.getAccountId(), statementDTO.getPeriodFrom(), statementDTO.getPeriodTo());
 		return  ResponseEntity.status(HttpStatus.CREATED).body(statementResult);
 	}
+
+	@PostMapping(path = "/revoke",consumes = "application/json")
+	public ResponseEntity<Void> revokeRetrievalToken(@RequestBody StatementDTO statementDTO){
+		log.info("Request to revoke a retrieval token");
+		statementService.revokeRetrievalToken(statementDTO.getRetrievalToken());
+		return ResponseEntity.noContent().build();
+	}
+
+	@PostMapping(path = "/batch",consumes = "application/json", produces = "application/json")
+	public ResponseEntity<StatementBatchJobDTO> submitStatementBatch(@RequestBody StatementBatchRequestDTO batchRequestDTO){
+		log.info("Request to generate a batch of statements");
+		StatementBatchJobDTO batchJob = statementBatchService.submitBatch(batchRequestDTO);
+		return ResponseEntity.status(HttpStatus.ACCEPTED).body(batchJob);
+	}
+
+	@GetMapping(path = "/batch/{jobId}", produces = "application/json")
+	public ResponseEntity<StatementBatchJobDTO> getStatementBatch(@PathVariable String jobId){
+		return ResponseEntity.ok(statementBatchService.getBatchJob(jobId));
+	}
+
+	//Without a body the cycle covers the previous month
+	@PostMapping(path = "/cycles", produces = "application/json")
+	public ResponseEntity<StatementCycleDTO> startStatementCycle(@RequestBody(required = false) StatementCycleRequestDTO cycleRequestDTO){
+		log.info("Request to start a statement cycle");
+		StatementCycleDTO cycle = cycleRequestDTO == null
+				? statementCycleService.startCycle(null, null)
+				: statementCycleService.startCycle(cycleRequestDTO.getPeriodFrom(), cycleRequestDTO.getPeriodTo());
+		return ResponseEntity.status(HttpStatus.ACCEPTED).body(cycle);
+	}
+
+	@GetMapping(path = "/cycles/{cycleId}", produces = "application/json")
+	public ResponseEntity<StatementCycleDTO> getStatementCycle(@PathVariable Integer cycleId){
+		return ResponseEntity.ok(statementCycleService.getCycle(cycleId));
+	}
 }
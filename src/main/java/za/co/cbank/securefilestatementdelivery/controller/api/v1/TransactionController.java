@@ -2,13 +2,21 @@ package za.co.cbank.securefilestatementdelivery.controller.api.v1;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import za.co.cbank.securefilestatementdelivery.dto.TransactionBatchResultDTO;
 import za.co.cbank.securefilestatementdelivery.dto.TransactionDTO;
 import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.service.TransactionBatchService;
+import za.co.cbank.securefilestatementdelivery.service.TransactionPage;
 import za.co.cbank.securefilestatementdelivery.service.TransactionService;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
@@ -20,10 +28,31 @@ import java.util.List;
 public class TransactionController {
 
 	private final TransactionService transactionService;
+	private final TransactionBatchService transactionBatchService;
 
-	@GetMapping("/account/{accountId}")
-	public ResponseEntity<List<TransactionDTO>> getTransactionsByAccountId(@PathVariable Integer accountId) {
-		return ResponseEntity.ok(transactionService.getTransactionsByAccountId(accountId));
+	//One page at a time; the next page's URL, when there is one, is in the Link header
+	@GetMapping(path = "/account/{accountId}", produces = "application/json")
+	public ResponseEntity<List<TransactionDTO>> getTransactionsByAccountId(@PathVariable Integer accountId,
+																		   @RequestParam(required = false) LocalDate from,
+																		   @RequestParam(required = false) LocalDate to,
+																		   @RequestParam(required = false) String after,
+																		   @RequestParam(required = false) Integer limit) {
+		TransactionPage page = transactionService.getTransactionPage(accountId, from, to, after, limit);
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+		if (page.nextCursor() != null) {
+			String next = ServletUriComponentsBuilder.fromCurrentRequest().replaceQueryParam("after", page.nextCursor()).toUriString();
+			response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+		}
+		return response.body(page.transactions());
+	}
+
+	//Streamed: every matching transaction, one per line, written as it is read
+	@GetMapping(path = "/account/{accountId}", produces = "application/x-ndjson")
+	public ResponseEntity<StreamingResponseBody> streamTransactionsByAccountId(@PathVariable Integer accountId,
+																			   @RequestParam(required = false) LocalDate from,
+																			   @RequestParam(required = false) LocalDate to) {
+		StreamingResponseBody body = outputStream -> transactionService.writeTransactions(accountId, from, to, outputStream);
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
 	}
 
 	@GetMapping("/{transactionId}")
@@ -38,4 +67,17 @@ public class TransactionController {
 		TransactionDTO createdTransaction = transactionService.createTransaction(transactionDTO);
 		return ResponseEntity.status(HttpStatus.CREATED).body(createdTransaction);
 	}
+
+	@PostMapping(path = "/batch", consumes = "application/json", produces = "application/json")
+	public ResponseEntity<TransactionBatchResultDTO> createTransactions(@RequestBody List<TransactionDTO> transactionDTOs){
+		log.info("Request to load a batch of {} transactions", transactionDTOs.size());
+		return ResponseEntity.ok(transactionBatchService.ingestTransactions(transactionDTOs));
+	}
+
+	//Streamed: rows are stored as they arrive, so the upload can be any size
+	@PostMapping(path = "/batch", consumes = "application/x-ndjson", produces = "application/json")
+	public ResponseEntity<TransactionBatchResultDTO> createTransactions(InputStream ndjson){
+		log.info("Request to load a stream of transactions");
+		return ResponseEntity.ok(transactionBatchService.ingestTransactions(ndjson));
+	}
 }
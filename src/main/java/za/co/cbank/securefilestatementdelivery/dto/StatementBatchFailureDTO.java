@@ -0,0 +1,15 @@
+package za.co.cbank.securefilestatementdelivery.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatementBatchFailureDTO {
+	private Integer accountId;
+	private String reason;
+}
@@ -0,0 +1,25 @@
+package za.co.cbank.securefilestatementdelivery.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatementBatchJobDTO {
+	private String jobId;
+	private String status;
+	private Integer totalAccounts;
+	private Integer completedAccounts;
+	private Integer failedAccounts;
+	private Double statementsPerSecond;
+	private LocalDateTime submittedAt;
+	private LocalDateTime finishedAt;
+	private List<StatementBatchFailureDTO> failures;
+}
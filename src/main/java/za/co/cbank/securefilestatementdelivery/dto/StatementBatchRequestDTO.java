@@ -0,0 +1,20 @@
+package za.co.cbank.securefilestatementdelivery.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatementBatchRequestDTO {
+	private List<Integer> accountIds;
+	private Boolean allAccounts;
+	private LocalDate periodFrom;
+	private LocalDate periodTo;
+}
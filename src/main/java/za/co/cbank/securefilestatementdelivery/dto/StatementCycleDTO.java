@@ -0,0 +1,35 @@
+package za.co.cbank.securefilestatementdelivery.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatementCycleDTO {
+	private Integer cycleId;
+	private String status;
+	private LocalDate periodFrom;
+	private LocalDate periodTo;
+	private Integer totalAccounts;
+	private Integer pendingAccounts;
+	private Integer inProgressAccounts;
+	private Integer completedAccounts;
+	private Integer failedAccounts;
+	//Attempts beyond the first, across all accounts
+	private Integer retries;
+	//Accounts each node is working on now
+	private Map<String, Integer> activeNodes;
+	private Double statementsPerSecond;
+	private LocalDateTime createdAt;
+	private LocalDateTime finishedAt;
+	private List<StatementBatchFailureDTO> failures;
+}
@@ -0,0 +1,18 @@
+package za.co.cbank.securefilestatementdelivery.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatementCycleRequestDTO {
+	//Both default to the previous calendar month
+	private LocalDate periodFrom;
+	private LocalDate periodTo;
+}
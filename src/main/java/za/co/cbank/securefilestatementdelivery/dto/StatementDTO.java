@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Data
@@ -16,7 +17,10 @@ public class StatementDTO {
 	private LocalDateTime createdAt;
 	private Integer accountId;
 	private String filename;
-	private String link;
 	private String retrievalToken;
 	private LocalDateTime expiresAt;
+	//Statement period, inclusive; both optional, see StatementService.generateStatement
+	private LocalDate periodFrom;
+	private LocalDate periodTo;
+	private String contentDigest;
 }
\ No newline at end of file
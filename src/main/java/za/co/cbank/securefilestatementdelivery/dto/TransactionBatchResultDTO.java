@@ -0,0 +1,20 @@
+package za.co.cbank.securefilestatementdelivery.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionBatchResultDTO {
+	private Integer received;
+	private Integer inserted;
+	private Integer failed;
+	private Double rowsPerSecond;
+	private List<TransactionBatchFailureDTO> failures;
+}
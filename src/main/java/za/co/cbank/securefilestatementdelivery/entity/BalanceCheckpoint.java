@@ -0,0 +1,35 @@
+package za.co.cbank.securefilestatementdelivery.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * An account's balance at the start and end of one calendar month. Kept current as transactions are posted,
+ * so a statement can start from the nearest checkpoint instead of re-summing the account's whole history.
+ */
+@Entity
+@Table(name = "balance_checkpoints",
+		uniqueConstraints = @UniqueConstraint(name = "balance_checkpoints_account_period_key", columnNames = {"account_id", "period_start"}))
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceCheckpoint {
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "checkpoint_id")
+	private Integer checkpointId;
+	@ManyToOne
+	@JoinColumn(name = "account_id", nullable = false)
+	private CustomerAccount customerAccount;
+	@Column(name = "period_start", nullable = false)
+	private LocalDate periodStart;
+	@Column(nullable = false)
+	private BigDecimal openingBalance;
+	@Column(nullable = false)
+	private BigDecimal closingBalance;
+}
@@ -0,0 +1,25 @@
+package za.co.cbank.securefilestatementdelivery.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * A signed retrieval token withdrawn before it expired. Rows are only needed until {@code expiresAt},
+ * after which the token is refused anyway, so the table and its in-memory copy stay small.
+ */
+@Entity
+@Table(name = "revoked_retrieval_tokens")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevokedRetrievalToken {
+	@Id
+	@Column(name = "token_id", length = 32)
+	private String tokenId;
+	@Column(name = "expires_at", nullable = false)
+	private Instant expiresAt;
+}
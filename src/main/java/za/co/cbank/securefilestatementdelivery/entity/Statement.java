@@ -4,10 +4,11 @@ import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "statements")
+@Table(name = "statements", indexes = @Index(name = "statements_content_digest_idx", columnList = "content_digest"))
 @Getter
 @Setter
 @Builder
@@ -28,7 +29,12 @@ public class Statement {
 	private String filename;
 	@Column(unique = true)
 	private String retrievalToken;
-	@Column(length = 1000)
-	private String link;
 	private LocalDateTime expiresAt;
+	@Column(name = "period_from")
+	private LocalDate periodFrom;
+	@Column(name = "period_to")
+	private LocalDate periodTo;
+	//SHA-256 of everything the PDF is built from; statements with the same digest share one stored file
+	@Column(name = "content_digest", length = 64)
+	private String contentDigest;
 }
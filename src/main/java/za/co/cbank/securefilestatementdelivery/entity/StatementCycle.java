@@ -0,0 +1,34 @@
+package za.co.cbank.securefilestatementdelivery.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * One statement run for every account with transactions in a period, usually a calendar month. Its work is
+ * held in {@link StatementCycleItem}s, one per account, which every node claims from.
+ */
+@Entity
+@Table(name = "statement_cycles",
+		uniqueConstraints = @UniqueConstraint(name = "statement_cycles_period_key", columnNames = {"period_from", "period_to"}))
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatementCycle {
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "cycle_id")
+	private Integer cycleId;
+	@Column(name = "period_from", nullable = false)
+	private LocalDate periodFrom;
+	@Column(name = "period_to", nullable = false)
+	private LocalDate periodTo;
+	@Column(nullable = false)
+	private LocalDateTime createdAt;
+	@Column(nullable = false)
+	private Integer totalItems;
+}
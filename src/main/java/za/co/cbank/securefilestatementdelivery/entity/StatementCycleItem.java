@@ -0,0 +1,50 @@
+package za.co.cbank.securefilestatementdelivery.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One account's statement in a {@link StatementCycle}. A node claims it by taking a lease; if the node dies the
+ * lease runs out and another node claims it again, until {@code attempts} reaches the retry budget.
+ */
+@Entity
+@Table(name = "statement_cycle_items",
+		uniqueConstraints = @UniqueConstraint(name = "statement_cycle_items_cycle_account_key", columnNames = {"cycle_id", "account_id"}),
+		indexes = {
+				@Index(name = "statement_cycle_items_claim_idx", columnList = "status, available_at"),
+				@Index(name = "statement_cycle_items_cycle_status_idx", columnList = "cycle_id, status")
+		})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatementCycleItem {
+	public enum Status {PENDING, CLAIMED, COMPLETED, FAILED}
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "item_id")
+	private Long itemId;
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "cycle_id", nullable = false)
+	private StatementCycle cycle;
+	@Column(name = "account_id", nullable = false)
+	private Integer accountId;
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false, length = 16)
+	private Status status;
+	@Column(nullable = false)
+	private Integer attempts;
+	//Not claimed before this; pushed back after a failed attempt
+	@Column(name = "available_at", nullable = false)
+	private LocalDateTime availableAt;
+	private String leaseOwner;
+	private LocalDateTime leaseExpiresAt;
+	private Integer statementId;
+	@Column(length = 1000)
+	private String lastError;
+	private LocalDateTime completedAt;
+}
@@ -9,7 +9,9 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "transactions")
+//Statements read one account's rows for a date range in post date order, straight off this index
+@Table(name = "transactions",
+		indexes = @Index(name = "transactions_account_id_post_date_idx", columnList = "account_id, post_date, transaction_id"))
 @Getter
 @Setter
 @Builder
@@ -17,7 +19,9 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class Transaction {
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_seq")
+	//Shared with TransactionBatchService, which allocates ids from the same pooled blocks
+	@SequenceGenerator(name = "transactions_seq", sequenceName = "transactions_seq", allocationSize = 50)
 	@Column(name = "transaction_id")
 	private Integer transactionId;
 	@CreationTimestamp
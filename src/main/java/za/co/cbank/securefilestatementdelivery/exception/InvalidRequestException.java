@@ -0,0 +1,7 @@
+package za.co.cbank.securefilestatementdelivery.exception;
+
+public class InvalidRequestException extends RuntimeException {
+	public InvalidRequestException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,32 @@
+package za.co.cbank.securefilestatementdelivery.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import za.co.cbank.securefilestatementdelivery.entity.BalanceCheckpoint;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface BalanceCheckpointRepository extends JpaRepository<BalanceCheckpoint, Integer> {
+
+	Optional<BalanceCheckpoint> findByCustomerAccount_AccountIdAndPeriodStart(Integer accountId, LocalDate periodStart);
+
+	Optional<BalanceCheckpoint> findFirstByCustomerAccount_AccountIdOrderByPeriodStartDesc(Integer accountId);
+
+	Optional<BalanceCheckpoint> findFirstByCustomerAccount_AccountIdAndPeriodStartLessThanOrderByPeriodStartDesc(Integer accountId, LocalDate periodStart);
+
+	//A back-dated posting moves every later period's balances by the same amount
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update BalanceCheckpoint c set c.openingBalance = c.openingBalance + :delta, c.closingBalance = c.closingBalance + :delta " +
+			"where c.customerAccount.accountId = :accountId and c.periodStart > :periodStart")
+	int shiftLaterPeriods(@Param("accountId") Integer accountId, @Param("periodStart") LocalDate periodStart, @Param("delta") BigDecimal delta);
+
+	@Modifying
+	@Query("delete from BalanceCheckpoint c where c.customerAccount.accountId = :accountId")
+	int deleteByAccountId(@Param("accountId") Integer accountId);
+}
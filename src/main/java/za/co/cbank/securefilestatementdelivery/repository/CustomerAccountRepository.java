@@ -1,10 +1,25 @@
 package za.co.cbank.securefilestatementdelivery.repository;
 
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
 
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface CustomerAccountRepository extends JpaRepository<CustomerAccount, Integer> {
 	CustomerAccount findByAccountId(Integer accountId);
+
+	@Query("select c.accountId from CustomerAccount c order by c.accountId")
+	List<Integer> findAllAccountIds();
+
+	//Serialises postings to one account so its balance checkpoints are updated one transaction at a time
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select c from CustomerAccount c where c.accountId = :accountId")
+	Optional<CustomerAccount> lockByAccountId(@Param("accountId") Integer accountId);
 }
@@ -0,0 +1,9 @@
+package za.co.cbank.securefilestatementdelivery.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Net credits less debits posted to an account in one calendar month.
+ */
+public record MonthlyMovement(Integer year, Integer month, BigDecimal amount) {
+}
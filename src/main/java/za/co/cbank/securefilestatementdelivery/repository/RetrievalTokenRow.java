@@ -0,0 +1,7 @@
+package za.co.cbank.securefilestatementdelivery.repository;
+
+/**
+ * A statement's retrieval token with the id it was stored under, read without loading the entity.
+ */
+public record RetrievalTokenRow(Integer statementId, String retrievalToken) {
+}
@@ -0,0 +1,20 @@
+package za.co.cbank.securefilestatementdelivery.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import za.co.cbank.securefilestatementdelivery.entity.RevokedRetrievalToken;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface RevokedRetrievalTokenRepository extends JpaRepository<RevokedRetrievalToken, String> {
+	List<RevokedRetrievalToken> findByExpiresAtAfter(Instant now);
+
+	@Modifying
+	@Query("delete from RevokedRetrievalToken r where r.expiresAt <= :now")
+	int deleteExpired(@Param("now") Instant now);
+}
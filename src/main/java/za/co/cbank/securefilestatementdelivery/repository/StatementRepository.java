@@ -1,10 +1,40 @@
 package za.co.cbank.securefilestatementdelivery.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import za.co.cbank.securefilestatementdelivery.entity.Statement;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
 public interface StatementRepository extends JpaRepository<Statement, Integer> {
 	Statement findByRetrievalToken(String retrievalToken);
+
+	Optional<Statement> findFirstByContentDigestOrderByStatementIdDesc(String contentDigest);
+
+	//Tokens that can still be downloaded, stored after the given statement id; a statement without an expiry never expires
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "5000"))
+	@Query("select new za.co.cbank.securefilestatementdelivery.repository.RetrievalTokenRow(s.statementId, s.retrievalToken) " +
+			"from Statement s where s.statementId > :afterId and s.retrievalToken is not null " +
+			"and (s.expiresAt is null or s.expiresAt > :now)")
+	Stream<RetrievalTokenRow> streamLiveRetrievalTokens(@Param("afterId") Integer afterId, @Param("now") LocalDateTime now);
+
+	//As above, plus the given lower ids, which were still being inserted when the ids after them were read
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "5000"))
+	@Query("select new za.co.cbank.securefilestatementdelivery.repository.RetrievalTokenRow(s.statementId, s.retrievalToken) " +
+			"from Statement s where (s.statementId > :afterId or s.statementId in :pendingIds) and s.retrievalToken is not null " +
+			"and (s.expiresAt is null or s.expiresAt > :now)")
+	Stream<RetrievalTokenRow> streamLiveRetrievalTokens(@Param("afterId") Integer afterId, @Param("pendingIds") Collection<Integer> pendingIds,
+														@Param("now") LocalDateTime now);
+
+	@Query("select count(s) from Statement s where s.retrievalToken is not null and (s.expiresAt is null or s.expiresAt > :now)")
+	long countLiveRetrievalTokens(@Param("now") LocalDateTime now);
 }
@@ -0,0 +1,10 @@
+package za.co.cbank.securefilestatementdelivery.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * The parts of a transaction that identify it on a statement, read without loading the entity.
+ */
+public record TransactionDigestRow(Integer transactionId, LocalDate postDate, BigDecimal amount, String drOrCr) {
+}
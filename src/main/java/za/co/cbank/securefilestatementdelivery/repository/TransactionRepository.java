@@ -1,14 +1,109 @@
 package za.co.cbank.securefilestatementdelivery.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import za.co.cbank.securefilestatementdelivery.dto.TransactionDTO;
 import za.co.cbank.securefilestatementdelivery.entity.Transaction;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Integer> {
+	String STATEMENT_FETCH_SIZE = "1000";
+
 	List<Transaction> findByCustomerAccount_AccountId(Integer customerAccountAccountId);
 
 	List<Transaction> findByCustomerAccount_AccountId_OrderByPostDate(Integer accountId);
+
+	//Forward-only cursor over an account's transactions posted from fromDate to toDate inclusive. Must be consumed inside a transaction and closed.
+	//Rows are fetched STATEMENT_FETCH_SIZE at a time and loaded read-only, so Hibernate keeps no dirty-checking snapshots
+	@QueryHints({
+			@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STATEMENT_FETCH_SIZE),
+			@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+			@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+	})
+	@Query("select t from Transaction t where t.customerAccount.accountId = :accountId and t.postDate between :fromDate and :toDate " +
+			"order by t.postDate, t.transactionId")
+	Stream<Transaction> streamStatementTransactions(@Param("accountId") Integer accountId, @Param("fromDate") LocalDate fromDate,
+													@Param("toDate") LocalDate toDate);
+
+	//One segment of a large statement: the rows from (startPostDate, startTransactionId) up to, but not including,
+	//(endPostDate, endTransactionId), in the same order and read the same way as streamStatementTransactions
+	@QueryHints({
+			@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STATEMENT_FETCH_SIZE),
+			@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+			@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+	})
+	@Query("select t from Transaction t where t.customerAccount.accountId = :accountId and t.postDate between :startPostDate and :endPostDate " +
+			"and (t.postDate > :startPostDate or t.transactionId >= :startTransactionId) " +
+			"and (t.postDate < :endPostDate or t.transactionId < :endTransactionId) " +
+			"order by t.postDate, t.transactionId")
+	Stream<Transaction> streamStatementSegment(@Param("accountId") Integer accountId,
+											   @Param("startPostDate") LocalDate startPostDate, @Param("startTransactionId") Integer startTransactionId,
+											   @Param("endPostDate") LocalDate endPostDate, @Param("endTransactionId") Integer endTransactionId);
+
+	//Same rows as streamStatementTransactions, reduced to what the statement content digest needs
+	@QueryHints({
+			@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STATEMENT_FETCH_SIZE),
+			@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+	})
+	@Query("select new za.co.cbank.securefilestatementdelivery.repository.TransactionDigestRow(t.transactionId, t.postDate, t.amount, t.drOrCr) " +
+			"from Transaction t where t.customerAccount.accountId = :accountId and t.postDate between :fromDate and :toDate " +
+			"order by t.postDate, t.transactionId")
+	Stream<TransactionDigestRow> streamStatementDigestRows(@Param("accountId") Integer accountId, @Param("fromDate") LocalDate fromDate,
+														   @Param("toDate") LocalDate toDate);
+
+	//Keyset pages of an account's transactions in (postDate, transactionId) order, read straight off
+	//transactions_account_id_post_date_idx, so a page costs the same however deep into the account it starts
+	@Query("select new za.co.cbank.securefilestatementdelivery.dto.TransactionDTO(t.transactionId, t.postDate, t.amount, t.description, " +
+			"t.drOrCr, t.customerAccount.accountId) " +
+			"from Transaction t where t.customerAccount.accountId = :accountId and t.postDate between :fromDate and :toDate " +
+			"order by t.postDate, t.transactionId")
+	List<TransactionDTO> findTransactionPage(@Param("accountId") Integer accountId, @Param("fromDate") LocalDate fromDate,
+											 @Param("toDate") LocalDate toDate, Limit limit);
+
+	//The page after (afterPostDate, afterTransactionId); the lower bound on postDate keeps the index range tight
+	@Query("select new za.co.cbank.securefilestatementdelivery.dto.TransactionDTO(t.transactionId, t.postDate, t.amount, t.description, " +
+			"t.drOrCr, t.customerAccount.accountId) " +
+			"from Transaction t where t.customerAccount.accountId = :accountId and t.postDate between :fromDate and :toDate " +
+			"and t.postDate >= :afterPostDate and (t.postDate > :afterPostDate or t.transactionId > :afterTransactionId) " +
+			"order by t.postDate, t.transactionId")
+	List<TransactionDTO> findTransactionPageAfter(@Param("accountId") Integer accountId, @Param("fromDate") LocalDate fromDate,
+												  @Param("toDate") LocalDate toDate, @Param("afterPostDate") LocalDate afterPostDate,
+												  @Param("afterTransactionId") Integer afterTransactionId, Limit limit);
+
+	//Every matching row as a DTO off a forward-only cursor, for the NDJSON listing. Nothing enters the persistence context.
+	//Must be consumed inside a transaction and closed
+	@QueryHints({
+			@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STATEMENT_FETCH_SIZE),
+			@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+	})
+	@Query("select new za.co.cbank.securefilestatementdelivery.dto.TransactionDTO(t.transactionId, t.postDate, t.amount, t.description, " +
+			"t.drOrCr, t.customerAccount.accountId) " +
+			"from Transaction t where t.customerAccount.accountId = :accountId and t.postDate between :fromDate and :toDate " +
+			"order by t.postDate, t.transactionId")
+	Stream<TransactionDTO> streamTransactions(@Param("accountId") Integer accountId, @Param("fromDate") LocalDate fromDate,
+											  @Param("toDate") LocalDate toDate);
+
+	//Net movement from fromDate up to, but not including, toDate; null when there are no rows
+	@Query("select sum(case upper(t.drOrCr) when 'CR' then t.amount when 'DR' then -t.amount else 0 end) from Transaction t " +
+			"where t.customerAccount.accountId = :accountId and t.postDate >= :fromDate and t.postDate < :toDate")
+	BigDecimal sumMovementBetween(@Param("accountId") Integer accountId, @Param("fromDate") LocalDate fromDate,
+								  @Param("toDate") LocalDate toDate);
+
+	//Used to rebuild balance checkpoints; the total is worked out by the database, no rows are loaded
+	@Query("select new za.co.cbank.securefilestatementdelivery.repository.MonthlyMovement(year(t.postDate), month(t.postDate), " +
+			"sum(case upper(t.drOrCr) when 'CR' then t.amount when 'DR' then -t.amount else 0 end)) " +
+			"from Transaction t where t.customerAccount.accountId = :accountId " +
+			"group by year(t.postDate), month(t.postDate) order by year(t.postDate), month(t.postDate)")
+	List<MonthlyMovement> sumMonthlyMovements(@Param("accountId") Integer accountId);
 }
@@ -0,0 +1,140 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import za.co.cbank.securefilestatementdelivery.entity.BalanceCheckpoint;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.exception.DatabaseEntityException;
+import za.co.cbank.securefilestatementdelivery.repository.BalanceCheckpointRepository;
+import za.co.cbank.securefilestatementdelivery.repository.CustomerAccountRepository;
+import za.co.cbank.securefilestatementdelivery.repository.MonthlyMovement;
+import za.co.cbank.securefilestatementdelivery.repository.TransactionRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Maintains one opening/closing balance per account per calendar month. Postings update the checkpoint for their
+ * month and shift every later one, so reading a balance never needs more than one month of transactions.
+ * Accounts whose transactions were loaded without going through {@link TransactionService}, including those whose
+ * checkpoints {@link TransactionBatchService} dropped, get their checkpoints built from a per-month total the first
+ * time they are needed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BalanceCheckpointService {
+	private final BalanceCheckpointRepository balanceCheckpointRepository;
+	private final CustomerAccountRepository customerAccountRepository;
+	private final TransactionRepository transactionRepository;
+
+	//Runs in the posting's transaction, after the account row has been locked and the transaction saved
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void applyTransaction(Transaction transaction) {
+		CustomerAccount account = transaction.getCustomerAccount();
+		Integer accountId = account.getAccountId();
+		if (balanceCheckpointRepository.findFirstByCustomerAccount_AccountIdOrderByPeriodStartDesc(accountId).isEmpty()) {
+			//First checkpoint for the account: earlier transactions may predate checkpoints, so total them all once
+			rebuildCheckpoints(account);
+			return;
+		}
+
+		LocalDate periodStart = periodStart(transaction.getPostDate());
+		BigDecimal amount = signedAmount(transaction);
+		BalanceCheckpoint checkpoint = balanceCheckpointRepository.findByCustomerAccount_AccountIdAndPeriodStart(accountId, periodStart)
+				.orElseGet(() -> {
+					BigDecimal openingBalance = balanceCheckpointRepository
+							.findFirstByCustomerAccount_AccountIdAndPeriodStartLessThanOrderByPeriodStartDesc(accountId, periodStart)
+							.map(BalanceCheckpoint::getClosingBalance)
+							.orElse(BigDecimal.ZERO);
+					return BalanceCheckpoint.builder()
+							.customerAccount(account)
+							.periodStart(periodStart)
+							.openingBalance(openingBalance)
+							.closingBalance(openingBalance)
+							.build();
+				});
+		checkpoint.setClosingBalance(checkpoint.getClosingBalance().add(amount));
+		balanceCheckpointRepository.save(checkpoint);
+		if (amount.signum() != 0) balanceCheckpointRepository.shiftLaterPeriods(accountId, periodStart, amount);
+	}
+
+	//The checkpoint for the account's most recent month with activity, or empty if it has no transactions
+	@Transactional
+	public Optional<BalanceCheckpoint> findLatestCheckpoint(Integer accountId) {
+		Optional<BalanceCheckpoint> latest = balanceCheckpointRepository.findFirstByCustomerAccount_AccountIdOrderByPeriodStartDesc(accountId);
+		if (latest.isPresent()) return latest;
+
+		CustomerAccount account = customerAccountRepository.lockByAccountId(accountId)
+				.orElseThrow(() -> new DatabaseEntityException("No transactions found for account"));
+		//Another request may have built them while this one waited for the lock
+		latest = balanceCheckpointRepository.findFirstByCustomerAccount_AccountIdOrderByPeriodStartDesc(accountId);
+		if (latest.isPresent()) return latest;
+
+		List<BalanceCheckpoint> checkpoints = rebuildCheckpoints(account);
+		return checkpoints.isEmpty() ? Optional.empty() : Optional.of(checkpoints.getLast());
+	}
+
+	//Balance at the start of the given day: the month's opening balance plus at most one month of rows before it
+	@Transactional
+	public BigDecimal findOpeningBalance(Integer accountId, LocalDate date) {
+		findLatestCheckpoint(accountId);
+		LocalDate periodStart = periodStart(date);
+		BigDecimal balance = balanceCheckpointRepository.findByCustomerAccount_AccountIdAndPeriodStart(accountId, periodStart)
+				.map(BalanceCheckpoint::getOpeningBalance)
+				//No activity that month, so it opens where the last active month closed
+				.orElseGet(() -> balanceCheckpointRepository
+						.findFirstByCustomerAccount_AccountIdAndPeriodStartLessThanOrderByPeriodStartDesc(accountId, periodStart)
+						.map(BalanceCheckpoint::getClosingBalance)
+						.orElse(BigDecimal.ZERO));
+		if (date.isAfter(periodStart)) {
+			BigDecimal movement = transactionRepository.sumMovementBetween(accountId, periodStart, date);
+			if (movement != null) balance = balance.add(movement);
+		}
+		return balance;
+	}
+
+	private List<BalanceCheckpoint> rebuildCheckpoints(CustomerAccount account) {
+		balanceCheckpointRepository.deleteByAccountId(account.getAccountId());
+		List<BalanceCheckpoint> checkpoints = new ArrayList<>();
+		BigDecimal balance = BigDecimal.ZERO;
+		for (MonthlyMovement movement : transactionRepository.sumMonthlyMovements(account.getAccountId())) {
+			BigDecimal closingBalance = balance.add(movement.amount());
+			checkpoints.add(BalanceCheckpoint.builder()
+					.customerAccount(account)
+					.periodStart(LocalDate.of(movement.year(), movement.month(), 1))
+					.openingBalance(balance)
+					.closingBalance(closingBalance)
+					.build());
+			balance = closingBalance;
+		}
+		log.info("Built {} balance checkpoints for accountId {}", checkpoints.size(), account.getAccountId());
+		return balanceCheckpointRepository.saveAll(checkpoints);
+	}
+
+	static LocalDate periodStart(LocalDate postDate) {
+		return postDate.withDayOfMonth(1);
+	}
+
+	static BigDecimal signedAmount(Transaction transaction) {
+		return signedAmount(transaction.getAmount(), transaction.getDrOrCr());
+	}
+
+	static BigDecimal signedAmount(BigDecimal amount, String drOrCr) {
+		if (amount == null) {
+			return BigDecimal.ZERO;
+		} else if ("CR".equalsIgnoreCase(drOrCr)) {
+			return amount;
+		} else if ("DR".equalsIgnoreCase(drOrCr)) {
+			return amount.negate();
+		}
+		return BigDecimal.ZERO;
+	}
+}
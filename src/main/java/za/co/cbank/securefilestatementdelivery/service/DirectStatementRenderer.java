@@ -0,0 +1,288 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.springframework.stereotype.Component;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.exception.FileCreationException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Writes the statement table of templates/statement.html straight onto PDFBox content streams, with no HTML or CSS
+ * layout. Column positions and glyph widths are worked out once, every row is one line and pages are broken after a
+ * fixed number of rows, so rendering is linear in the number of transactions. Descriptions wider than their column
+ * are cut short with an ellipsis instead of wrapping, and characters the standard Helvetica font cannot show are
+ * printed as {@code ?}.
+ */
+@Slf4j
+@Component
+public class DirectStatementRenderer implements StatementRenderer<DirectStatementRenderer.Layout> {
+	public static final String NAME = "direct";
+
+	private static final PDRectangle PAGE_SIZE = PDRectangle.A4;
+	private static final float MARGIN = 50;
+	private static final float FONT_SIZE = 10;
+	private static final float HEADER_FONT_SIZE = 12;
+	private static final float TITLE_FONT_SIZE = 16;
+	private static final float ROW_HEIGHT = 14;
+	private static final float DATE_X = MARGIN;
+	private static final float DESCRIPTION_X = MARGIN + 80;
+	private static final float AMOUNT_RIGHT = PAGE_SIZE.getWidth() - MARGIN;
+	private static final float DESCRIPTION_WIDTH = AMOUNT_RIGHT - 110 - DESCRIPTION_X;
+	private static final String ELLIPSIS = "...";
+	//Column metrics, read from the font once
+	private static final GlyphWidths REGULAR_WIDTHS = new GlyphWidths(PDType1Font.HELVETICA);
+	private static final GlyphWidths BOLD_WIDTHS = new GlyphWidths(PDType1Font.HELVETICA_BOLD);
+
+	@Override
+	public String name() {
+		return NAME;
+	}
+
+	//Only turns each row into its printed text; widths and pages are left to render, outside the transaction
+	@Override
+	public Layout format(StatementContent content) {
+		CustomerAccount customerAccount = content.customerAccount();
+		List<String> header = !content.first() ? List.of() : List.of(
+				(text(customerAccount.getFirstName()) + " " + text(customerAccount.getLastName())).trim(),
+				text(customerAccount.getEmailAddress()),
+				text(customerAccount.getAccountId()),
+				text(customerAccount.getCellphoneNumber()));
+		String period = !content.first() || content.periodFrom() == null ? null : "Transactions from " + content.periodFrom() + " to " + content.periodTo();
+
+		BigDecimal balance = content.openingBalance();
+		List<Row> rows = new ArrayList<>();
+		Iterator<Transaction> transactions = content.transactions();
+		while (transactions.hasNext()) {
+			Transaction trn = transactions.next();
+			balance = balance.add(BalanceCheckpointService.signedAmount(trn));
+			rows.add(new Row(text(trn.getPostDate()), text(trn.getDescription()), trn.getAmount() + " " + text(trn.getDrOrCr())));
+		}
+		return new Layout(header, period, content.first() ? text(content.openingBalance()) : null, rows, content.last() ? text(balance) : null);
+	}
+
+	@Override
+	public PDDocument render(Layout layout) {
+		PDDocument document = new PDDocument();
+		try (PageWriter pages = new PageWriter(document)) {
+			pages.header(layout);
+			if (layout.openingBalance() != null) pages.row("Opening balance", "", layout.openingBalance());
+			for (Row row : layout.rows()) {
+				pages.row(row.date(), row.description(), row.amount());
+			}
+			if (layout.closingBalance() != null) {
+				pages.row("", "", "");
+				pages.row("Balance", "", layout.closingBalance());
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			closeQuietly(document);
+			log.error("PDF Rendering Error: " + e.getMessage());
+			throw new FileCreationException("Failed to render a PDF file: " + e.getMessage());
+		}
+		return document;
+	}
+
+	//The shared standard fonts cache encodings in plain maps, so each thread works on its own copy
+	private static PDType1Font copyOf(PDType1Font standardFont) {
+		try {
+			return new PDType1Font(new COSDictionary(standardFont.getCOSObject()));
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to load " + standardFont.getName(), e);
+		}
+	}
+
+	private static String text(Object value) {
+		return Objects.toString(value, "");
+	}
+
+	private void closeQuietly(PDDocument document) {
+		try {
+			document.close();
+		} catch (IOException e) {
+			log.warn("Failed to release PDF document: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * The printed text of a statement, ready to be laid out. A segment of a large statement has no header or period
+	 * unless it is the first, no opening balance unless it is the first and no closing balance unless it is the last.
+	 */
+	public record Layout(List<String> header, String period, String openingBalance, List<Row> rows, String closingBalance) {
+	}
+
+	public record Row(String date, String description, String amount) {
+	}
+
+	//Writes lines top to bottom, starting a new page with the table heading whenever a row would run into the bottom margin
+	private static final class PageWriter implements AutoCloseable {
+		private final PDDocument document;
+		private final PDType1Font regular;
+		private final PDType1Font bold;
+		private PDPageContentStream stream;
+		private PDType1Font currentFont;
+		private float currentSize;
+		private float lineX;
+		private float lineY;
+		private float y;
+
+		PageWriter(PDDocument document) throws IOException {
+			this.document = document;
+			this.regular = copyOf(PDType1Font.HELVETICA);
+			this.bold = copyOf(PDType1Font.HELVETICA_BOLD);
+			newPage();
+		}
+
+		void header(Layout layout) throws IOException {
+			if (layout.header().isEmpty()) {
+				tableHeading();
+				return;
+			}
+			for (String line : layout.header()) {
+				y -= HEADER_FONT_SIZE + 3;
+				show(bold, BOLD_WIDTHS, HEADER_FONT_SIZE, MARGIN, line, PAGE_SIZE.getWidth() - 2 * MARGIN);
+			}
+			y -= 2 * TITLE_FONT_SIZE;
+			centred(bold, BOLD_WIDTHS, TITLE_FONT_SIZE, "Account Statement");
+			if (layout.period() != null) {
+				y -= 2 * FONT_SIZE;
+				centred(regular, REGULAR_WIDTHS, FONT_SIZE, layout.period());
+			}
+			y -= 3 * ROW_HEIGHT;
+			tableHeading();
+		}
+
+		void row(String date, String description, String amount) throws IOException {
+			if (y - ROW_HEIGHT < MARGIN) {
+				newPage();
+				tableHeading();
+			}
+			y -= ROW_HEIGHT;
+			show(regular, REGULAR_WIDTHS, FONT_SIZE, DATE_X, date, DESCRIPTION_X - DATE_X);
+			show(regular, REGULAR_WIDTHS, FONT_SIZE, DESCRIPTION_X, description, DESCRIPTION_WIDTH);
+			String printedAmount = REGULAR_WIDTHS.printable(amount, FONT_SIZE, AMOUNT_RIGHT - DESCRIPTION_X - DESCRIPTION_WIDTH);
+			show(regular, REGULAR_WIDTHS, FONT_SIZE, AMOUNT_RIGHT - REGULAR_WIDTHS.width(printedAmount, FONT_SIZE), printedAmount, Float.MAX_VALUE);
+		}
+
+		private void tableHeading() throws IOException {
+			y -= ROW_HEIGHT;
+			show(bold, BOLD_WIDTHS, FONT_SIZE, DATE_X, "Date", Float.MAX_VALUE);
+			show(bold, BOLD_WIDTHS, FONT_SIZE, DESCRIPTION_X, "Transaction Description", Float.MAX_VALUE);
+			show(bold, BOLD_WIDTHS, FONT_SIZE, AMOUNT_RIGHT - BOLD_WIDTHS.width("Amount", FONT_SIZE), "Amount", Float.MAX_VALUE);
+		}
+
+		private void centred(PDType1Font font, GlyphWidths widths, float size, String text) throws IOException {
+			float maxWidth = PAGE_SIZE.getWidth() - 2 * MARGIN;
+			String printed = widths.printable(text, size, maxWidth);
+			show(font, widths, size, (PAGE_SIZE.getWidth() - widths.width(printed, size)) / 2, printed, Float.MAX_VALUE);
+		}
+
+		//One text object per page: each piece of text is placed relative to the previous one
+		private void show(PDType1Font font, GlyphWidths widths, float size, float x, String text, float maxWidth) throws IOException {
+			if (text.isEmpty()) return;
+			if (font != currentFont || size != currentSize) {
+				stream.setFont(font, size);
+				currentFont = font;
+				currentSize = size;
+			}
+			stream.newLineAtOffset(x - lineX, y - lineY);
+			lineX = x;
+			lineY = y;
+			stream.showText(widths.printable(text, size, maxWidth));
+		}
+
+		private void newPage() throws IOException {
+			closeStream();
+			PDPage page = new PDPage(PAGE_SIZE);
+			document.addPage(page);
+			stream = new PDPageContentStream(document, page);
+			stream.beginText();
+			currentFont = null;
+			lineX = 0;
+			lineY = 0;
+			y = PAGE_SIZE.getHeight() - MARGIN;
+		}
+
+		private void closeStream() throws IOException {
+			if (stream == null) return;
+			stream.endText();
+			stream.close();
+			stream = null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			closeStream();
+		}
+	}
+
+	//Advance widths of every character the font can show, in thousandths of the font size; NaN for the rest
+	private static final class GlyphWidths {
+		//Covers WinAnsiEncoding, whose highest character is the trade mark sign
+		private static final int CHARACTERS = '™' + 1;
+		private final float[] widths = new float[CHARACTERS];
+
+		GlyphWidths(PDType1Font standardFont) {
+			PDType1Font font = copyOf(standardFont);
+			for (char c = 0; c < CHARACTERS; c++) {
+				try {
+					widths[c] = c < ' ' ? Float.NaN : font.getStringWidth(String.valueOf(c));
+				} catch (IOException | IllegalArgumentException e) {
+					widths[c] = Float.NaN;
+				}
+			}
+		}
+
+		float width(String text, float size) {
+			float units = 0;
+			for (int i = 0; i < text.length(); i++) {
+				units += widths[text.charAt(i)];
+			}
+			return units * size / 1000;
+		}
+
+		//The text as the font can show it, cut short with an ellipsis when it is wider than maxWidth
+		String printable(String text, float size, float maxWidth) {
+			float maxUnits = maxWidth / size * 1000;
+			float units = 0;
+			int i = 0;
+			//Most text is plain and fits, and is returned as it is
+			for (; i < text.length() && showable(text.charAt(i)); i++) {
+				units += widths[text.charAt(i)];
+			}
+			if (i == text.length() && units <= maxUnits) return text;
+
+			StringBuilder printed = new StringBuilder(text.length());
+			units = 0;
+			for (i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (!showable(c)) c = Character.isWhitespace(c) || Character.isISOControl(c) ? ' ' : '?';
+				units += widths[c];
+				printed.append(c);
+			}
+			if (units <= maxUnits) return printed.toString();
+			float ellipsis = 3 * widths['.'];
+			while (!printed.isEmpty() && units + ellipsis > maxUnits) {
+				units -= widths[printed.charAt(printed.length() - 1)];
+				printed.setLength(printed.length() - 1);
+			}
+			return printed.append(ELLIPSIS).toString();
+		}
+
+		private boolean showable(char c) {
+			return c < CHARACTERS && !Float.isNaN(widths[c]);
+		}
+	}
+}
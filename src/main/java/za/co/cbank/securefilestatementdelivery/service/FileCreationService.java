@@ -4,46 +4,95 @@ import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.encryption.StandardProtectionPolicy;
 import org.springframework.stereotype.Service;
-import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
 import za.co.cbank.securefilestatementdelivery.Audit.annotation.Auditable;
 import za.co.cbank.securefilestatementdelivery.exception.FileCreationException;
 
 
-import java.io.ByteArrayOutputStream;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FileCreationService {
+	//openhtmltopdf's own XMLResource can only parse inside a renderer, so the statement is parsed here first.
+	//The template never declares a DOCTYPE, so none is accepted
+	private static final ThreadLocal<DocumentBuilder> XHTML_PARSERS = ThreadLocal.withInitial(() -> {
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			return factory.newDocumentBuilder();
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException("No XML parser available", e);
+		}
+	});
+
+	private final PdfRenderingResources renderingResources;
 
 	@Auditable(action = "PDF Statement generated")
-	public ByteArrayOutputStream GeneratePdfFile(String pdfData,String secretKey){
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+	public void GeneratePdfFile(String pdfData, String secretKey, OutputStream outputStream){
+		try (PDDocument document = renderPdfDocument(pdfData)) {
+			writeProtectedPdf(document, secretKey, outputStream);
+		}
+		catch (IOException e) {
+			log.error("PDF Generation Error: " + e.getMessage());
+			throw new FileCreationException("Failed to get a PDF file: " + e.getMessage());
+		}
+	}
+
+	@Auditable(action = "PDF Statement rendered")
+	public PDDocument renderPdfDocument(String pdfData){
+		return renderPdfDocument(builder -> builder.withHtmlContent(pdfData,"/"));
+	}
+
+	//Parses the statement XHTML straight from the stream, so no intermediate String is needed
+	@Auditable(action = "PDF Statement rendered")
+	public PDDocument renderPdfDocument(InputStream pdfData){
+		Document xhtml;
+		try {
+			xhtml = XHTML_PARSERS.get().parse(pdfData);
+		}
+		catch (SAXException | IOException e) {
+			log.error("PDF Rendering Error: " + e.getMessage());
+			throw new FileCreationException("Failed to render a PDF file: " + e.getMessage());
+		}
+		return renderPdfDocument(builder -> builder.withW3cDocument(xhtml,"/"));
+	}
+
+	private PDDocument renderPdfDocument(Consumer<PdfRendererBuilder> source){
+		PDDocument document = new PDDocument();
 		try {
-			PDDocument document = new PDDocument();
 			PdfRendererBuilder builder = new PdfRendererBuilder();
-			builder.withHtmlContent(pdfData,"/");
+			renderingResources.configure(builder);
+			source.accept(builder);
 			builder.usePDDocument(document);
 			builder.buildPdfRenderer().createPDFWithoutClosing();
-			AccessPermission permission = new AccessPermission();
-			permission.setCanPrint(true);
-			permission.setCanModify(false);
-
-			String masterSecretKey = "${config.pdf.encryption.master_secret_key}";
-			StandardProtectionPolicy policy = new StandardProtectionPolicy(
-					masterSecretKey,
-					secretKey,
-					permission
-			);
-			policy.setEncryptionKeyLength(256);
-			document.protect(policy);
+			return document;
+		}
+		catch (Exception e){
+			closeQuietly(document);
+			log.error("PDF Rendering Error: " + e.getMessage());
+			throw new FileCreationException("Failed to render a PDF file: " + e.getMessage());
+		}
+	}
+
+	public void writeProtectedPdf(PDDocument document, String secretKey, OutputStream outputStream){
+		try {
+			document.protect(renderingResources.protectionPolicy(secretKey));
+			//Written straight into the caller's stream, the encrypted file is never buffered here
 			document.save(outputStream);
 			log.info("PDF file created successfully.");
-			return outputStream;
-
 		}
 		catch (IOException e) {
 			log.error("PDF Generation Error: " + e.getMessage());
@@ -53,4 +102,12 @@ public class FileCreationService {
 			throw new FileCreationException("An unexpected error occurred");
 		}
 	}
+
+	private void closeQuietly(PDDocument document) {
+		try {
+			document.close();
+		} catch (IOException e) {
+			log.warn("Failed to release PDF document: " + e.getMessage());
+		}
+	}
 }
@@ -1,37 +1,69 @@
 package za.co.cbank.securefilestatementdelivery.service;
 
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.observation.ObservationRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
 import za.co.cbank.securefilestatementdelivery.Audit.annotation.Auditable;
+import za.co.cbank.securefilestatementdelivery.exception.FileCreationException;
 import za.co.cbank.securefilestatementdelivery.exception.FileStorageException;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Duration;
+import java.time.Instant;
 
 import java.util.UUID;
+import java.util.function.Consumer;
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class FileStorageService {
 	private final S3Client s3Client;
 	private final S3Presigner s3Presigner;
+	private final ObservationRegistry observationRegistry;
+	private final Duration presignWindow;
+	private final Cache<PresignedLinkKey, String> presignedLinks;
 	@Value("${config.aws.s3client.bucket_name}")
 	private String bucketName;
-	@Value("${config.aws.s3client.link_expiry_mins}")
-	private Integer expiryMins;
+	@Value("${config.aws.s3client.multipart_part_size_mb}")
+	private Integer partSizeMb;
 
+	public FileStorageService(S3Client s3Client, S3Presigner s3Presigner, ObservationRegistry observationRegistry, MeterRegistry meterRegistry,
+							  @Value("${config.aws.s3client.presign_window_secs}") Integer presignWindowSecs,
+							  @Value("${config.aws.s3client.presign_cache_max_entries}") Long presignCacheMaxEntries) {
+		this.s3Client = s3Client;
+		this.s3Presigner = s3Presigner;
+		this.observationRegistry = observationRegistry;
+		this.presignWindow = Duration.ofSeconds(presignWindowSecs);
+		this.presignedLinks = Caffeine.newBuilder()
+				.maximumSize(presignCacheMaxEntries)
+				.expireAfterWrite(presignWindow)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, presignedLinks, "presignedLinks");
+	}
+
+	//Links are signed once per file per window and shared by every download in that window. Each is signed for two
+	//windows, so a link handed out at the very end of its window still has a whole window left to be used
 	@Auditable(action = "Presigned Link generated")
 	public String createPresignedLink(String filename){
+		long window = Instant.now().getEpochSecond() / presignWindow.toSeconds();
+		return presignedLinks.get(new PresignedLinkKey(filename, window), key -> presign(key.filename()));
+	}
+
+	private String presign(String filename){
 		try {
 			//Create the GetObjectRequest
 			GetObjectRequest getObjectRequest = GetObjectRequest.builder()
@@ -41,7 +73,7 @@ public class FileStorageService {
 			//Generate the Presigned Url
 			PresignedGetObjectRequest presignedGetObjectRequest = s3Presigner.presignGetObject(
 					p -> p
-							.signatureDuration(Duration.ofMinutes(expiryMins))
+							.signatureDuration(presignWindow.multipliedBy(2))
 							.getObjectRequest(getObjectRequest)
 			);
 			log.info("Presigned URL successfully created.");
@@ -56,32 +88,74 @@ public class FileStorageService {
 		}
 	}
 
-	@Auditable(action = "PDF uploaded")
-	public String uploadPdfStatement(ByteArrayOutputStream filestream) {
+	//False when the file is gone or storage cannot say, so callers fall back to uploading a new copy
+	public boolean statementExists(String filename) {
 		try {
-			//1.Create the upload request
-			String filename = UUID.randomUUID().toString().replace("-", "") + ".pdf";
-			System.out.println("bucketname"+bucketName);
-			PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-					.bucket(bucketName)
-					.key(filename)
-					.contentType(MediaType.APPLICATION_PDF_VALUE)
-					.build();
+			s3Client.headObject(HeadObjectRequest.builder().bucket(bucketName).key(filename).build());
+			return true;
+		}
+		catch (NoSuchKeyException e) {
+			return false;
+		}
+		catch (S3Exception e) {
+			if (e.statusCode() != 404) log.warn("AWS S3 Head Error for {}: {}", filename, e.getMessage());
+			return false;
+		}
+	}
 
-			//2.Upload the statement
-			PutObjectResponse putObjectResponse = s3Client.putObject(
-					putObjectRequest,
-					RequestBody.fromBytes(filestream.toByteArray()));
+	@Auditable(action = "PDF uploaded")
+	public String uploadPdfStatement(Consumer<OutputStream> statementWriter) {
+		//1.Create the upload stream
+		String filename = UUID.randomUUID().toString().replace("-", "") + ".pdf";
+		S3MultipartUploadOutputStream uploadStream = new S3MultipartUploadOutputStream(
+				s3Client,
+				bucketName,
+				filename,
+				MediaType.APPLICATION_PDF_VALUE,
+				partSizeMb * 1024 * 1024,
+				observationRegistry);
+		try {
+			//2.Stream the statement into S3, parts are sent as they fill up
+			statementWriter.accept(new UploadShieldOutputStream(uploadStream));
 
+			//3.Complete the upload
+			uploadStream.close();
 			log.info("File successfully uploaded.");
 			return filename;
 		}
+		catch (FileCreationException e) {
+			uploadStream.abort();
+			throw e;
+		}
 		catch (S3Exception e) {
+			uploadStream.abort();
 			log.error("AWS S3 Client Error: " + e.awsErrorDetails().errorMessage());
 			throw new FileStorageException("Failed to upload to S3: " + e.getMessage());
 		}
 		catch (Exception e){
+			uploadStream.abort();
 			throw new FileStorageException("An unexpected error occurred during upload");
 		}
 	}
+
+	private record PresignedLinkKey(String filename, long window) {
+	}
+
+	//Writers such as PDDocument.save close the stream they are given, even when they fail part way.
+	//Only this service decides whether the upload completes or aborts.
+	private static class UploadShieldOutputStream extends FilterOutputStream {
+		UploadShieldOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
 }
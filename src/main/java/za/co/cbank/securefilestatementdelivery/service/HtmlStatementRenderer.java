@@ -0,0 +1,137 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FastByteArrayOutputStream;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.context.LazyContextVariable;
+import za.co.cbank.securefilestatementdelivery.Audit.annotation.Auditable;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.exception.FileCreationException;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Formats statements with the Thymeleaf template templates/statement.html and lays the HTML out with openhtmltopdf.
+ * Any HTML and CSS the template uses is honoured, at the cost of a full layout pass over the document.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HtmlStatementRenderer implements StatementRenderer<FastByteArrayOutputStream> {
+	public static final String NAME = "html";
+	private static final String TEMPLATE = "statement";
+
+	private final TemplateEngine templateEngine;
+	private final FileCreationService fileCreationService;
+
+	@Override
+	public String name() {
+		return NAME;
+	}
+
+	//Streams the transactions straight into the HTML statement, held in a chunked UTF-8 buffer that is read back without copying
+	@Override
+	public FastByteArrayOutputStream format(StatementContent content) {
+		FastByteArrayOutputStream html = new FastByteArrayOutputStream();
+		try (Writer writer = new OutputStreamWriter(html, StandardCharsets.UTF_8)) {
+			formatStatementTransactions(content.customerAccount(), content.periodFrom(), content.periodTo(), content.openingBalance(),
+					content.transactions(), content.first(), content.last(), writer);
+		} catch (IOException e) {
+			throw new FileCreationException("Failed to format the statement: " + e.getMessage());
+		}
+		return html;
+	}
+
+	@Override
+	public PDDocument render(FastByteArrayOutputStream html) {
+		return fileCreationService.renderPdfDocument(html.getInputStream());
+	}
+
+	@Auditable(action = "Statement transactions formatted")
+	public String formatStatementTransactions(List<Transaction> statementTransactions){
+		//We need some transactions to retrieve the customerAccount
+		if(statementTransactions == null || statementTransactions.isEmpty()) return "No transactions, cannot generate statement";
+		StringWriter writer = new StringWriter();
+		formatStatementTransactions(statementTransactions, writer);
+		return writer.toString();
+	}
+
+	//Streams the statement HTML into the writer instead of materialising it as one String
+	public void formatStatementTransactions(List<Transaction> statementTransactions, Writer writer){
+		log.info("Starting statement formatting");
+		BigDecimal balance = BigDecimal.ZERO;
+		//Calculate the balance to carry forward
+		for (Transaction trn : statementTransactions) {
+			balance = applyToBalance(balance, trn);
+		}
+		Transaction first = statementTransactions.getFirst();
+		processStatementTemplate(first.getCustomerAccount(), first.getPostDate(), statementTransactions.getLast().getPostDate(),
+				BigDecimal.ZERO, statementTransactions, balance, true, true, writer);
+	}
+
+	//Formats transactions as they are read, so only the current row needs to be in memory.
+	//The balance is totalled from the opening balance while the template iterates and is only read once the rows have been written
+	public void formatStatementTransactions(CustomerAccount customerAccount, LocalDate periodFrom, LocalDate periodTo,
+											BigDecimal openingBalance, Iterator<Transaction> statementTransactions, Writer writer){
+		formatStatementTransactions(customerAccount, periodFrom, periodTo, openingBalance, statementTransactions, true, true, writer);
+	}
+
+	//One segment of a large statement: the account details and opening balance are only printed by the first, the balance only by the last
+	public void formatStatementTransactions(CustomerAccount customerAccount, LocalDate periodFrom, LocalDate periodTo, BigDecimal openingBalance,
+											Iterator<Transaction> statementTransactions, boolean first, boolean last, Writer writer){
+		log.info("Starting statement formatting");
+		BigDecimal[] balance = {openingBalance};
+		Iterator<Transaction> balancingTransactions = new Iterator<>() {
+			@Override
+			public boolean hasNext() {
+				return statementTransactions.hasNext();
+			}
+
+			@Override
+			public Transaction next() {
+				Transaction trn = statementTransactions.next();
+				balance[0] = applyToBalance(balance[0], trn);
+				return trn;
+			}
+		};
+		LazyContextVariable<BigDecimal> totalBalance = new LazyContextVariable<>() {
+			@Override
+			protected BigDecimal loadValue() {
+				return balance[0];
+			}
+		};
+		processStatementTemplate(customerAccount, periodFrom, periodTo, openingBalance, balancingTransactions, totalBalance, first, last, writer);
+	}
+
+	private void processStatementTemplate(CustomerAccount customerAccount, LocalDate periodFrom, LocalDate periodTo, BigDecimal openingBalance,
+										  Object transactions, Object totalBalance, boolean first, boolean last, Writer writer) {
+		Context  context = new Context();
+		context.setVariable("customerAccount",customerAccount);
+		context.setVariable("periodFrom",periodFrom);
+		context.setVariable("periodTo",periodTo);
+		context.setVariable("openingBalance",openingBalance);
+		context.setVariable("transactions",transactions);
+		context.setVariable("totalBalance",totalBalance);
+		context.setVariable("first",first);
+		context.setVariable("last",last);
+
+		templateEngine.process(TEMPLATE,context,writer);
+	}
+
+	private BigDecimal applyToBalance(BigDecimal balance, Transaction trn) {
+		return balance.add(BalanceCheckpointService.signedAmount(trn));
+	}
+}
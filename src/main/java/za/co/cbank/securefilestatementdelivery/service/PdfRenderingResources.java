@@ -0,0 +1,68 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import com.openhtmltopdf.extend.impl.FSDefaultCacheStore;
+import com.openhtmltopdf.outputdevice.helper.BaseRendererBuilder;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
+import org.apache.pdfbox.pdmodel.encryption.StandardProtectionPolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything a PDF render needs that is the same for every statement, set up once and shared by all render threads:
+ * the font files from {@code config.pdf.fonts} (read once, embedded as subsets), openhtmltopdf's font metrics cache,
+ * and the read-only permissions and owner password the statements are protected with. The PDDocument, the renderer
+ * and the protection policy itself still belong to one statement each.
+ */
+@Component
+public class PdfRenderingResources {
+	static final int ENCRYPTION_KEY_LENGTH = 256;
+	private static final int REGULAR_WEIGHT = 400;
+
+	private final Map<String, byte[]> fonts = new LinkedHashMap<>();
+	//Thread-safe; holds the metrics of each font once it has been parsed, so later renders only parse the glyphs they embed
+	private final FSDefaultCacheStore fontMetrics = new FSDefaultCacheStore();
+	private final AccessPermission permission = new AccessPermission();
+	private final String masterSecretKey;
+
+	public PdfRenderingResources(@Value("${config.pdf.encryption.master_secret_key}") String masterSecretKey,
+								 @Value("${config.pdf.fonts}") List<String> fonts) {
+		this.masterSecretKey = masterSecretKey;
+		for (String font : fonts) {
+			if (font.isBlank()) continue;
+			int separator = font.indexOf('=');
+			if (separator < 1) throw new IllegalStateException("Expected <family>=<path> in config.pdf.fonts, got '" + font.trim() + "'");
+			String family = font.substring(0, separator).trim();
+			Path path = Path.of(font.substring(separator + 1).trim());
+			try {
+				this.fonts.put(family, Files.readAllBytes(path));
+			} catch (IOException e) {
+				throw new IllegalStateException("Failed to read font " + path + " for " + family, e);
+			}
+		}
+		permission.setCanPrint(true);
+		permission.setCanModify(false);
+		//Shared by every policy, so it must not change once set up
+		permission.setReadOnly();
+	}
+
+	public void configure(PdfRendererBuilder builder) {
+		builder.useCacheStore(PdfRendererBuilder.CacheStore.PDF_FONT_METRICS, fontMetrics);
+		fonts.forEach((family, bytes) -> builder.useFont(() -> new ByteArrayInputStream(bytes), family,
+				REGULAR_WEIGHT, BaseRendererBuilder.FontStyle.NORMAL, true));
+	}
+
+	public StandardProtectionPolicy protectionPolicy(String secretKey) {
+		StandardProtectionPolicy policy = new StandardProtectionPolicy(masterSecretKey, secretKey, permission);
+		policy.setEncryptionKeyLength(ENCRYPTION_KEY_LENGTH);
+		return policy;
+	}
+}
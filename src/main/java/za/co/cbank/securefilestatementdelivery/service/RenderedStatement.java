@@ -0,0 +1,31 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * A statement that has been laid out but not yet encrypted, uploaded or recorded.
+ * Holds the open {@link PDDocument}, so it must be closed once published. When an identical statement is
+ * already in file storage nothing is laid out: {@code storedFilename} names that file and the document is null.
+ */
+@Getter
+@AllArgsConstructor
+public class RenderedStatement implements Closeable {
+	private final Integer accountId;
+	private final String secretKey;
+	private final LocalDate periodFrom;
+	private final LocalDate periodTo;
+	private final String contentDigest;
+	private final String storedFilename;
+	private final PDDocument document;
+
+	@Override
+	public void close() throws IOException {
+		if (document != null) document.close();
+	}
+}
@@ -0,0 +1,10 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import java.time.Instant;
+
+/**
+ * What a signed retrieval token vouches for: which stored statement file it opens, for whom and until when.
+ * {@code tokenId} is random and is what a revocation refers to.
+ */
+public record RetrievalTokenClaims(String tokenId, Integer accountId, String filename, Instant expiresAt) {
+}
@@ -0,0 +1,335 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import za.co.cbank.securefilestatementdelivery.repository.RetrievalTokenRow;
+import za.co.cbank.securefilestatementdelivery.repository.StatementRepository;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter of the UUID retrieval tokens that can still be downloaded, so that tokens which were never issued
+ * (or have expired) are turned away without a database lookup. A hit may be a false positive and still goes to
+ * {@code statements}. The filter is built from {@code statements} once the application is ready, takes new tokens as
+ * they are issued, picks up tokens issued on other replicas every few seconds and is rebuilt periodically so expired
+ * tokens drop out. Tokens carry their issue time, so a miss is decided locally: a token issued well before the last
+ * load started would have been read by it and is refused at once, with no lock and no query. Only a token issued
+ * since waits, for at most one sync interval, for the next scheduled load, so a token stored on another replica is
+ * not refused while a flood of misses never adds a query. Until the first build completes every token is let through.
+ */
+@Slf4j
+@Service
+public class RetrievalTokenFilter {
+	static final String REJECTIONS_COUNTER = "retrieval.token.filter.rejections";
+	static final String FALSE_POSITIVES_COUNTER = "retrieval.token.filter.false.positives";
+	static final String WAITING_GAUGE = "retrieval.token.filter.waiting";
+
+	private final StatementRepository statementRepository;
+	private final RetrievalTokenService retrievalTokenService;
+	private final TransactionTemplate readOnlyTransaction;
+	private final boolean enabled;
+	private final long expectedTokens;
+	private final double falsePositiveRate;
+	//A skipped id is re-read until any token stored under it would have expired, with a minute for clock differences
+	private final long pendingIdLifetimeMillis;
+	//Tokens are stored moments after they are issued; a whole sync interval is allowed for a slow commit
+	private final long syncIntervalMillis;
+	private final Counter rejections;
+	private final Counter falsePositives;
+
+	private volatile BloomFilter current;
+	//The filter being rebuilt, so tokens issued while it is filled are not lost when it replaces current
+	private volatile BloomFilter pending;
+	//Wall-clock start of the last completed load, comparable with the time in a token
+	private volatile long lastLoadStartedAt;
+	//Completed by the next load to start, for the misses waiting on it
+	private final AtomicReference<CompletableFuture<Void>> nextLoad = new AtomicReference<>(new CompletableFuture<>());
+	private final AtomicInteger waitingMisses = new AtomicInteger();
+	//The fields below are guarded by loadLock
+	private int syncedStatementId;
+	//Identity values are handed out before commit, so ids skipped by a load may still appear; id -> when it was skipped
+	private final SortedMap<Integer, Long> pendingIds = new TreeMap<>();
+	//Held across the database reads of a rebuild or sync; a monitor would pin the scheduler's thread when it is virtual
+	private final Lock loadLock = new ReentrantLock();
+
+	public RetrievalTokenFilter(StatementRepository statementRepository, RetrievalTokenService retrievalTokenService,
+								PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+								@Value("${config.retrieval_token.filter.enabled}") boolean enabled,
+								@Value("${config.retrieval_token.filter.expected_tokens}") long expectedTokens,
+								@Value("${config.retrieval_token.filter.false_positive_rate}") double falsePositiveRate,
+								@Value("${config.retrieval_token.filter.sync_secs}") long syncSecs,
+								@Value("${config.aws.s3client.link_expiry_mins}") int linkExpiryMins) {
+		this.statementRepository = statementRepository;
+		this.retrievalTokenService = retrievalTokenService;
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+		this.enabled = enabled;
+		this.expectedTokens = expectedTokens;
+		this.falsePositiveRate = falsePositiveRate;
+		this.pendingIdLifetimeMillis = TimeUnit.MINUTES.toMillis(linkExpiryMins + 1L);
+		this.syncIntervalMillis = TimeUnit.SECONDS.toMillis(syncSecs);
+		this.rejections = meterRegistry.counter(REJECTIONS_COUNTER);
+		this.falsePositives = meterRegistry.counter(FALSE_POSITIVES_COUNTER);
+		Gauge.builder("retrieval.token.filter.size", this, filter -> filter.current == null ? 0 : filter.current.sizeInBytes())
+				.baseUnit(BaseUnits.BYTES)
+				.register(meterRegistry);
+		Gauge.builder("retrieval.token.filter.entries", this, filter -> filter.current == null ? 0 : filter.current.entries())
+				.register(meterRegistry);
+		Gauge.builder("retrieval.token.filter.false.positive.rate", this,
+						filter -> filter.current == null ? 0 : filter.current.expectedFalsePositiveRate())
+				.register(meterRegistry);
+		Gauge.builder(WAITING_GAUGE, waitingMisses, AtomicInteger::get)
+				.description("Misses on recently issued tokens waiting for the next sync")
+				.register(meterRegistry);
+	}
+
+	//False means the token was certainly not issued or has expired
+	public boolean mightContain(String retrievalToken) {
+		BloomFilter filter = current;
+		if (filter == null || filter.mightContain(retrievalToken)) return true;
+		//Made-up tokens, and tokens issued well before the last load started, are refused without waiting
+		long issuedAt = retrievalTokenService.issuedAtMillis(retrievalToken);
+		if (issuedAt >= lastLoadStartedAt - syncIntervalMillis) {
+			//It may have been stored on another replica since; a load that cannot be waited for leaves it to the database
+			if (!awaitNextLoad() || current.mightContain(retrievalToken)) return true;
+		}
+		rejections.increment();
+		return false;
+	}
+
+	public void add(String retrievalToken) {
+		if (!enabled || retrievalToken == null || retrievalTokenService.isSigned(retrievalToken)) return;
+		BloomFilter building = pending;
+		if (building != null) building.put(retrievalToken);
+		BloomFilter filter = current;
+		if (filter != null) filter.put(retrievalToken);
+	}
+
+	//A token the filter let through was not in statements
+	public void recordFalsePositive() {
+		if (current != null) falsePositives.increment();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Scheduled(fixedDelayString = "${config.retrieval_token.filter.rebuild_secs}",
+			initialDelayString = "${config.retrieval_token.filter.rebuild_secs}", timeUnit = TimeUnit.SECONDS)
+	public void rebuild() {
+		if (!enabled) return;
+		loadLock.lock();
+		CompletableFuture<Void> covered = nextLoad.getAndSet(new CompletableFuture<>());
+		try {
+			long startedAt = System.currentTimeMillis();
+			LocalDateTime now = LocalDateTime.now();
+			readOnlyTransaction.executeWithoutResult(status -> {
+				//Leave room for the tokens issued before the next rebuild
+				long capacity = Math.max(expectedTokens, 2 * statementRepository.countLiveRetrievalTokens(now));
+				BloomFilter next = new BloomFilter(capacity, falsePositiveRate);
+				pending = next;
+				try (Stream<RetrievalTokenRow> rows = statementRepository.streamLiveRetrievalTokens(0, now)) {
+					load(rows, next, startedAt);
+					current = next;
+					log.info("Built the retrieval token filter with {} tokens in {} bytes", next.entries(), next.sizeInBytes());
+				} finally {
+					pending = null;
+				}
+			});
+			lastLoadStartedAt = startedAt;
+			covered.complete(null);
+		} catch (RuntimeException e) {
+			covered.completeExceptionally(e);
+			throw e;
+		} finally {
+			loadLock.unlock();
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${config.retrieval_token.filter.sync_secs}", timeUnit = TimeUnit.SECONDS)
+	public void sync() {
+		if (current == null) return;
+		loadLock.lock();
+		try {
+			syncLocked();
+		} finally {
+			loadLock.unlock();
+		}
+	}
+
+	//A load that starts after the miss has read every token stored before it; false if none finishes within a sync interval
+	private boolean awaitNextLoad() {
+		CompletableFuture<Void> next = nextLoad.get();
+		waitingMisses.incrementAndGet();
+		try {
+			next.get(syncIntervalMillis, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException | TimeoutException e) {
+			return false;
+		} finally {
+			waitingMisses.decrementAndGet();
+		}
+	}
+
+	private void syncLocked() {
+		BloomFilter filter = current;
+		CompletableFuture<Void> covered = nextLoad.getAndSet(new CompletableFuture<>());
+		long startedAt = System.currentTimeMillis();
+		LocalDateTime now = LocalDateTime.now();
+		try {
+			readOnlyTransaction.executeWithoutResult(status -> {
+				try (Stream<RetrievalTokenRow> rows = pendingIds.isEmpty()
+						? statementRepository.streamLiveRetrievalTokens(syncedStatementId, now)
+						: statementRepository.streamLiveRetrievalTokens(syncedStatementId, List.copyOf(pendingIds.keySet()), now)) {
+					load(rows, filter, startedAt);
+				}
+			});
+		} catch (RuntimeException e) {
+			covered.completeExceptionally(e);
+			throw e;
+		}
+		lastLoadStartedAt = startedAt;
+		covered.complete(null);
+	}
+
+	//Adds the rows to the filter and moves past the highest id read, remembering the ids skipped on the way
+	private void load(Stream<RetrievalTokenRow> rows, BloomFilter filter, long startedAt) {
+		int from = syncedStatementId;
+		int last = from;
+		BitSet stored = new BitSet();
+		Iterator<RetrievalTokenRow> iterator = rows.iterator();
+		while (iterator.hasNext()) {
+			RetrievalTokenRow row = iterator.next();
+			if (!retrievalTokenService.isSigned(row.retrievalToken())) filter.put(row.retrievalToken());
+			int statementId = row.statementId();
+			if (statementId > from) {
+				stored.set(statementId - from - 1);
+				last = Math.max(last, statementId);
+			} else {
+				pendingIds.remove(statementId);
+			}
+		}
+		//The first load has no earlier position, so only gaps above the oldest live token are followed up
+		int gap = stored.nextClearBit(from == 0 ? Math.max(0, stored.nextSetBit(0)) : 0);
+		for (; gap < last - from; gap = stored.nextClearBit(gap + 1)) {
+			pendingIds.put(from + gap + 1, startedAt);
+		}
+		syncedStatementId = last;
+		//Rolled back inserts, and rows without a live token, are given up once no token stored under them could be live
+		pendingIds.values().removeIf(skippedAt -> startedAt - skippedAt > pendingIdLifetimeMillis);
+	}
+
+	/**
+	 * Fixed-size Bloom filter over a lock-free bit array. Positions come from double hashing two 64-bit hashes of
+	 * the token, which keeps lookups to one pass over its characters.
+	 */
+	static final class BloomFilter {
+		private final AtomicLongArray words;
+		private final long bitCount;
+		private final int hashCount;
+		private final AtomicLong setBits = new AtomicLong();
+		private final AtomicLong entries = new AtomicLong();
+
+		BloomFilter(long expectedEntries, double falsePositiveRate) {
+			long n = Math.max(1, expectedEntries);
+			long bits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+			int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) / 64));
+			this.words = new AtomicLongArray(wordCount);
+			this.bitCount = 64L * wordCount;
+			this.hashCount = (int) Math.max(1, Math.round((double) bitCount / n * Math.log(2)));
+		}
+
+		void put(String value) {
+			long hash = hash(value);
+			long h1 = mix(hash);
+			long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+			boolean changed = false;
+			for (int i = 0; i < hashCount; i++) {
+				long bit = Math.floorMod(h1 + i * h2, bitCount);
+				int word = (int) (bit >>> 6);
+				long mask = 1L << bit;
+				long old;
+				do {
+					old = words.get(word);
+					if ((old & mask) != 0) break;
+				} while (!words.compareAndSet(word, old, old | mask));
+				if ((old & mask) == 0) {
+					setBits.incrementAndGet();
+					changed = true;
+				}
+			}
+			//Tokens read again by an overlapping sync set no new bits and are not counted twice
+			if (changed) entries.incrementAndGet();
+		}
+
+		boolean mightContain(String value) {
+			long hash = hash(value);
+			long h1 = mix(hash);
+			long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+			for (int i = 0; i < hashCount; i++) {
+				long bit = Math.floorMod(h1 + i * h2, bitCount);
+				if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+			}
+			return true;
+		}
+
+		long entries() {
+			return entries.get();
+		}
+
+		long sizeInBytes() {
+			return bitCount / 8;
+		}
+
+		//Chance that a token never added is let through, given how full the bit array is now
+		double expectedFalsePositiveRate() {
+			return Math.pow((double) setBits.get() / bitCount, hashCount);
+		}
+
+		//FNV-1a over the UTF-16 code units
+		private static long hash(String value) {
+			long hash = 0xcbf29ce484222325L;
+			for (int i = 0; i < value.length(); i++) {
+				hash ^= value.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+			return hash;
+		}
+
+		//Finaliser from MurmurHash3, spreading every input bit over the result
+		private static long mix(long hash) {
+			hash ^= hash >>> 33;
+			hash *= 0xff51afd7ed558ccdL;
+			hash ^= hash >>> 33;
+			hash *= 0xc4ceb93fe53a87cdL;
+			hash ^= hash >>> 33;
+			return hash;
+		}
+	}
+}
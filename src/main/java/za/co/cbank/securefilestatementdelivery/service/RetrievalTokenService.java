@@ -0,0 +1,182 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import za.co.cbank.securefilestatementdelivery.entity.RevokedRetrievalToken;
+import za.co.cbank.securefilestatementdelivery.exception.InvalidRequestException;
+import za.co.cbank.securefilestatementdelivery.repository.RevokedRetrievalTokenRepository;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues and checks retrieval tokens. With {@code config.retrieval_token.format=signed} a token is
+ * {@code <key id>.<claims>.<HMAC-SHA256>}, carrying the statement's file, account and expiry, so a download can be
+ * served without reading {@code statements}. Tokens are signed with the active key and accepted under any configured
+ * key, which lets a new key be introduced and the old one retired once its tokens have expired. Revoked token ids
+ * are held in memory until the token would have expired and refreshed from {@code revoked_retrieval_tokens}.
+ */
+@Slf4j
+@Service
+public class RetrievalTokenService {
+	public enum Format {
+		//Time-ordered random UUID (version 7) looked up in statements on every download
+		UUID,
+		//Self-contained HMAC-signed claims
+		SIGNED
+	}
+
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	private static final char SEPARATOR = '.';
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	private final Format format;
+	private final Map<String, SecretKeySpec> signingKeys;
+	private final String activeKeyId;
+	private final RevokedRetrievalTokenRepository revokedTokenRepository;
+	private final SecureRandom random = new SecureRandom();
+	private volatile Map<String, Instant> revokedTokens = new ConcurrentHashMap<>();
+
+	public RetrievalTokenService(@Value("${config.retrieval_token.format}") Format format,
+								 @Value("${config.retrieval_token.signing_keys}") List<String> signingKeys,
+								 @Value("${config.retrieval_token.active_key_id}") String activeKeyId,
+								 RevokedRetrievalTokenRepository revokedTokenRepository) {
+		this.format = format;
+		this.signingKeys = parseKeys(signingKeys);
+		this.activeKeyId = activeKeyId;
+		this.revokedTokenRepository = revokedTokenRepository;
+		//Keys only come from the environment; without one only UUID tokens are issued and no signed token is accepted
+		if (format == Format.SIGNED && this.signingKeys.isEmpty()) {
+			throw new IllegalStateException("Signed retrieval tokens need config.retrieval_token.signing_keys (CONFIG_RETRIEVAL_TOKEN_SIGNING_KEYS)");
+		}
+		if (format == Format.SIGNED && !this.signingKeys.containsKey(activeKeyId)) {
+			throw new IllegalStateException("config.retrieval_token.active_key_id does not name a signing key");
+		}
+	}
+
+	public String issue(Integer accountId, String filename, Instant expiresAt) {
+		if (format == Format.UUID) return timeOrderedUuid(System.currentTimeMillis()).toString();
+
+		byte[] tokenId = new byte[16];
+		random.nextBytes(tokenId);
+		String claims = ENCODER.encodeToString(String.join("\n", ENCODER.encodeToString(tokenId), String.valueOf(accountId),
+				String.valueOf(expiresAt.getEpochSecond()), filename).getBytes(StandardCharsets.UTF_8));
+		String signed = activeKeyId + SEPARATOR + claims;
+		return signed + SEPARATOR + ENCODER.encodeToString(sign(signingKeys.get(activeKeyId), signed));
+	}
+
+	//UUID tokens never contain the separator, so this tells the two formats apart without parsing
+	public boolean isSigned(String token) {
+		return token.indexOf(SEPARATOR) >= 0;
+	}
+
+	//When a UUID token was issued, in epoch milliseconds, or -1 for a token that is not a version 7 UUID
+	public long issuedAtMillis(String token) {
+		try {
+			UUID uuid = UUID.fromString(token);
+			return uuid.version() == 7 ? uuid.getMostSignificantBits() >>> 16 : -1;
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+
+	//Checks signature, expiry and revocation; every failure reads the same to the caller
+	public RetrievalTokenClaims verify(String token) {
+		RetrievalTokenClaims claims = parse(token);
+		if (!claims.expiresAt().isAfter(Instant.now()) || revokedTokens.containsKey(claims.tokenId())) {
+			throw new InvalidRequestException("Invalid retrieval token");
+		}
+		return claims;
+	}
+
+	@Transactional
+	public void revoke(String token) {
+		RetrievalTokenClaims claims = parse(token);
+		if (!claims.expiresAt().isAfter(Instant.now())) return;
+		revokedTokenRepository.save(RevokedRetrievalToken.builder().tokenId(claims.tokenId()).expiresAt(claims.expiresAt()).build());
+		revokedTokens.put(claims.tokenId(), claims.expiresAt());
+	}
+
+	//Picks up revocations made on other replicas and forgets those whose tokens have expired
+	@Transactional
+	@Scheduled(fixedDelayString = "${config.retrieval_token.revocation_refresh_secs}", timeUnit = TimeUnit.SECONDS)
+	public void refreshRevocations() {
+		if (format != Format.SIGNED) return;
+		Instant now = Instant.now();
+		revokedTokenRepository.deleteExpired(now);
+		Map<String, Instant> current = new ConcurrentHashMap<>();
+		for (RevokedRetrievalToken revoked : revokedTokenRepository.findByExpiresAtAfter(now)) {
+			current.put(revoked.getTokenId(), revoked.getExpiresAt());
+		}
+		revokedTokens = current;
+	}
+
+	int revokedTokenCount() {
+		return revokedTokens.size();
+	}
+
+	private RetrievalTokenClaims parse(String token) {
+		int claimsStart = token.indexOf(SEPARATOR);
+		int signatureStart = token.lastIndexOf(SEPARATOR);
+		if (claimsStart <= 0 || signatureStart == claimsStart) throw new InvalidRequestException("Invalid retrieval token");
+		SecretKeySpec key = signingKeys.get(token.substring(0, claimsStart));
+		try {
+			if (key == null || !MessageDigest.isEqual(sign(key, token.substring(0, signatureStart)),
+					DECODER.decode(token.substring(signatureStart + 1)))) {
+				throw new InvalidRequestException("Invalid retrieval token");
+			}
+			String[] fields = new String(DECODER.decode(token.substring(claimsStart + 1, signatureStart)), StandardCharsets.UTF_8)
+					.split("\n", 4);
+			return new RetrievalTokenClaims(fields[0], Integer.valueOf(fields[1]), fields[3], Instant.ofEpochSecond(Long.parseLong(fields[2])));
+		} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			throw new InvalidRequestException("Invalid retrieval token");
+		}
+	}
+
+	//48 bits of issue time, then 74 random bits around the version and variant
+	UUID timeOrderedUuid(long issuedAtMillis) {
+		long mostSignificant = issuedAtMillis << 16 | 0x7000L | random.nextInt(0x1000);
+		long leastSignificant = random.nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+		return new UUID(mostSignificant, leastSignificant);
+	}
+
+	private static byte[] sign(SecretKeySpec key, String content) {
+		try {
+			//Mac instances are not thread-safe and cheap to create, so one per call
+			Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(key);
+			return mac.doFinal(content.getBytes(StandardCharsets.UTF_8));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Failed to sign retrieval token", e);
+		}
+	}
+
+	//Each entry is <key id>:<base64 secret>
+	private static Map<String, SecretKeySpec> parseKeys(List<String> entries) {
+		Map<String, SecretKeySpec> keys = new HashMap<>();
+		for (String entry : entries) {
+			if (entry.isBlank()) continue;
+			int split = entry.indexOf(':');
+			String keyId = split > 0 ? entry.substring(0, split).trim() : "";
+			if (keyId.isEmpty() || keyId.indexOf(SEPARATOR) >= 0) {
+				throw new IllegalStateException("Retrieval token signing keys must be <key id>:<base64 secret>, without '.' in the id");
+			}
+			byte[] secret = Base64.getDecoder().decode(entry.substring(split + 1).trim());
+			if (secret.length < 32) throw new IllegalStateException("Retrieval token signing key " + keyId + " is shorter than 256 bits");
+			keys.put(keyId, new SecretKeySpec(secret, HMAC_ALGORITHM));
+		}
+		return Map.copyOf(keys);
+	}
+}
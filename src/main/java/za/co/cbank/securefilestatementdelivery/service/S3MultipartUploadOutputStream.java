@@ -0,0 +1,183 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Uploads whatever is written to it as an S3 object without holding the whole object in memory.
+ * Bytes are collected into a single part buffer; every time it fills, the part is sent with
+ * {@code UploadPart} and the buffer is reused. Objects that never fill a part go out as one
+ * {@code PutObject}. Call {@link #close()} to complete the upload or {@link #abort()} to discard it.
+ * Each S3 request is observed as {@code storage.request}, so time waiting on storage can be told apart
+ * from time spent producing the bytes.
+ */
+@Slf4j
+class S3MultipartUploadOutputStream extends OutputStream {
+	//S3 rejects non-final parts smaller than 5 MiB
+	static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+	static final String REQUEST_OBSERVATION = "storage.request";
+
+	private final S3Client s3Client;
+	private final String bucketName;
+	private final String key;
+	private final String contentType;
+	private final int partSize;
+	private final ObservationRegistry observationRegistry;
+	private final List<CompletedPart> completedParts = new ArrayList<>();
+
+	private byte[] buffer;
+	private int count;
+	private String uploadId;
+	private boolean closed;
+
+	S3MultipartUploadOutputStream(S3Client s3Client, String bucketName, String key, String contentType, int partSize,
+								  ObservationRegistry observationRegistry) {
+		this.s3Client = s3Client;
+		this.bucketName = bucketName;
+		this.key = key;
+		this.contentType = contentType;
+		this.partSize = Math.max(partSize, MIN_PART_SIZE);
+		this.observationRegistry = observationRegistry;
+		this.buffer = new byte[Math.min(INITIAL_BUFFER_SIZE, this.partSize)];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if (count == partSize) flushPart();
+		ensureCapacity(count + 1);
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			if (count == partSize) flushPart();
+			int chunk = Math.min(len, partSize - count);
+			ensureCapacity(count + chunk);
+			System.arraycopy(b, off, buffer, count, chunk);
+			count += chunk;
+			off += chunk;
+			len -= chunk;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		try {
+			if (uploadId == null) {
+				RequestBody body = currentBufferBody();
+				observeRequest("put_object", () -> s3Client.putObject(PutObjectRequest.builder()
+								.bucket(bucketName)
+								.key(key)
+								.contentType(contentType)
+								.build(),
+						body));
+				return;
+			}
+			if (count > 0) uploadPart();
+			observeRequest("complete_multipart_upload", () -> s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+					.bucket(bucketName)
+					.key(key)
+					.uploadId(uploadId)
+					.multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+					.build()));
+			log.info("Completed multipart upload of {} in {} parts.", key, completedParts.size());
+		}
+		//Any failure, including client-side timeouts and resets, must discard the parts: abort() is a no-op once closed
+		catch (RuntimeException e) {
+			abortQuietly();
+			throw e;
+		} finally {
+			buffer = null;
+		}
+	}
+
+	/**
+	 * Discards everything written so far, including parts already sent to S3.
+	 */
+	void abort() {
+		if (closed) return;
+		closed = true;
+		buffer = null;
+		abortQuietly();
+	}
+
+	private void flushPart() {
+		if (uploadId == null) {
+			uploadId = observeRequest("create_multipart_upload", () -> s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+					.bucket(bucketName)
+					.key(key)
+					.contentType(contentType)
+					.build())).uploadId();
+		}
+		uploadPart();
+	}
+
+	private void uploadPart() {
+		int partNumber = completedParts.size() + 1;
+		RequestBody body = currentBufferBody();
+		UploadPartResponse response = observeRequest("upload_part", () -> s3Client.uploadPart(UploadPartRequest.builder()
+						.bucket(bucketName)
+						.key(key)
+						.uploadId(uploadId)
+						.partNumber(partNumber)
+						.build(),
+				body));
+		completedParts.add(CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build());
+		count = 0;
+	}
+
+	private <T> T observeRequest(String operation, Supplier<T> request) {
+		return Observation.createNotStarted(REQUEST_OBSERVATION, observationRegistry)
+				.contextualName("s3 " + operation)
+				.lowCardinalityKeyValue("operation", operation)
+				.observe(request);
+	}
+
+	//Wraps the live buffer without copying; the SDK reopens the stream if it has to retry
+	private RequestBody currentBufferBody() {
+		byte[] data = buffer;
+		int length = count;
+		return RequestBody.fromContentProvider(() -> new ByteArrayInputStream(data, 0, length), length, contentType);
+	}
+
+	private void ensureCapacity(int required) {
+		if (required <= buffer.length) return;
+		int newLength = Math.min(partSize, Math.max(required, buffer.length * 2));
+		buffer = Arrays.copyOf(buffer, newLength);
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) throw new IOException("Upload stream for " + key + " is closed");
+	}
+
+	private void abortQuietly() {
+		if (uploadId == null) return;
+		try {
+			observeRequest("abort_multipart_upload", () -> s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+					.bucket(bucketName)
+					.key(key)
+					.uploadId(uploadId)
+					.build()));
+		} catch (Exception e) {
+			log.error("Failed to abort multipart upload {} for {}", uploadId, key, e);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import za.co.cbank.securefilestatementdelivery.exception.FileCreationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Lays out large statements a segment at a time. Segments are read and formatted in order on the calling thread, inside
+ * its transaction, then rendered independently on the statement segment pool and appended in order to one document
+ * whose streams spill to scratch files in {@code config.statement.segmented.scratch_dir} beyond
+ * {@code config.statement.segmented.scratch_memory_mb}. No more segments are formatted ahead of the merge than the pool
+ * has threads, so the heap holds a handful of segments however long the statement is, while the render time falls with
+ * the number of cores. Each statement reads on one connection for as long as it renders, so at most
+ * {@code config.statement.segmented.max_statements} are rendered at once across every caller.
+ */
+@Slf4j
+@Component
+public class SegmentedStatementRenderer {
+	private static final long MEGABYTE = 1024 * 1024;
+
+	private final ForkJoinPool segmentPool;
+	private final long scratchMemoryBytes;
+	private final File scratchDir;
+	private final Semaphore statementPermits;
+
+	public SegmentedStatementRenderer(@Qualifier("statementSegmentPool") ForkJoinPool segmentPool,
+									  @Value("${config.statement.segmented.scratch_memory_mb}") long scratchMemoryMb,
+									  @Value("${config.statement.segmented.scratch_dir}") String scratchDir,
+									  @Value("${config.statement.segmented.max_statements}") int maxStatements) {
+		this.segmentPool = segmentPool;
+		this.scratchMemoryBytes = scratchMemoryMb * MEGABYTE;
+		this.scratchDir = new File(scratchDir);
+		this.statementPermits = new Semaphore(maxStatements, true);
+	}
+
+	//Takes one of the max_statements permits for the work, which should open the statement's transaction itself,
+	//so statements waiting for a permit do not hold a connection
+	public <T> T withStatementPermit(Supplier<T> work) {
+		try {
+			statementPermits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FileCreationException("Interrupted while waiting to render a segmented statement");
+		}
+		try {
+			return work.get();
+		} finally {
+			statementPermits.release();
+		}
+	}
+
+	//format is called on this thread, one segment at a time in order, and must read the segment's rows itself
+	public <F> PDDocument render(StatementRenderer<F> renderer, List<StatementSegment> segments, Function<StatementSegment, F> format) {
+		PDDocument merged = new PDDocument(MemoryUsageSetting.setupMixed(scratchMemoryBytes).setTempDir(scratchDir));
+		PDFMergerUtility merger = new PDFMergerUtility();
+		Deque<ForkJoinTask<PDDocument>> rendering = new ArrayDeque<>();
+		Map<String, String> context = MDC.getCopyOfContextMap();
+		int next = 0;
+		try {
+			for (int i = 0; i < segments.size(); i++) {
+				//Keep every pool thread busy, but format no further ahead of the merge than that
+				while (next < segments.size() && rendering.size() < segmentPool.getParallelism()) {
+					F formatted = format.apply(segments.get(next++));
+					rendering.add(segmentPool.submit(renderSegment(renderer, formatted, context)));
+				}
+				//Appending copies the segment's streams into the merged document, so it can be closed straight away
+				try (PDDocument segment = rendering.poll().join()) {
+					merger.appendDocument(merged, segment);
+				}
+			}
+			return merged;
+		}
+		catch (IOException | RuntimeException e) {
+			rendering.forEach(SegmentedStatementRenderer::discard);
+			closeQuietly(merged);
+			log.error("PDF Rendering Error: " + e.getMessage());
+			throw new FileCreationException("Failed to render a segmented statement: " + e.getMessage());
+		}
+	}
+
+	//Audit records read the user and IP from the MDC of the submitting request
+	private static <F> Callable<PDDocument> renderSegment(StatementRenderer<F> renderer, F formatted, Map<String, String> context) {
+		return () -> {
+			if (context != null) MDC.setContextMap(context);
+			try {
+				return renderer.render(formatted);
+			} finally {
+				MDC.clear();
+			}
+		};
+	}
+
+	//Segments already being rendered are waited for, so their documents are not left open
+	private static void discard(ForkJoinTask<PDDocument> task) {
+		if (task.cancel(false)) return;
+		try {
+			task.join().close();
+		} catch (IOException | RuntimeException e) {
+			log.debug("Discarded a statement segment: " + e.getMessage());
+		}
+	}
+
+	private static void closeQuietly(PDDocument document) {
+		try {
+			document.close();
+		} catch (IOException e) {
+			log.warn("Failed to release PDF document: " + e.getMessage());
+		}
+	}
+}
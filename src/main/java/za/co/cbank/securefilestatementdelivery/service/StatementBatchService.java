@@ -0,0 +1,186 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import za.co.cbank.securefilestatementdelivery.Audit.annotation.Auditable;
+import za.co.cbank.securefilestatementdelivery.dto.StatementBatchFailureDTO;
+import za.co.cbank.securefilestatementdelivery.dto.StatementBatchJobDTO;
+import za.co.cbank.securefilestatementdelivery.dto.StatementBatchRequestDTO;
+import za.co.cbank.securefilestatementdelivery.exception.InvalidRequestException;
+import za.co.cbank.securefilestatementdelivery.exception.ResourceNotFoundException;
+import za.co.cbank.securefilestatementdelivery.repository.CustomerAccountRepository;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Slf4j
+@Service
+public class StatementBatchService {
+
+	private final StatementService statementService;
+	private final CustomerAccountRepository customerAccountRepository;
+	private final StatementPipeline statementPipeline;
+	private final Map<String, StatementBatchJob> jobs = new ConcurrentHashMap<>();
+
+	@Value("${config.statement.batch.max_accounts}")
+	private Integer maxAccounts;
+	@Value("${config.statement.batch.job_retention_mins}")
+	private Integer jobRetentionMins;
+	@Value("${config.statement.batch.max_reported_failures}")
+	private Integer maxReportedFailures;
+
+	public StatementBatchService(StatementService statementService,
+								 CustomerAccountRepository customerAccountRepository,
+								 StatementPipeline statementPipeline) {
+		this.statementService = statementService;
+		this.customerAccountRepository = customerAccountRepository;
+		this.statementPipeline = statementPipeline;
+	}
+
+	@Auditable(action = "Statement batch submitted")
+	public StatementBatchJobDTO submitBatch(StatementBatchRequestDTO request) {
+		List<Integer> accountIds = resolveAccountIds(request);
+		StatementService.validatePeriod(request.getPeriodFrom(), request.getPeriodTo());
+		evictFinishedJobs();
+
+		StatementBatchJob job = new StatementBatchJob(UUID.randomUUID().toString(), accountIds,
+				request.getPeriodFrom(), request.getPeriodTo(), maxReportedFailures);
+		jobs.put(job.jobId, job);
+		log.info("Statement batch {} submitted for {} accounts", job.jobId, accountIds.size());
+
+		//Enough statements to fill every stage of the pipeline; each one finished starts the next
+		int inFlight = statementPipeline.capacity();
+		for (int i = 0; i < inFlight; i++) {
+			startNext(job);
+		}
+		return job.toDto();
+	}
+
+	public StatementBatchJobDTO getBatchJob(String jobId) {
+		StatementBatchJob job = jobs.get(jobId);
+		if (job == null) throw new ResourceNotFoundException("Statement batch job not found");
+		return job.toDto();
+	}
+
+	private List<Integer> resolveAccountIds(StatementBatchRequestDTO request) {
+		List<Integer> accountIds;
+		if (Boolean.TRUE.equals(request.getAllAccounts())) {
+			accountIds = customerAccountRepository.findAllAccountIds();
+		} else if (request.getAccountIds() != null && !request.getAccountIds().isEmpty()) {
+			accountIds = new ArrayList<>(new LinkedHashSet<>(request.getAccountIds()));
+		} else {
+			throw new InvalidRequestException("Provide accountIds or set allAccounts");
+		}
+		if (accountIds.isEmpty()) throw new InvalidRequestException("No accounts selected for the batch");
+		if (accountIds.size() > maxAccounts) {
+			throw new InvalidRequestException("A batch may contain at most " + maxAccounts + " accounts");
+		}
+		return accountIds;
+	}
+
+	private void startNext(StatementBatchJob job) {
+		Integer accountId = job.nextAccount();
+		if (accountId == null) return;
+
+		statementPipeline
+				.submit(() -> statementService.renderStatement(accountId, job.periodFrom, job.periodTo), statementService::publishStatement)
+				.whenComplete((result, error) -> {
+					if (error == null) {
+						job.recordSuccess();
+					} else {
+						Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+						log.error("Statement batch {} failed for accountId {}", job.jobId, accountId, cause);
+						job.recordFailure(accountId, cause.getMessage());
+					}
+					startNext(job);
+				});
+	}
+
+	private void evictFinishedJobs() {
+		LocalDateTime cutoff = LocalDateTime.now().minusMinutes(jobRetentionMins);
+		jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+	}
+
+	private static class StatementBatchJob {
+		private final String jobId;
+		private final List<Integer> accountIds;
+		private final LocalDate periodFrom;
+		private final LocalDate periodTo;
+		private final LocalDateTime submittedAt = LocalDateTime.now();
+		private final long startedNanos = System.nanoTime();
+		private final AtomicInteger completed = new AtomicInteger();
+		private final AtomicInteger failed = new AtomicInteger();
+		//Every failure is counted, but only the first few are kept, so a batch that fails throughout stays small to poll
+		private final int maxReportedFailures;
+		private final AtomicInteger reportedFailures = new AtomicInteger();
+		private final Queue<StatementBatchFailureDTO> failures = new ConcurrentLinkedQueue<>();
+		private final ReentrantLock dispatchLock = new ReentrantLock();
+		private int nextIndex;
+		private volatile long finishedNanos;
+		private volatile LocalDateTime finishedAt;
+
+		StatementBatchJob(String jobId, List<Integer> accountIds, LocalDate periodFrom, LocalDate periodTo, int maxReportedFailures) {
+			this.jobId = jobId;
+			this.accountIds = accountIds;
+			this.periodFrom = periodFrom;
+			this.periodTo = periodTo;
+			this.maxReportedFailures = maxReportedFailures;
+		}
+
+		Integer nextAccount() {
+			dispatchLock.lock();
+			try {
+				return nextIndex < accountIds.size() ? accountIds.get(nextIndex++) : null;
+			} finally {
+				dispatchLock.unlock();
+			}
+		}
+
+		void recordSuccess() {
+			completed.incrementAndGet();
+			markFinishedIfDone();
+		}
+
+		void recordFailure(Integer accountId, String reason) {
+			if (reportedFailures.getAndIncrement() < maxReportedFailures) {
+				failures.add(StatementBatchFailureDTO.builder().accountId(accountId).reason(reason).build());
+			}
+			failed.incrementAndGet();
+			markFinishedIfDone();
+		}
+
+		private void markFinishedIfDone() {
+			if (completed.get() + failed.get() == accountIds.size()) {
+				finishedNanos = System.nanoTime();
+				finishedAt = LocalDateTime.now();
+			}
+		}
+
+		StatementBatchJobDTO toDto() {
+			int done = completed.get();
+			int errored = failed.get();
+			long endNanos = finishedAt != null ? finishedNanos : System.nanoTime();
+			double elapsedSeconds = Math.max(Duration.ofNanos(endNanos - startedNanos).toMillis(), 1) / 1000.0;
+			String status = finishedAt == null ? "RUNNING" : errored == 0 ? "COMPLETED" : "COMPLETED_WITH_FAILURES";
+			return StatementBatchJobDTO.builder()
+					.jobId(jobId)
+					.status(status)
+					.totalAccounts(accountIds.size())
+					.completedAccounts(done)
+					.failedAccounts(errored)
+					.statementsPerSecond((done + errored) / elapsedSeconds)
+					.submittedAt(submittedAt)
+					.finishedAt(finishedAt)
+					.failures(List.copyOf(failures))
+					.build();
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Iterator;
+
+/**
+ * What a statement shows: the account, the period, the balance brought forward and the period's transactions in
+ * posting order. The transactions are read as they are iterated, so they can only be walked once.
+ * <p>
+ * Large statements are rendered in segments, each with part of the transactions and the balance brought forward to
+ * its first row. Only the {@code first} segment prints the account details and opening balance, and only the
+ * {@code last} prints the closing balance.
+ */
+public record StatementContent(CustomerAccount customerAccount, LocalDate periodFrom, LocalDate periodTo,
+							   BigDecimal openingBalance, Iterator<Transaction> transactions, boolean first, boolean last) {
+
+	//The whole statement in one piece
+	public StatementContent(CustomerAccount customerAccount, LocalDate periodFrom, LocalDate periodTo,
+							BigDecimal openingBalance, Iterator<Transaction> transactions) {
+		this(customerAccount, periodFrom, periodTo, openingBalance, transactions, true, true);
+	}
+}
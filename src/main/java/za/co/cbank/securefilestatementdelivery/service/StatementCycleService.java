@@ -0,0 +1,341 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import za.co.cbank.securefilestatementdelivery.Audit.annotation.Auditable;
+import za.co.cbank.securefilestatementdelivery.dto.StatementBatchFailureDTO;
+import za.co.cbank.securefilestatementdelivery.dto.StatementCycleDTO;
+import za.co.cbank.securefilestatementdelivery.exception.InvalidRequestException;
+import za.co.cbank.securefilestatementdelivery.exception.ResourceNotFoundException;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statement cycles shared by every replica. Starting a cycle writes one work item per account with transactions in
+ * the period to {@code statement_cycle_items}; the month-end trigger fires on every node, but only the first insert
+ * of a period goes through. Each node claims pending items with {@code SELECT ... FOR UPDATE SKIP LOCKED}, so nodes
+ * never wait on each other's rows, as many at a time as its {@link StatementPipeline} has free slots for. A claim is a lease
+ * that the node renews every {@code config.statement.cycle.lease_renew_secs} for as long as it holds the item, so
+ * only items held by a node that died or lost the database are put back when it runs out. An item that fails is
+ * retried after a backoff until {@code config.statement.cycle.max_attempts} is spent.
+ */
+@Slf4j
+@Service
+public class StatementCycleService {
+	private static final String INSERT_CYCLE_SQL = "INSERT INTO statement_cycles (period_from, period_to, created_at, total_items) " +
+			"VALUES (:periodFrom, :periodTo, :now, 0) ON CONFLICT DO NOTHING";
+	private static final String FIND_CYCLE_SQL = "SELECT cycle_id FROM statement_cycles WHERE period_from = :periodFrom AND period_to = :periodTo";
+	//Accounts with something to report in the period, each found through transactions_account_id_post_date_idx
+	private static final String INSERT_ITEMS_SQL = "INSERT INTO statement_cycle_items (cycle_id, account_id, status, attempts, available_at) " +
+			"SELECT :cycleId, a.account_id, 'PENDING', 0, :now FROM customer_accounts a WHERE EXISTS " +
+			"(SELECT 1 FROM transactions t WHERE t.account_id = a.account_id AND t.post_date BETWEEN :periodFrom AND :periodTo)";
+	private static final String SET_TOTAL_SQL = "UPDATE statement_cycles SET total_items = :total WHERE cycle_id = :cycleId";
+	//Rows another node has locked are skipped rather than waited for
+	private static final String CLAIM_SQL = "SELECT item_id, cycle_id, account_id, attempts FROM statement_cycle_items " +
+			"WHERE status = 'PENDING' AND available_at <= :now ORDER BY available_at LIMIT :limit FOR UPDATE SKIP LOCKED";
+	private static final String LEASE_SQL = "UPDATE statement_cycle_items SET status = 'CLAIMED', attempts = attempts + 1, " +
+			"lease_owner = :owner, lease_expires_at = :leaseExpiresAt WHERE item_id IN (:itemIds)";
+	private static final String RENEW_LEASES_SQL = "UPDATE statement_cycle_items SET lease_expires_at = :leaseExpiresAt " +
+			"WHERE item_id IN (:itemIds) AND status = 'CLAIMED' AND lease_owner = :owner";
+	private static final String FIND_PERIODS_SQL = "SELECT cycle_id, period_from, period_to FROM statement_cycles WHERE cycle_id IN (:cycleIds)";
+	//Only the lease holder may finish an item, so a node that outlived its lease cannot overwrite the node that took it over
+	private static final String COMPLETE_SQL = "UPDATE statement_cycle_items SET status = 'COMPLETED', statement_id = :statementId, " +
+			"completed_at = :now, last_error = NULL, lease_owner = NULL, lease_expires_at = NULL " +
+			"WHERE item_id = :itemId AND status = 'CLAIMED' AND lease_owner = :owner";
+	//The driver sends timestamps untyped, which a CASE without a typed branch would resolve to text
+	private static final String FAIL_SQL = "UPDATE statement_cycle_items SET " +
+			"status = CASE WHEN attempts >= :maxAttempts THEN 'FAILED' ELSE 'PENDING' END, " +
+			"completed_at = CASE WHEN attempts >= :maxAttempts THEN CAST(:now AS timestamp) END, " +
+			"available_at = :availableAt, last_error = :error, lease_owner = NULL, lease_expires_at = NULL " +
+			"WHERE item_id = :itemId AND status = 'CLAIMED' AND lease_owner = :owner";
+	private static final String EXPIRE_LEASES_SQL = "UPDATE statement_cycle_items SET " +
+			"status = CASE WHEN attempts >= :maxAttempts THEN 'FAILED' ELSE 'PENDING' END, " +
+			"completed_at = CASE WHEN attempts >= :maxAttempts THEN CAST(:now AS timestamp) END, " +
+			"available_at = :now, last_error = 'Lease held by ' || lease_owner || ' expired', lease_owner = NULL, lease_expires_at = NULL " +
+			"WHERE status = 'CLAIMED' AND lease_expires_at < :now";
+	private static final String CYCLE_SQL = "SELECT period_from, period_to, created_at, total_items FROM statement_cycles WHERE cycle_id = :cycleId";
+	private static final String PROGRESS_SQL = "SELECT status, count(*) AS items, sum(CASE WHEN attempts > 1 THEN attempts - 1 ELSE 0 END) AS retries, " +
+			"max(completed_at) AS last_completed_at FROM statement_cycle_items WHERE cycle_id = :cycleId GROUP BY status";
+	private static final String ACTIVE_NODES_SQL = "SELECT lease_owner, count(*) AS items FROM statement_cycle_items " +
+			"WHERE cycle_id = :cycleId AND status = 'CLAIMED' GROUP BY lease_owner";
+	private static final String FAILURES_SQL = "SELECT account_id, last_error FROM statement_cycle_items " +
+			"WHERE cycle_id = :cycleId AND status = 'FAILED' ORDER BY item_id LIMIT :limit";
+	private static final int MAX_ERROR_LENGTH = 1000;
+
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+	private final StatementService statementService;
+	private final StatementPipeline statementPipeline;
+	private final boolean enabled;
+	private final String nodeId;
+	private final Duration lease;
+	private final int maxAttempts;
+	private final Duration retryBackoff;
+	private final int maxReportedFailures;
+	//Items claimed by this node and not yet completed or failed, whose leases are renewed
+	private final Set<Long> heldItemIds = ConcurrentHashMap.newKeySet();
+	private final Clock clock;
+
+	@Autowired
+	public StatementCycleService(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+								 StatementService statementService, StatementPipeline statementPipeline,
+								 @Value("${config.statement.cycle.enabled}") boolean enabled,
+								 @Value("${config.statement.cycle.node_id}") String nodeId,
+								 @Value("${config.statement.cycle.lease_secs}") long leaseSecs,
+								 @Value("${config.statement.cycle.max_attempts}") int maxAttempts,
+								 @Value("${config.statement.cycle.retry_backoff_secs}") long retryBackoffSecs,
+								 @Value("${config.statement.cycle.max_reported_failures}") int maxReportedFailures) {
+		this(jdbcTemplate, transactionManager, statementService, statementPipeline, enabled, nodeId, leaseSecs, maxAttempts,
+				retryBackoffSecs, maxReportedFailures, Clock.systemDefaultZone());
+	}
+
+	//Leases, retries and claims are all timed by the clock, so they can be tested without waiting
+	StatementCycleService(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+						  StatementService statementService, StatementPipeline statementPipeline, boolean enabled, String nodeId,
+						  long leaseSecs, int maxAttempts, long retryBackoffSecs, int maxReportedFailures, Clock clock) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.statementService = statementService;
+		this.statementPipeline = statementPipeline;
+		this.enabled = enabled;
+		this.nodeId = nodeId == null || nodeId.isBlank() ? defaultNodeId() : nodeId;
+		this.lease = Duration.ofSeconds(leaseSecs);
+		this.maxAttempts = maxAttempts;
+		this.retryBackoff = Duration.ofSeconds(retryBackoffSecs);
+		this.maxReportedFailures = maxReportedFailures;
+		this.clock = clock;
+	}
+
+	//Every enabled replica fires; the cycle for the month just ended is only created once
+	@Scheduled(cron = "${config.statement.cycle.cron}")
+	public void startMonthEndCycle() {
+		if (!enabled) return;
+		YearMonth previousMonth = YearMonth.now(clock).minusMonths(1);
+		startCycle(previousMonth.atDay(1), previousMonth.atEndOfMonth());
+	}
+
+	//Starting the same period again returns the existing cycle
+	@Auditable(action = "Statement cycle started")
+	public StatementCycleDTO startCycle(LocalDate periodFrom, LocalDate periodTo) {
+		if (periodFrom == null && periodTo == null) {
+			YearMonth previousMonth = YearMonth.now(clock).minusMonths(1);
+			periodFrom = previousMonth.atDay(1);
+			periodTo = previousMonth.atEndOfMonth();
+		} else if (periodFrom == null || periodTo == null) {
+			throw new InvalidRequestException("Provide both periodFrom and periodTo, or neither for the previous month");
+		}
+		StatementService.validatePeriod(periodFrom, periodTo);
+
+		MapSqlParameterSource params = new MapSqlParameterSource()
+				.addValue("periodFrom", periodFrom)
+				.addValue("periodTo", periodTo)
+				.addValue("now", Timestamp.valueOf(LocalDateTime.now(clock)));
+		Integer cycleId = transactionTemplate.execute(status -> {
+			int created = jdbcTemplate.update(INSERT_CYCLE_SQL, params);
+			Integer id = jdbcTemplate.queryForObject(FIND_CYCLE_SQL, params, Integer.class);
+			if (created == 1) {
+				params.addValue("cycleId", id);
+				int total = jdbcTemplate.update(INSERT_ITEMS_SQL, params);
+				jdbcTemplate.update(SET_TOTAL_SQL, params.addValue("total", total));
+				log.info("Statement cycle {} started for {} to {} with {} accounts", id, params.getValue("periodFrom"), params.getValue("periodTo"), total);
+			}
+			return id;
+		});
+		return getCycle(cycleId);
+	}
+
+	@Scheduled(fixedDelayString = "${config.statement.cycle.poll_ms}")
+	public void claimWork() {
+		if (!enabled) return;
+		//Only as many as can start now, so no claimed item waits in the pipeline behind other work
+		int slots = statementPipeline.reserve(statementPipeline.capacity());
+		if (slots == 0) return;
+		List<CycleItem> claimed = List.of();
+		try {
+			claimed = claim(slots);
+		} finally {
+			statementPipeline.release(slots - claimed.size());
+		}
+		for (CycleItem item : claimed) {
+			process(item);
+		}
+	}
+
+	//Extends the leases of the items this node holds, whether they are still rendering or waiting to be uploaded
+	@Scheduled(fixedDelayString = "${config.statement.cycle.lease_renew_secs}", timeUnit = TimeUnit.SECONDS)
+	public void renewLeases() {
+		if (!enabled || heldItemIds.isEmpty()) return;
+		List<Long> itemIds = List.copyOf(heldItemIds);
+		int renewed = jdbcTemplate.update(RENEW_LEASES_SQL, Map.of("owner", nodeId,
+				"leaseExpiresAt", Timestamp.valueOf(LocalDateTime.now(clock).plus(lease)), "itemIds", itemIds));
+		//Finished items drop out between the copy and the update; the rest were taken over while this node lost contact
+		if (renewed < itemIds.size()) log.debug("Renewed {} of {} statement cycle leases", renewed, itemIds.size());
+	}
+
+	//Puts back items whose node stopped renewing them, or fails them when their attempts are spent
+	@Scheduled(fixedDelayString = "${config.statement.cycle.lease_sweep_secs}", timeUnit = TimeUnit.SECONDS)
+	public void expireLeases() {
+		if (!enabled) return;
+		Timestamp now = Timestamp.valueOf(LocalDateTime.now(clock));
+		int expired = jdbcTemplate.update(EXPIRE_LEASES_SQL, Map.of("now", now, "maxAttempts", maxAttempts));
+		if (expired > 0) log.warn("Released {} statement cycle items whose lease expired", expired);
+	}
+
+	public StatementCycleDTO getCycle(Integer cycleId) {
+		Map<String, Object> params = Map.of("cycleId", cycleId, "limit", maxReportedFailures);
+		List<Map<String, Object>> cycles = jdbcTemplate.queryForList(CYCLE_SQL, params);
+		if (cycles.isEmpty()) throw new ResourceNotFoundException("Statement cycle not found");
+		Map<String, Object> cycle = cycles.getFirst();
+		LocalDateTime createdAt = ((Timestamp) cycle.get("created_at")).toLocalDateTime();
+
+		Map<String, Integer> counts = new HashMap<>();
+		int retries = 0;
+		LocalDateTime lastCompletedAt = null;
+		for (Map<String, Object> row : jdbcTemplate.queryForList(PROGRESS_SQL, params)) {
+			counts.put((String) row.get("status"), ((Number) row.get("items")).intValue());
+			retries += ((Number) row.get("retries")).intValue();
+			Timestamp completedAt = (Timestamp) row.get("last_completed_at");
+			if (completedAt != null && (lastCompletedAt == null || completedAt.toLocalDateTime().isAfter(lastCompletedAt))) {
+				lastCompletedAt = completedAt.toLocalDateTime();
+			}
+		}
+		Map<String, Integer> activeNodes = new TreeMap<>();
+		for (Map<String, Object> row : jdbcTemplate.queryForList(ACTIVE_NODES_SQL, params)) {
+			activeNodes.put((String) row.get("lease_owner"), ((Number) row.get("items")).intValue());
+		}
+		List<StatementBatchFailureDTO> failures = jdbcTemplate.query(FAILURES_SQL, params, (rs, rowNum) ->
+				StatementBatchFailureDTO.builder().accountId(rs.getInt("account_id")).reason(rs.getString("last_error")).build());
+
+		int pending = counts.getOrDefault("PENDING", 0);
+		int inProgress = counts.getOrDefault("CLAIMED", 0);
+		int completed = counts.getOrDefault("COMPLETED", 0);
+		int failed = counts.getOrDefault("FAILED", 0);
+		boolean finished = pending + inProgress == 0;
+		LocalDateTime finishedAt = finished ? (lastCompletedAt != null ? lastCompletedAt : createdAt) : null;
+		LocalDateTime end = finished ? finishedAt : LocalDateTime.now(clock);
+		double elapsedSeconds = Math.max(Duration.between(createdAt, end).toMillis(), 1) / 1000.0;
+		return StatementCycleDTO.builder()
+				.cycleId(cycleId)
+				.status(!finished ? "RUNNING" : failed == 0 ? "COMPLETED" : "COMPLETED_WITH_FAILURES")
+				.periodFrom(((java.sql.Date) cycle.get("period_from")).toLocalDate())
+				.periodTo(((java.sql.Date) cycle.get("period_to")).toLocalDate())
+				.totalAccounts(((Number) cycle.get("total_items")).intValue())
+				.pendingAccounts(pending)
+				.inProgressAccounts(inProgress)
+				.completedAccounts(completed)
+				.failedAccounts(failed)
+				.retries(retries)
+				.activeNodes(activeNodes)
+				.statementsPerSecond((completed + failed) / elapsedSeconds)
+				.createdAt(createdAt)
+				.finishedAt(finishedAt)
+				.failures(failures)
+				.build();
+	}
+
+	String getNodeId() {
+		return nodeId;
+	}
+
+	int heldItemCount() {
+		return heldItemIds.size();
+	}
+
+	//Claimed and leased in one short transaction, so the row locks are held only while the lease is written
+	List<CycleItem> claim(int limit) {
+		LocalDateTime now = LocalDateTime.now(clock);
+		return transactionTemplate.execute(status -> {
+			List<CycleItem> claimed = jdbcTemplate.query(CLAIM_SQL, Map.of("now", Timestamp.valueOf(now), "limit", limit),
+					(rs, rowNum) -> new CycleItem(rs.getLong("item_id"), rs.getInt("cycle_id"), rs.getInt("account_id"), rs.getInt("attempts") + 1, null, null));
+			if (claimed.isEmpty()) return claimed;
+
+			List<Long> itemIds = claimed.stream().map(CycleItem::itemId).toList();
+			jdbcTemplate.update(LEASE_SQL, Map.of("owner", nodeId, "leaseExpiresAt", Timestamp.valueOf(now.plus(lease)), "itemIds", itemIds));
+			Set<Integer> cycleIds = new HashSet<>();
+			for (CycleItem item : claimed) cycleIds.add(item.cycleId());
+			Map<Integer, LocalDate[]> periods = new HashMap<>();
+			jdbcTemplate.query(FIND_PERIODS_SQL, Map.of("cycleIds", cycleIds), rs -> {
+				periods.put(rs.getInt("cycle_id"), new LocalDate[]{rs.getDate("period_from").toLocalDate(), rs.getDate("period_to").toLocalDate()});
+			});
+			return claimed.stream().map(item -> {
+				LocalDate[] period = periods.get(item.cycleId());
+				return new CycleItem(item.itemId(), item.cycleId(), item.accountId(), item.attempt(), period[0], period[1]);
+			}).toList();
+		});
+	}
+
+	private void process(CycleItem item) {
+		heldItemIds.add(item.itemId());
+		statementPipeline
+				.submitReserved(() -> statementService.renderStatement(item.accountId(), item.periodFrom(), item.periodTo()), statementService::publishStatement)
+				.whenComplete((result, error) -> {
+					try {
+						if (error == null) {
+							complete(item, (Integer) result.get("statementId"));
+						} else {
+							Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+							log.error("Statement cycle {} failed for accountId {}", item.cycleId(), item.accountId(), cause);
+							fail(item, cause.getMessage());
+						}
+					} catch (DataAccessException e) {
+						//The lease is no longer renewed, so it runs out and another attempt is made
+						log.error("Could not record the outcome of statement cycle item {}", item.itemId(), e);
+					} finally {
+						heldItemIds.remove(item.itemId());
+					}
+				});
+	}
+
+	private void complete(CycleItem item, Integer statementId) {
+		int updated = jdbcTemplate.update(COMPLETE_SQL, new MapSqlParameterSource()
+				.addValue("statementId", statementId)
+				.addValue("now", Timestamp.valueOf(LocalDateTime.now(clock)))
+				.addValue("itemId", item.itemId())
+				.addValue("owner", nodeId));
+		if (updated == 0) log.warn("Statement cycle item {} was taken over after its lease expired", item.itemId());
+	}
+
+	private void fail(CycleItem item, String error) {
+		LocalDateTime now = LocalDateTime.now(clock);
+		String reason = error == null ? "Unknown error" : error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+		jdbcTemplate.update(FAIL_SQL, new MapSqlParameterSource()
+				.addValue("maxAttempts", maxAttempts)
+				.addValue("now", Timestamp.valueOf(now))
+				.addValue("availableAt", Timestamp.valueOf(now.plus(retryBackoff.multipliedBy(item.attempt()))))
+				.addValue("error", reason)
+				.addValue("itemId", item.itemId())
+				.addValue("owner", nodeId));
+	}
+
+	private static String defaultNodeId() {
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			host = "unknown";
+		}
+		return host + "-" + ProcessHandle.current().pid();
+	}
+
+	record CycleItem(Long itemId, Integer cycleId, Integer accountId, int attempt, LocalDate periodFrom, LocalDate periodTo) {
+	}
+}
@@ -0,0 +1,67 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A statement PDF being streamed from file storage. The content is only requested from storage
+ * once {@link #writeTo(OutputStream)} starts, and at most {@link #PREFETCH_CHUNKS} network chunks are
+ * held in memory at any time. Status, {@code Content-Range} and {@code ETag} are file storage's answer to the
+ * client's range and conditional headers, so a partial or not-modified response is passed on as it is.
+ */
+@Getter
+@AllArgsConstructor
+public class StatementDownload {
+	static final int PREFETCH_CHUNKS = 4;
+
+	private final HttpStatusCode status;
+	//-1 when file storage did not send a Content-Length
+	private final long contentLength;
+	//Null unless storage answered with part of the file
+	private final String contentRange;
+	private final String entityTag;
+	private final Flux<DataBuffer> content;
+
+	public StatementDownload(long contentLength, Flux<DataBuffer> content) {
+		this(HttpStatus.OK, contentLength, null, null, content);
+	}
+
+	//Blocking copy on the calling thread so a slow client never stalls the HTTP client's event loop
+	public void writeTo(OutputStream outputStream) throws IOException {
+		WritableByteChannel channel = Channels.newChannel(outputStream);
+		Sinks.Empty<Void> abandoned = Sinks.empty();
+		Queue<DataBuffer> pending = new ArrayBlockingQueue<>(PREFETCH_CHUNKS);
+		try {
+			for (DataBuffer chunk : content.takeUntilOther(abandoned.asMono()).toIterable(PREFETCH_CHUNKS, () -> pending)) {
+				try (DataBuffer.ByteBufferIterator byteBuffers = chunk.readableByteBuffers()) {
+					while (byteBuffers.hasNext()) {
+						ByteBuffer byteBuffer = byteBuffers.next();
+						while (byteBuffer.hasRemaining()) channel.write(byteBuffer);
+					}
+				} finally {
+					DataBufferUtils.release(chunk);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			//The client went away or storage failed: stop reading and hand the prefetched chunks back to the pool
+			abandoned.tryEmitEmpty();
+			DataBuffer chunk;
+			while ((chunk = pending.poll()) != null) DataBufferUtils.release(chunk);
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Two-stage pipeline for multi-statement work. Statements are laid out on the render executor (CPU-bound, one thread
+ * per core by default) and handed over through a queue of {@code config.statement.batch.handoff_capacity} to the
+ * upload executor, which encrypts, uploads and records them while the next ones render. When the queue is full a
+ * render thread waits for room, so rendering never runs more than the queue ahead of uploads. Every caller shares
+ * {@link #capacity()} slots: a statement takes one when it is admitted and gives it back once published or failed,
+ * and submissions beyond that wait in arrival order, so neither executor queues more than the pipeline can hold.
+ */
+@Component
+public class StatementPipeline {
+	static final String HANDOFF_DEPTH_GAUGE = "statement.pipeline.handoff.depth";
+	static final String HANDOFF_WAIT_TIMER = "statement.pipeline.handoff.wait";
+	static final String UTILISATION_GAUGE = "statement.pipeline.utilisation";
+	static final String BUSY_COUNTER = "statement.pipeline.busy";
+	static final String WAITING_GAUGE = "statement.pipeline.waiting";
+
+	private final ThreadPoolTaskExecutor renderExecutor;
+	private final ThreadPoolTaskExecutor uploadExecutor;
+	private final BlockingQueue<Handoff<?, ?>> handoff;
+	private final int handoffCapacity;
+	private final Stage renderStage = new Stage();
+	private final Stage uploadStage = new Stage();
+	private final Timer handoffWait;
+	//Free slots and the submissions waiting for one; a slot given back goes straight to the longest waiting
+	private final Lock admissionLock = new ReentrantLock();
+	private final Deque<Runnable> waiting = new ArrayDeque<>();
+	private int freeSlots;
+
+	public StatementPipeline(@Qualifier("statementRenderExecutor") ThreadPoolTaskExecutor renderExecutor,
+							 @Qualifier("statementUploadExecutor") ThreadPoolTaskExecutor uploadExecutor,
+							 MeterRegistry meterRegistry,
+							 @Value("${config.statement.batch.handoff_capacity}") int handoffCapacity) {
+		this.renderExecutor = renderExecutor;
+		this.uploadExecutor = uploadExecutor;
+		this.handoff = new ArrayBlockingQueue<>(handoffCapacity);
+		this.handoffCapacity = handoffCapacity;
+		Gauge.builder(HANDOFF_DEPTH_GAUGE, handoff, BlockingQueue::size)
+				.description("Rendered statements waiting for an upload thread")
+				.register(meterRegistry);
+		this.handoffWait = Timer.builder(HANDOFF_WAIT_TIMER)
+				.description("Time render threads waited for room in the hand-off queue")
+				.register(meterRegistry);
+		registerStage(meterRegistry, "render", renderStage, renderExecutor);
+		registerStage(meterRegistry, "upload", uploadStage, uploadExecutor);
+		this.freeSlots = capacity();
+		Gauge.builder(WAITING_GAUGE, this, StatementPipeline::waitingCount)
+				.description("Statements submitted but not yet admitted, waiting for a slot")
+				.register(meterRegistry);
+	}
+
+	//Statements in flight that keep both stages busy without holding more documents than the queue allows
+	public int capacity() {
+		return renderExecutor.getMaxPoolSize() + handoffCapacity + uploadExecutor.getMaxPoolSize();
+	}
+
+	//Renders on the render executor, then publishes on the upload executor; the rendered statement is closed after publishing.
+	//Waits for a slot without blocking the caller when all of them are taken
+	public <R extends Closeable, P> CompletableFuture<P> submit(Supplier<R> render, Function<R, P> publish) {
+		CompletableFuture<P> result = new CompletableFuture<>();
+		Runnable start = () -> start(render, publish, result);
+		boolean admitted;
+		admissionLock.lock();
+		try {
+			admitted = freeSlots > 0;
+			if (admitted) {
+				freeSlots--;
+			} else {
+				waiting.add(start);
+			}
+		} finally {
+			admissionLock.unlock();
+		}
+		if (admitted) start.run();
+		return result;
+	}
+
+	//Takes up to wanted slots for work that should only be picked up when it can start now; none while others are waiting
+	public int reserve(int wanted) {
+		admissionLock.lock();
+		try {
+			int reserved = waiting.isEmpty() ? Math.min(wanted, freeSlots) : 0;
+			freeSlots -= reserved;
+			return reserved;
+		} finally {
+			admissionLock.unlock();
+		}
+	}
+
+	//As submit, using a slot taken with reserve
+	public <R extends Closeable, P> CompletableFuture<P> submitReserved(Supplier<R> render, Function<R, P> publish) {
+		CompletableFuture<P> result = new CompletableFuture<>();
+		start(render, publish, result);
+		return result;
+	}
+
+	//Gives back reserved slots that were not used
+	public void release(int slots) {
+		for (int i = 0; i < slots; i++) {
+			releaseSlot();
+		}
+	}
+
+	private <R extends Closeable, P> void start(Supplier<R> render, Function<R, P> publish, CompletableFuture<P> result) {
+		result.whenComplete((published, error) -> releaseSlot());
+		try {
+			renderExecutor.execute(() -> renderAndHandOff(render, publish, result));
+		} catch (TaskRejectedException e) {
+			result.completeExceptionally(e);
+		}
+	}
+
+	private void releaseSlot() {
+		Runnable next;
+		admissionLock.lock();
+		try {
+			next = waiting.poll();
+			if (next == null) freeSlots++;
+		} finally {
+			admissionLock.unlock();
+		}
+		if (next != null) next.run();
+	}
+
+	private int waitingCount() {
+		admissionLock.lock();
+		try {
+			return waiting.size();
+		} finally {
+			admissionLock.unlock();
+		}
+	}
+
+	private <R extends Closeable, P> void renderAndHandOff(Supplier<R> render, Function<R, P> publish, CompletableFuture<P> result) {
+		R rendered;
+		try {
+			rendered = renderStage.run(render);
+		} catch (Throwable e) {
+			result.completeExceptionally(e);
+			return;
+		}
+		Handoff<R, P> item = new Handoff<>(rendered, publish, result);
+		long started = System.nanoTime();
+		try {
+			handoff.put(item);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			item.discard(e);
+			return;
+		}
+		handoffWait.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+		try {
+			uploadExecutor.execute(this::publishNext);
+		} catch (TaskRejectedException e) {
+			//Shutting down: nothing will drain the item just queued
+			if (handoff.remove(item)) item.discard(e);
+		}
+	}
+
+	//One task is submitted per item queued, so each takes whichever item is at the head
+	private void publishNext() {
+		Handoff<?, ?> item = handoff.poll();
+		if (item != null) item.publish(uploadStage);
+	}
+
+	private static void registerStage(MeterRegistry meterRegistry, String name, Stage stage, ThreadPoolTaskExecutor executor) {
+		Gauge.builder(UTILISATION_GAUGE, stage, s -> (double) s.busy.get() / executor.getMaxPoolSize())
+				.description("Share of the stage's threads working on a statement right now")
+				.tag("stage", name)
+				.register(meterRegistry);
+		FunctionCounter.builder(BUSY_COUNTER, stage, s -> s.busyNanos.sum() / 1e9)
+				.description("Thread time spent working on statements; its rate over the thread count is utilisation")
+				.baseUnit("seconds")
+				.tag("stage", name)
+				.register(meterRegistry);
+	}
+
+	private static final class Stage {
+		private final AtomicInteger busy = new AtomicInteger();
+		private final LongAdder busyNanos = new LongAdder();
+
+		<T> T run(Supplier<T> work) {
+			busy.incrementAndGet();
+			long started = System.nanoTime();
+			try {
+				return work.get();
+			} finally {
+				busyNanos.add(System.nanoTime() - started);
+				busy.decrementAndGet();
+			}
+		}
+	}
+
+	private record Handoff<R extends Closeable, P>(R rendered, Function<R, P> publish, CompletableFuture<P> result) {
+
+		//Completes only once the rendered statement is closed, so callers never see it still open
+		void publish(Stage stage) {
+			P published;
+			try (R resource = rendered) {
+				published = stage.run(() -> publish.apply(resource));
+			} catch (Throwable e) {
+				result.completeExceptionally(e);
+				return;
+			}
+			result.complete(published);
+		}
+
+		void discard(Throwable cause) {
+			try {
+				rendered.close();
+			} catch (Exception e) {
+				cause.addSuppressed(e);
+			}
+			result.completeExceptionally(cause);
+		}
+	}
+}
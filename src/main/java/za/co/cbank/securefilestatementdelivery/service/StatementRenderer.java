@@ -0,0 +1,21 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Lays out statement PDFs. {@link #format} is called while the statement's transactions are streamed inside a
+ * read-only transaction and should only capture what layout needs; {@link #render} is called once that transaction
+ * has ended, so no connection is held while the PDF is laid out. Each template picks its renderer with
+ * {@code config.statement.renderer.<template>}.
+ *
+ * @param <F> what formatting hands over to rendering
+ */
+public interface StatementRenderer<F> {
+
+	//The value of config.statement.renderer.<template> that selects this renderer
+	String name();
+
+	F format(StatementContent content);
+
+	PDDocument render(F formatted);
+}
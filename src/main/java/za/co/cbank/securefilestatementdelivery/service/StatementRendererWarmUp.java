@@ -0,0 +1,99 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import za.co.cbank.securefilestatementdelivery.Audit.aspect.aspect.AuditAspect;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders and protects one made-up statement with every renderer at startup. Application runners finish before the
+ * readiness state turns to ACCEPTING_TRAFFIC, so the template parse, the default stylesheet, the font metrics, the
+ * AES setup and the class loading are all paid for before the first statement request can arrive. Auditing is
+ * suppressed while it runs.
+ */
+@Slf4j
+@Component
+public class StatementRendererWarmUp implements ApplicationRunner {
+	static final String WARM_UP_TIMER = "statement.renderer.warmup";
+	private static final LocalDate PERIOD_FROM = LocalDate.of(2000, 1, 1);
+
+	private final StatementRenderers statementRenderers;
+	private final FileCreationService fileCreationService;
+	private final MeterRegistry meterRegistry;
+	private final boolean enabled;
+	private final int rows;
+
+	public StatementRendererWarmUp(StatementRenderers statementRenderers,
+								   FileCreationService fileCreationService,
+								   MeterRegistry meterRegistry,
+								   @Value("${config.pdf.warm_up.enabled}") boolean enabled,
+								   @Value("${config.pdf.warm_up.rows}") int rows) {
+		this.statementRenderers = statementRenderers;
+		this.fileCreationService = fileCreationService;
+		this.meterRegistry = meterRegistry;
+		this.enabled = enabled;
+		this.rows = rows;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		if (!enabled) return;
+		for (StatementRenderer<?> renderer : statementRenderers.all()) {
+			Timer.Sample sample = Timer.start(meterRegistry);
+			try {
+				//The made-up statement is not one a user rendered, so it leaves no audit record
+				AuditAspect.withoutAuditing(() -> warmUp(renderer));
+				long nanos = sample.stop(timer(renderer, "success"));
+				log.info("Warmed up the {} statement renderer in {} ms", renderer.name(), nanos / 1_000_000);
+			}
+			//A renderer that cannot render is reported, but the others still serve their templates
+			catch (RuntimeException e) {
+				sample.stop(timer(renderer, "failure"));
+				log.warn("Failed to warm up the {} statement renderer: {}", renderer.name(), e.getMessage());
+			}
+		}
+	}
+
+	private <F> void warmUp(StatementRenderer<F> renderer) {
+		F formatted = renderer.format(content());
+		try (PDDocument document = renderer.render(formatted)) {
+			fileCreationService.writeProtectedPdf(document, "warm-up", OutputStream.nullOutputStream());
+		} catch (IOException e) {
+			log.warn("Failed to release the warm-up statement: " + e.getMessage());
+		}
+	}
+
+	private StatementContent content() {
+		CustomerAccount customerAccount = CustomerAccount.builder()
+				.accountId(0).firstName("Warm").lastName("Up").emailAddress("warm.up@example.com").cellphoneNumber("0000000000").build();
+		List<Transaction> transactions = new ArrayList<>(rows);
+		for (int i = 0; i < rows; i++) {
+			transactions.add(Transaction.builder()
+					.postDate(PERIOD_FROM.plusDays(i % 28)).description("Warm-up transaction " + i)
+					.amount(new BigDecimal("10.00")).drOrCr(i % 2 == 0 ? "CR" : "DR").customerAccount(customerAccount).build());
+		}
+		return new StatementContent(customerAccount, PERIOD_FROM, PERIOD_FROM.plusDays(27), BigDecimal.ZERO, transactions.iterator());
+	}
+
+	private Timer timer(StatementRenderer<?> renderer, String outcome) {
+		return Timer.builder(WARM_UP_TIMER)
+				.description("Time taken to render and protect the startup warm-up statement")
+				.tag("renderer", renderer.name())
+				.tag("outcome", outcome)
+				.register(meterRegistry);
+	}
+}
@@ -0,0 +1,41 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The statement renderers by name, and which one lays out each template: {@code config.statement.renderer.<template>},
+ * or {@code html} when it is not set.
+ */
+@Component
+public class StatementRenderers {
+	static final String RENDERER_PROPERTY_PREFIX = "config.statement.renderer.";
+
+	private final Map<String, StatementRenderer<?>> renderers = new HashMap<>();
+	private final Environment environment;
+
+	public StatementRenderers(List<StatementRenderer<?>> renderers, Environment environment) {
+		for (StatementRenderer<?> renderer : renderers) {
+			this.renderers.put(renderer.name(), renderer);
+		}
+		this.environment = environment;
+	}
+
+	public StatementRenderer<?> forTemplate(String template) {
+		String name = environment.getProperty(RENDERER_PROPERTY_PREFIX + template, HtmlStatementRenderer.NAME);
+		StatementRenderer<?> renderer = renderers.get(name);
+		if (renderer == null) {
+			throw new IllegalStateException("Unknown statement renderer '" + name + "' for template " + template + ", expected one of " + renderers.keySet());
+		}
+		return renderer;
+	}
+
+	public Collection<StatementRenderer<?>> all() {
+		return renderers.values();
+	}
+}
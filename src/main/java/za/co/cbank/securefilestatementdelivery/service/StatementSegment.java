@@ -0,0 +1,56 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import za.co.cbank.securefilestatementdelivery.repository.TransactionDigestRow;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One part of a large statement. Its rows run from (startPostDate, startTransactionId) up to, but not including,
+ * (endPostDate, endTransactionId) in posting order, and it opens with the balance brought forward to its first row.
+ */
+public record StatementSegment(int index, LocalDate startPostDate, Integer startTransactionId,
+							   LocalDate endPostDate, Integer endTransactionId, BigDecimal openingBalance, boolean first, boolean last) {
+
+	/**
+	 * Marks where each segment starts while the statement's rows go past once in posting order, keeping only the
+	 * first row of each segment and the running balance.
+	 */
+	static final class Planner {
+		private final int rowsPerSegment;
+		private final List<TransactionDigestRow> starts = new ArrayList<>();
+		private final List<BigDecimal> openingBalances = new ArrayList<>();
+		private BigDecimal balance;
+		private long rowCount;
+
+		Planner(BigDecimal openingBalance, int rowsPerSegment) {
+			this.balance = openingBalance;
+			this.rowsPerSegment = rowsPerSegment;
+		}
+
+		void add(TransactionDigestRow row) {
+			if (rowCount % rowsPerSegment == 0) {
+				starts.add(row);
+				openingBalances.add(balance);
+			}
+			balance = balance.add(BalanceCheckpointService.signedAmount(row.amount(), row.drOrCr()));
+			rowCount++;
+		}
+
+		//The last segment runs to the end of the period
+		List<StatementSegment> segments(LocalDate periodTo) {
+			List<StatementSegment> segments = new ArrayList<>(starts.size());
+			for (int i = 0; i < starts.size(); i++) {
+				TransactionDigestRow start = starts.get(i);
+				boolean last = i == starts.size() - 1;
+				LocalDate endPostDate = last ? periodTo.plusDays(1) : starts.get(i + 1).postDate();
+				Integer endTransactionId = last ? Integer.MIN_VALUE : starts.get(i + 1).transactionId();
+				segments.add(new StatementSegment(i, start.postDate(), start.transactionId(), endPostDate, endTransactionId,
+						openingBalances.get(i), i == 0, last));
+			}
+			return segments;
+		}
+	}
+}
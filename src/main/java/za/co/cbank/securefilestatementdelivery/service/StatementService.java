@@ -1,19 +1,36 @@
 package za.co.cbank.securefilestatementdelivery.service;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.context.Context;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import za.co.cbank.securefilestatementdelivery.Audit.annotation.Auditable;
 import za.co.cbank.securefilestatementdelivery.dto.StatementDTO;
 import za.co.cbank.securefilestatementdelivery.exception.DatabaseEntityException;
 import za.co.cbank.securefilestatementdelivery.exception.FileCreationException;
+import za.co.cbank.securefilestatementdelivery.exception.InvalidRequestException;
+import za.co.cbank.securefilestatementdelivery.exception.ResourceNotFoundException;
+import za.co.cbank.securefilestatementdelivery.entity.BalanceCheckpoint;
 import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
 import za.co.cbank.securefilestatementdelivery.entity.Statement;
 import za.co.cbank.securefilestatementdelivery.entity.Transaction;
@@ -21,19 +38,37 @@ import za.co.cbank.securefilestatementdelivery.mapper.StatementMapper;
 import za.co.cbank.securefilestatementdelivery.mapper.TransactionMapper;
 import za.co.cbank.securefilestatementdelivery.repository.CustomerAccountRepository;
 import za.co.cbank.securefilestatementdelivery.repository.StatementRepository;
+import za.co.cbank.securefilestatementdelivery.repository.TransactionDigestRow;
 import za.co.cbank.securefilestatementdelivery.repository.TransactionRepository;
 
-import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.net.URLDecoder;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class StatementService {
+	//Timers (statement.generate, statement.stage) and spans for each step; account ids only go on spans
+	static final String GENERATE_OBSERVATION = "statement.generate";
+	static final String STAGE_OBSERVATION = "statement.stage";
+	private static final String ACCOUNT_ID_KEY = "account.id";
+	private static final String TRANSACTIONS_KEY = "statement.transactions";
+	static final String REUSE_COUNTER = "statement.reuse";
+	//Separates digested fields so that adjacent values cannot run into each other
+	private static final byte DIGEST_FIELD_SEPARATOR = 0x1F;
+	static final String STATEMENT_TEMPLATE = "statement";
 
 	private final StatementRepository statementRepository;
 	private final TransactionRepository transactionRepository;
@@ -42,103 +77,336 @@ public class StatementService {
 	private final FileStorageService fileStorageService;
 	private final StatementMapper statementMapper;
 	private final TransactionMapper transactionMapper;
-	private final TemplateEngine templateEngine;
+	private final StatementRenderers statementRenderers;
+	private final SegmentedStatementRenderer segmentedStatementRenderer;
+	private final PlatformTransactionManager transactionManager;
+	private final EntityManager entityManager;
+	private final WebClient webClient;
+	private final ObservationRegistry observationRegistry;
+	private final MeterRegistry meterRegistry;
+	private final BalanceCheckpointService balanceCheckpointService;
+	private final RetrievalTokenService retrievalTokenService;
+	private final RetrievalTokenFilter retrievalTokenFilter;
 
 	@Value("${config.pdf.retrieval.public_url_base}")
 	private String retrievalUrlBase;
+	@Value("${config.aws.s3client.link_expiry_mins}")
+	private Integer linkExpiryMins;
+	@Value("${config.statement.template_version}")
+	private String templateVersion;
+	@Value("${config.statement.segmented.threshold_rows}")
+	private long segmentThresholdRows;
+	@Value("${config.statement.segmented.rows_per_segment}")
+	private int rowsPerSegment;
 
 
 
 	@Auditable(action = "Statement downloading using public link")
-	public Mono<byte[]> downloadStatementUsingToken(String retrievalToken) throws Exception {
+	public Mono<StatementDownload> downloadStatementUsingToken(String retrievalToken) throws Exception {
+		return downloadStatementUsingToken(retrievalToken, null, null);
+	}
+
+	//Range and If-None-Match are passed to file storage, so a resumed or repeated download only reads what it needs
+	@Auditable(action = "Statement downloading using public link")
+	public Mono<StatementDownload> downloadStatementUsingToken(String retrievalToken, String range, String ifNoneMatch) throws Exception {
 		try {
-			//Get the statement download link
-			Statement statement = Optional.ofNullable(statementRepository.findByRetrievalToken(retrievalToken))
-					.orElseThrow(() -> new Exception("Invalid token"));
-			//Retrieve statement using web client
-			String downloadUrl = URLDecoder.decode(statement.getLink(), StandardCharsets.UTF_8);
-			WebClient client = WebClient.create(downloadUrl);
-			Mono<byte[]> fileBody = client.get()
+			String filename;
+			if (retrievalTokenService.isSigned(retrievalToken)) {
+				//The token carries the file and expiry itself, so no database round trip
+				filename = retrievalTokenService.verify(retrievalToken).filename();
+			} else {
+				String token = UUID.fromString(retrievalToken).toString();
+				//Made-up tokens are turned away here instead of each taking a pooled connection
+				if (!retrievalTokenFilter.mightContain(token)) throw new Exception("Invalid token");
+				Statement statement = statementRepository.findByRetrievalToken(token);
+				if (statement == null) {
+					retrievalTokenFilter.recordFalsePositive();
+					throw new Exception("Invalid token");
+				}
+				if (statement.getExpiresAt() != null && statement.getExpiresAt().isBefore(LocalDateTime.now())) {
+					throw new Exception("Expired token");
+				}
+				filename = statement.getFilename();
+			}
+			//Sign the download link now, so its lifetime never outlasts or falls short of the token's
+			String link = fileStorageService.createPresignedLink(filename);
+			//Stream the statement through the shared client; the presigned link is already encoded
+			return webClient.get()
+					.uri(URI.create(link))
+					.headers(headers -> {
+						if (range != null) headers.set(HttpHeaders.RANGE, range);
+						if (ifNoneMatch != null) headers.set(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+					})
 					.retrieve()
-					.bodyToMono(byte[].class);
-			//Return the actual file
-			return fileBody;
+					//A range past the end of the file is the client's mistake, passed back to it rather than failing
+					.onStatus(status -> status.isSameCodeAs(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE), response -> Mono.empty())
+					.toEntityFlux(DataBuffer.class)
+					.map(StatementService::toStatementDownload);
 		} catch (Exception e) {
 			throw new Exception("Failed to retrieve Statement");
 		}
 	}
 
+	private static StatementDownload toStatementDownload(ResponseEntity<Flux<DataBuffer>> response) {
+		HttpHeaders headers = response.getHeaders();
+		if (!response.getStatusCode().is2xxSuccessful()) {
+			//Not modified or unsatisfiable: there is no PDF to send, so drain the body to give the connection back
+			response.getBody().subscribe(DataBufferUtils::release);
+			return new StatementDownload(response.getStatusCode(), -1, headers.getFirst(HttpHeaders.CONTENT_RANGE),
+					headers.getETag(), Flux.empty());
+		}
+		return new StatementDownload(response.getStatusCode(), headers.getContentLength(),
+				headers.getFirst(HttpHeaders.CONTENT_RANGE), headers.getETag(), response.getBody());
+	}
+
+	//Ends a retrieval token early. UUID tokens stop at their row; signed tokens are also added to the revocation list
+	@Auditable(action = "Retrieval token revoked")
+	public void revokeRetrievalToken(String retrievalToken) {
+		Statement statement = Optional.ofNullable(statementRepository.findByRetrievalToken(retrievalToken))
+				.orElseThrow(() -> new ResourceNotFoundException("Retrieval token not found"));
+		statement.setExpiresAt(LocalDateTime.now());
+		statementRepository.save(statement);
+		if (retrievalTokenService.isSigned(retrievalToken)) retrievalTokenService.revoke(retrievalToken);
+	}
+
 	@Auditable(action = "New Statement generated")
-	public Map<String, Object> generateStatement(Integer accountId){
-		try {
-			log.info("Starting file generation");
-			//Get the transactions for the Statement
-			List<Transaction> transactions = transactionRepository.findByCustomerAccount_AccountId_OrderByPostDate(accountId);
-			if (transactions.isEmpty()) throw new DatabaseEntityException("No transactions found for account");
-			CustomerAccount customerAccount = transactions.getFirst().getCustomerAccount();
-			log.info("Got the transactions");
-
-			//Generate HTML statement
-			String htmlStatement = formatStatementTransactions(transactions);
-			log.info("Formatted the transactions for the statement");
-
-			//Generate the PDF statement file
-			ByteArrayOutputStream outputStream = fileCreationService.GeneratePdfFile(htmlStatement,customerAccount.getIdNumber());
-			log.info("Generated the file");
-
-			//Upload the PDF statement file
-			String filename = fileStorageService.uploadPdfStatement(outputStream);
+	public Map<String, Object> generateStatement(Integer accountId, LocalDate periodFrom, LocalDate periodTo){
+		validatePeriod(periodFrom, periodTo);
+		return Observation.createNotStarted(GENERATE_OBSERVATION, observationRegistry)
+				.contextualName("generate statement")
+				.highCardinalityKeyValue(ACCOUNT_ID_KEY, String.valueOf(accountId))
+				.observe(() -> {
+					try (RenderedStatement renderedStatement = renderStatement(accountId, periodFrom, periodTo)) {
+						return publishStatement(renderedStatement);
+					}
+					catch (Exception e){
+						throw new FileCreationException("Failed to create Statement");
+					}
+				});
+	}
+
+	public static void validatePeriod(LocalDate periodFrom, LocalDate periodTo) {
+		if (periodFrom != null && periodTo != null && periodFrom.isAfter(periodTo)) {
+			throw new InvalidRequestException("periodFrom must not be after periodTo");
+		}
+	}
+
+	//CPU-bound half of statement generation: fetch, format and lay out the PDF.
+	//Skipped when a statement built from the same inputs is still in file storage
+	public RenderedStatement renderStatement(Integer accountId, LocalDate periodFrom, LocalDate periodTo){
+		log.info("Starting file generation");
+		StatementPeriod period = resolvePeriod(accountId, periodFrom, periodTo);
+		String idNumber = period.customerAccount().getIdNumber();
+		StatementRenderer<?> renderer = statementRenderers.forTemplate(STATEMENT_TEMPLATE);
+		StatementDigest statementDigest = observeStage("digest", accountId,
+				() -> readOnlyTransaction().execute(status -> digestStatement(period, renderer.name())));
+		String contentDigest = statementDigest.contentDigest();
+		Optional<String> storedFilename = findStoredStatement(contentDigest);
+		if (storedFilename.isPresent()) {
+			log.info("Reusing the stored statement with the same content");
+			return new RenderedStatement(accountId, idNumber, period.from(), period.to(), contentDigest, storedFilename.get(), null);
+		}
+
+		if (!statementDigest.segments().isEmpty()) return renderSegmentedStatement(renderer, accountId, period);
+		PDDocument document = renderDocument(renderer, accountId, period);
+		return new RenderedStatement(accountId, idNumber, period.from(), period.to(), contentDigest, null, document);
+	}
+
+	private <F> PDDocument renderDocument(StatementRenderer<F> renderer, Integer accountId, StatementPeriod period) {
+		F formatted = observeStage("format", accountId, () -> readOnlyTransaction().execute(status -> formatStatement(renderer, period)));
+		log.info("Formatted the transactions for the statement");
+
+		//Lay out the PDF statement file, outside the transaction so no connection is held while rendering
+		PDDocument document = observeStage("render", accountId, () -> renderer.render(formatted));
+		log.info("Rendered the file");
+		return document;
+	}
+
+	//Large statements are planned again and read a segment at a time in one repeatable-read transaction, so every segment
+	//comes from the snapshot the digest describes, and hold that one connection while their segments are laid out in parallel
+	private <F> RenderedStatement renderSegmentedStatement(StatementRenderer<F> renderer, Integer accountId, StatementPeriod period) {
+		return segmentedStatementRenderer.withStatementPermit(() -> snapshotTransaction().execute(status -> {
+			StatementDigest statementDigest = digestStatement(period, renderer.name());
+			PDDocument document = observeStage("render", accountId, () -> {
+				//Rows removed since the first digest can leave too few to segment
+				if (statementDigest.segments().isEmpty()) return renderer.render(formatStatement(renderer, period));
+				log.info("Rendering {} transactions in {} segments", statementDigest.rowCount(), statementDigest.segments().size());
+				recordTransactionCount(statementDigest.rowCount());
+				return segmentedStatementRenderer.render(renderer, statementDigest.segments(), segment -> formatSegment(renderer, period, segment));
+			});
+			log.info("Rendered the file");
+			return new RenderedStatement(accountId, period.customerAccount().getIdNumber(), period.from(), period.to(),
+					statementDigest.contentDigest(), null, document);
+		}));
+	}
+
+	//Without a period the statement covers the latest month with activity; a missing end runs to today
+	//and a missing start to the first of the end's month
+	private StatementPeriod resolvePeriod(Integer accountId, LocalDate periodFrom, LocalDate periodTo) {
+		if (periodFrom == null && periodTo == null) {
+			BalanceCheckpoint checkpoint = balanceCheckpointService.findLatestCheckpoint(accountId)
+					.orElseThrow(() -> new DatabaseEntityException("No transactions found for account"));
+			LocalDate from = checkpoint.getPeriodStart();
+			return new StatementPeriod(checkpoint.getCustomerAccount(), from, from.plusMonths(1).minusDays(1), checkpoint.getOpeningBalance());
+		}
+		CustomerAccount customerAccount = customerAccountRepository.findById(accountId)
+				.orElseThrow(() -> new DatabaseEntityException("Account not found"));
+		LocalDate to = periodTo != null ? periodTo : LocalDate.now();
+		LocalDate from = periodFrom != null ? periodFrom : to.withDayOfMonth(1);
+		return new StatementPeriod(customerAccount, from, to, balanceCheckpointService.findOpeningBalance(accountId, from));
+	}
+
+	//I/O-bound half of statement generation: encrypt and upload the PDF and record it; links are signed at download
+	public Map<String, Object> publishStatement(RenderedStatement renderedStatement){
+		Integer accountId = renderedStatement.getAccountId();
+		String filename = renderedStatement.getStoredFilename();
+		if (filename == null) {
+			//Encrypt the PDF statement file and stream it into file storage
+			filename = observeStage("upload", accountId, () -> fileStorageService.uploadPdfStatement(outputStream -> {
+				CountingOutputStream pdfFile = new CountingOutputStream(outputStream);
+				fileCreationService.writeProtectedPdf(renderedStatement.getDocument(), renderedStatement.getSecretKey(), pdfFile);
+				recordPdfSize(pdfFile.getCount());
+			}));
 			log.info("Uploaded the file to file storage");
+		}
 
-			//Generate Presigned Link
-			String presignedLink = fileStorageService.createPresignedLink(filename);
-			log.info("Generated the presigned URL");
-
-			//Create the Statement record
-			StatementDTO statementDTO = StatementDTO.builder()
-					.createdAt(LocalDateTime.now())
-					.accountId(accountId)
-					.filename(filename)
-					.retrievalToken(UUID.randomUUID().toString())
-					.link(presignedLink)
-					.expiresAt(LocalDateTime.now().plusMinutes(30))
-					.build();
-			StatementDTO savedStatement = createStatement(statementDTO);
-			log.info("Created the statement record");
-
-			Map<String,Object> result = new HashMap<>();
-			String retrievalLink = retrievalUrlBase + savedStatement.getRetrievalToken();
-			result.put("retrievalLink",retrievalLink);
-			return result;
-
-		}
-		catch (Exception e){
-			throw new FileCreationException("Failed to create Statement");
-		}
-	}
-
-	@Auditable(action = "Statement transactions formatted")
-	public String formatStatementTransactions(List<Transaction> statementTransactions){
-		List<Map<String, Object>> trnDataList = new ArrayList<>();
-		//We need some transactions to retrieve the customerAccount
-		if(statementTransactions == null || statementTransactions.isEmpty()) return "No transactions, cannot generate statement";
-		log.info("Starting statement formatting");
-		BigDecimal balance = BigDecimal.ZERO;
-		//Calculate the balance to carry forward
-		for (Transaction trn : statementTransactions) {
-			if ("CR".equalsIgnoreCase(trn.getDrOrCr())) {
-				balance = balance.add(trn.getAmount());
-			} else if ("DR".equalsIgnoreCase(trn.getDrOrCr())) {
-				balance = balance.subtract(trn.getAmount());
-			}
+		//Create the Statement record
+		LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(linkExpiryMins);
+		StatementDTO statementDTO = StatementDTO.builder()
+				.createdAt(LocalDateTime.now())
+				.accountId(accountId)
+				.filename(filename)
+				.retrievalToken(retrievalTokenService.issue(accountId, filename, expiresAt.atZone(ZoneId.systemDefault()).toInstant()))
+				.periodFrom(renderedStatement.getPeriodFrom())
+				.periodTo(renderedStatement.getPeriodTo())
+				.contentDigest(renderedStatement.getContentDigest())
+				.expiresAt(expiresAt)
+				.build();
+		StatementDTO savedStatement = observeStage("persist", accountId, () -> createStatement(statementDTO));
+		log.info("Created the statement record");
+
+		Map<String,Object> result = new HashMap<>();
+		String retrievalLink = retrievalUrlBase + savedStatement.getRetrievalToken();
+		result.put("retrievalLink",retrievalLink);
+		result.put("statementId",savedStatement.getStatementId());
+		return result;
+	}
+
+	//Covers everything the template prints, how it is laid out and the key the PDF is encrypted with, so an equal digest means an equal statement.
+	//The same pass counts the rows and, when segmenting is on, marks where each segment would start
+	private StatementDigest digestStatement(StatementPeriod period, String rendererName) {
+		MessageDigest digest = sha256();
+		CustomerAccount customerAccount = period.customerAccount();
+		updateDigest(digest, templateVersion, rendererName, customerAccount.getAccountId(), customerAccount.getIdNumber(),
+				customerAccount.getFirstName(), customerAccount.getLastName(), customerAccount.getEmailAddress(),
+				customerAccount.getCellphoneNumber(), period.from(), period.to(), period.openingBalance());
+		StatementSegment.Planner planner = segmentThresholdRows > 0 ? new StatementSegment.Planner(period.openingBalance(), rowsPerSegment) : null;
+		long[] rowCount = {0};
+		try (Stream<TransactionDigestRow> rows = transactionRepository.streamStatementDigestRows(customerAccount.getAccountId(), period.from(), period.to())) {
+			rows.forEach(row -> {
+				updateDigest(digest, row.transactionId(), row.postDate(), row.amount(), row.drOrCr());
+				if (planner != null) planner.add(row);
+				rowCount[0]++;
+			});
+		}
+		if (planner == null || rowCount[0] <= segmentThresholdRows) {
+			return new StatementDigest(HexFormat.of().formatHex(digest.digest()), rowCount[0], List.of());
+		}
+		//Each segment starts a new page, so the same rows segmented differently make a different PDF
+		updateDigest(digest, "segments", rowsPerSegment);
+		return new StatementDigest(HexFormat.of().formatHex(digest.digest()), rowCount[0], planner.segments(period.to()));
+	}
+
+	private static void updateDigest(MessageDigest digest, Object... values) {
+		for (Object value : values) {
+			//Scale is not part of the amount, 10.5 and 10.50 print the same
+			String text = value instanceof BigDecimal amount ? amount.stripTrailingZeros().toPlainString() : String.valueOf(value);
+			digest.update(text.getBytes(StandardCharsets.UTF_8));
+			digest.update(DIGEST_FIELD_SEPARATOR);
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	private Optional<String> findStoredStatement(String contentDigest) {
+		Optional<String> storedFilename = statementRepository.findFirstByContentDigestOrderByStatementIdDesc(contentDigest)
+				.map(Statement::getFilename)
+				.filter(fileStorageService::statementExists);
+		meterRegistry.counter(REUSE_COUNTER, "result", storedFilename.isPresent() ? "hit" : "miss").increment();
+		return storedFilename;
+	}
+
+	//Streams the period's transactions into the renderer, detaching each row once read so the persistence context stays the size of one fetch
+	private <F> F formatStatement(StatementRenderer<F> renderer, StatementPeriod period) {
+		CustomerAccount customerAccount = period.customerAccount();
+		try (Stream<Transaction> transactions = transactionRepository.streamStatementTransactions(customerAccount.getAccountId(), period.from(), period.to())) {
+			long[] rowCount = {0};
+			Iterator<Transaction> iterator = transactions
+					.peek(transaction -> {
+						entityManager.detach(transaction);
+						rowCount[0]++;
+					})
+					.iterator();
+			F formatted = renderer.format(new StatementContent(customerAccount, period.from(), period.to(), period.openingBalance(), iterator));
+			recordTransactionCount(rowCount[0]);
+			return formatted;
 		}
+	}
 
-		Context  context = new Context();
-		context.setVariable("customerAccount",statementTransactions.getFirst().getCustomerAccount());
-		context.setVariable("transactions",statementTransactions);
-		context.setVariable("totalBalance",balance);
+	private <F> F formatSegment(StatementRenderer<F> renderer, StatementPeriod period, StatementSegment segment) {
+		CustomerAccount customerAccount = period.customerAccount();
+		try (Stream<Transaction> transactions = transactionRepository.streamStatementSegment(customerAccount.getAccountId(),
+				segment.startPostDate(), segment.startTransactionId(), segment.endPostDate(), segment.endTransactionId())) {
+			Iterator<Transaction> iterator = transactions.peek(transaction -> entityManager.detach(transaction)).iterator();
+			return renderer.format(new StatementContent(customerAccount, period.from(), period.to(), segment.openingBalance(), iterator,
+					segment.first(), segment.last()));
+		}
+	}
 
-		return templateEngine.process("statement",context);
+	private <T> T observeStage(String stage, Integer accountId, Supplier<T> work) {
+		return Observation.createNotStarted(STAGE_OBSERVATION, observationRegistry)
+				.contextualName("statement " + stage)
+				.lowCardinalityKeyValue("stage", stage)
+				.highCardinalityKeyValue(ACCOUNT_ID_KEY, String.valueOf(accountId))
+				.observe(work);
+	}
+
+	private void recordTransactionCount(long count) {
+		Observation stage = observationRegistry.getCurrentObservation();
+		if (stage != null) stage.highCardinalityKeyValue(TRANSACTIONS_KEY, String.valueOf(count));
+		DistributionSummary.builder(TRANSACTIONS_KEY)
+				.description("Transactions on each generated statement")
+				.register(meterRegistry)
+				.record(count);
+	}
+
+	private void recordPdfSize(long bytes) {
+		Observation stage = observationRegistry.getCurrentObservation();
+		if (stage != null) stage.highCardinalityKeyValue("statement.pdf.bytes", String.valueOf(bytes));
+		DistributionSummary.builder("statement.pdf.size")
+				.description("Size of each encrypted statement PDF")
+				.baseUnit(BaseUnits.BYTES)
+				.register(meterRegistry)
+				.record(bytes);
+	}
+
+	private TransactionTemplate readOnlyTransaction() {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setReadOnly(true);
+		return transactionTemplate;
+	}
+
+	//Every query in the transaction reads the same snapshot
+	private TransactionTemplate snapshotTransaction() {
+		TransactionTemplate transactionTemplate = readOnlyTransaction();
+		transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+		return transactionTemplate;
 	}
 
 	@Auditable(action = "Statement created")
@@ -149,6 +417,8 @@ public class StatementService {
 
 			Statement statement = statementMapper.toEntity(statementDTO);
 			statement.setCustomerAccount(account);
+			//Added before the insert commits, so a download never races ahead of the filter
+			retrievalTokenFilter.add(statement.getRetrievalToken());
 
 			log.info("Statement created successfully.");
 			return statementMapper.toDto(statementRepository.save(statement));
@@ -159,4 +429,35 @@ public class StatementService {
 			throw new RuntimeException("An unexpected error occurred.");
 		}
 	}
-}
+
+	private record StatementPeriod(CustomerAccount customerAccount, LocalDate from, LocalDate to, BigDecimal openingBalance) {
+	}
+
+	//No segments unless the statement is large enough to be rendered in segments
+	private record StatementDigest(String contentDigest, long rowCount, List<StatementSegment> segments) {
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+}
\ No newline at end of file
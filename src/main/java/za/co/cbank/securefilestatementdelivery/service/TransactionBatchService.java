@@ -0,0 +1,293 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectReader;
+import za.co.cbank.securefilestatementdelivery.Audit.annotation.Auditable;
+import za.co.cbank.securefilestatementdelivery.dto.TransactionBatchFailureDTO;
+import za.co.cbank.securefilestatementdelivery.dto.TransactionBatchResultDTO;
+import za.co.cbank.securefilestatementdelivery.dto.TransactionDTO;
+import za.co.cbank.securefilestatementdelivery.exception.InvalidRequestException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bulk loads transactions from the core-banking feed. Rows are read one at a time, so an NDJSON upload of any size
+ * is never held in memory, and written in chunks of {@code config.transaction.batch.chunk_size}, each in its own
+ * database transaction: one locking lookup of the chunk's accounts, one {@code COPY} of its rows (a JDBC batch insert
+ * on other databases) and one delete of the touched accounts' balance checkpoints, which
+ * {@link BalanceCheckpointService} rebuilds from monthly totals the next time they are read. Ids come from
+ * {@code transactions_seq} in the same pooled blocks Hibernate uses.
+ * A row that cannot be loaded is reported by its position in the upload and does not stop the others.
+ */
+@Slf4j
+@Service
+public class TransactionBatchService {
+	static final int ID_ALLOCATION_SIZE = 50;
+	private static final String INSERT_SQL = "INSERT INTO transactions (transaction_id, created_at, post_date, account_id, amount, description, dr_or_cr) VALUES (?, ?, ?, ?, ?, ?, ?)";
+	private static final String COPY_SQL = "COPY transactions (transaction_id, created_at, post_date, account_id, amount, description, dr_or_cr) FROM STDIN";
+	private static final String NEXT_ID_SQL = "SELECT nextval('transactions_seq')";
+	//Same lock as TransactionService takes per posting, taken in account order so concurrent chunks cannot deadlock
+	private static final String LOCK_ACCOUNTS_SQL = "SELECT account_id FROM customer_accounts WHERE account_id IN (:accountIds) ORDER BY account_id FOR UPDATE";
+	private static final String DELETE_CHECKPOINTS_SQL = "DELETE FROM balance_checkpoints WHERE account_id IN (:accountIds)";
+	private static final int MAX_DESCRIPTION_LENGTH = 255;
+
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+	private final ObjectReader transactionReader;
+	private final int chunkSize;
+	private final int maxReportedFailures;
+	//Not a monitor: ids are fetched from the database while it is held, which would pin a virtual thread
+	private final Lock idLock = new ReentrantLock();
+	private long hiValue = -1;
+	private long nextId;
+
+	public TransactionBatchService(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+								   ObjectMapper objectMapper,
+								   @Value("${config.transaction.batch.chunk_size}") int chunkSize,
+								   @Value("${config.transaction.batch.max_reported_failures}") int maxReportedFailures) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionReader = objectMapper.readerFor(TransactionDTO.class);
+		this.chunkSize = chunkSize;
+		this.maxReportedFailures = maxReportedFailures;
+	}
+
+	@Auditable(action = "Transactions batch loaded")
+	public TransactionBatchResultDTO ingestTransactions(List<TransactionDTO> transactionDTOs) {
+		return ingest(transactionDTOs.iterator());
+	}
+
+	//One JSON transaction per line; blank lines are skipped
+	@Auditable(action = "Transactions batch loaded")
+	public TransactionBatchResultDTO ingestTransactions(InputStream ndjson) {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8));
+		return ingest(new Iterator<>() {
+			private String line = readLine(reader);
+
+			@Override
+			public boolean hasNext() {
+				return line != null;
+			}
+
+			@Override
+			public TransactionDTO next() {
+				String current = line;
+				line = readLine(reader);
+				try {
+					return transactionReader.readValue(current);
+				} catch (JacksonException e) {
+					throw new InvalidRequestException("Malformed transaction: " + e.getOriginalMessage());
+				}
+			}
+		});
+	}
+
+	private TransactionBatchResultDTO ingest(Iterator<TransactionDTO> rows) {
+		long started = System.nanoTime();
+		Report report = new Report();
+		List<Row> chunk = new ArrayList<>(chunkSize);
+		while (rows.hasNext()) {
+			report.received++;
+			TransactionDTO transactionDTO = null;
+			try {
+				transactionDTO = rows.next();
+				validate(transactionDTO);
+			} catch (InvalidRequestException e) {
+				report.fail(report.received, transactionDTO != null ? transactionDTO.getAccountId() : null, e.getMessage());
+				continue;
+			}
+			chunk.add(new Row(report.received, transactionDTO));
+			if (chunk.size() == chunkSize) {
+				writeChunk(chunk, report);
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) writeChunk(chunk, report);
+
+		double seconds = (System.nanoTime() - started) / 1e9;
+		log.info("Loaded {} of {} transactions in {}s", report.inserted, report.received, String.format("%.2f", seconds));
+		return TransactionBatchResultDTO.builder()
+				.received(report.received)
+				.inserted(report.inserted)
+				.failed(report.failed)
+				.rowsPerSecond(seconds > 0 ? report.inserted / seconds : null)
+				.failures(report.failures)
+				.build();
+	}
+
+	private void writeChunk(List<Row> chunk, Report report) {
+		Set<Integer> accountIds = new TreeSet<>();
+		for (Row row : chunk) accountIds.add(row.transaction().getAccountId());
+		List<Row> unknownAccounts = new ArrayList<>();
+		try {
+			report.inserted += transactionTemplate.execute(status -> {
+				Set<Integer> existing = new HashSet<>(jdbcTemplate.queryForList(LOCK_ACCOUNTS_SQL, Map.of("accountIds", accountIds), Integer.class));
+				List<Object[]> values = new ArrayList<>(chunk.size());
+				Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+				for (Row row : chunk) {
+					TransactionDTO transactionDTO = row.transaction();
+					if (!existing.contains(transactionDTO.getAccountId())) {
+						unknownAccounts.add(row);
+						continue;
+					}
+					//A transaction needs a post date to fall into a statement period
+					LocalDate postDate = transactionDTO.getPostDate() != null ? transactionDTO.getPostDate() : LocalDate.now();
+					values.add(new Object[]{null, createdAt, postDate, transactionDTO.getAccountId(), transactionDTO.getAmount(),
+							transactionDTO.getDescription(), transactionDTO.getDrOrCr()});
+				}
+				if (values.isEmpty()) return 0;
+
+				long[] ids = allocateIds(values.size());
+				for (int i = 0; i < values.size(); i++) values.get(i)[0] = Math.toIntExact(ids[i]);
+				insert(values);
+				jdbcTemplate.update(DELETE_CHECKPOINTS_SQL, Map.of("accountIds", existing));
+				return values.size();
+			});
+		} catch (DataAccessException e) {
+			//The chunk was rolled back as a whole, so every row in it is reported
+			log.error("Failed to store transactions {} to {}", chunk.getFirst().number(), chunk.getLast().number(), e);
+			for (Row row : chunk) report.fail(row.number(), row.transaction().getAccountId(), "Could not be stored");
+			return;
+		}
+		for (Row row : unknownAccounts) report.fail(row.number(), row.transaction().getAccountId(), "Account not found");
+	}
+
+	//Postgres takes the chunk through COPY, one stream with no statement to bind per row; other databases get the JDBC batch
+	private void insert(List<Object[]> values) {
+		jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Void>) connection -> {
+			if (!connection.isWrapperFor(PGConnection.class)) {
+				jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_SQL, values);
+				return null;
+			}
+			StringBuilder rows = new StringBuilder(values.size() * 96);
+			for (Object[] row : values) {
+				for (int i = 0; i < row.length; i++) {
+					if (i > 0) rows.append('\t');
+					appendCopyValue(rows, row[i]);
+				}
+				rows.append('\n');
+			}
+			try {
+				connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL, new StringReader(rows.toString()));
+			} catch (IOException e) {
+				throw new DataAccessResourceFailureException("Failed to copy transactions", e);
+			}
+			return null;
+		});
+	}
+
+	//COPY text format: \N for null, with backslash, tab and line breaks escaped
+	private static void appendCopyValue(StringBuilder rows, Object value) {
+		if (value == null) {
+			rows.append("\\N");
+			return;
+		}
+		String text = value instanceof BigDecimal amount ? amount.toPlainString() : value.toString();
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '\\' -> rows.append("\\\\");
+				case '\t' -> rows.append("\\t");
+				case '\n' -> rows.append("\\n");
+				case '\r' -> rows.append("\\r");
+				default -> rows.append(c);
+			}
+		}
+	}
+
+	//Mirrors Hibernate's pooled optimizer, like AuditLogWriter: each sequence value is the top of a block of ID_ALLOCATION_SIZE ids
+	private long[] allocateIds(int count) {
+		long[] ids = new long[count];
+		idLock.lock();
+		try {
+			for (int i = 0; i < count; i++) {
+				if (hiValue < 0) {
+					long value = jdbcTemplate.getJdbcTemplate().queryForObject(NEXT_ID_SQL, Long.class);
+					if (value < ID_ALLOCATION_SIZE) {
+						//Fresh sequence: its first value is the initial value rather than the top of a block
+						hiValue = jdbcTemplate.getJdbcTemplate().queryForObject(NEXT_ID_SQL, Long.class);
+						nextId = value;
+					} else {
+						hiValue = value;
+						nextId = value - ID_ALLOCATION_SIZE + 1;
+					}
+				} else if (nextId > hiValue) {
+					hiValue = jdbcTemplate.getJdbcTemplate().queryForObject(NEXT_ID_SQL, Long.class);
+					nextId = hiValue - ID_ALLOCATION_SIZE + 1;
+				}
+				ids[i] = nextId++;
+			}
+		} finally {
+			idLock.unlock();
+		}
+		return ids;
+	}
+
+	private static void validate(TransactionDTO transactionDTO) {
+		if (transactionDTO == null) throw new InvalidRequestException("Transaction is empty");
+		if (transactionDTO.getAccountId() == null) throw new InvalidRequestException("accountId is required");
+		if (transactionDTO.getAmount() == null || transactionDTO.getAmount().signum() < 0) {
+			throw new InvalidRequestException("amount must be zero or more");
+		}
+		if (!"CR".equalsIgnoreCase(transactionDTO.getDrOrCr()) && !"DR".equalsIgnoreCase(transactionDTO.getDrOrCr())) {
+			throw new InvalidRequestException("drOrCr must be CR or DR");
+		}
+		if (transactionDTO.getDescription() != null && transactionDTO.getDescription().length() > MAX_DESCRIPTION_LENGTH) {
+			throw new InvalidRequestException("description is longer than " + MAX_DESCRIPTION_LENGTH + " characters");
+		}
+	}
+
+	private static String readLine(BufferedReader reader) {
+		try {
+			String line;
+			do {
+				line = reader.readLine();
+			} while (line != null && line.isBlank());
+			return line;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read the transaction upload", e);
+		}
+	}
+
+	//Position in the upload, counting from 1, so failures can be matched to the feed
+	private record Row(int number, TransactionDTO transaction) {
+	}
+
+	private class Report {
+		private int received;
+		private int inserted;
+		private int failed;
+		private final List<TransactionBatchFailureDTO> failures = new ArrayList<>();
+
+		void fail(int row, Integer accountId, String reason) {
+			failed++;
+			if (failures.size() < maxReportedFailures) {
+				failures.add(TransactionBatchFailureDTO.builder().row(row).accountId(accountId).reason(reason).build());
+			}
+		}
+	}
+}
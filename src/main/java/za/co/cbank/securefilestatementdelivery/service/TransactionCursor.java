@@ -0,0 +1,34 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import za.co.cbank.securefilestatementdelivery.dto.TransactionDTO;
+import za.co.cbank.securefilestatementdelivery.exception.InvalidRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of the last transaction on a page, handed to clients as an opaque URL-safe string and decoded when
+ * they ask for the next page.
+ */
+public record TransactionCursor(LocalDate postDate, Integer transactionId) {
+
+	public static TransactionCursor after(TransactionDTO transactionDTO) {
+		return new TransactionCursor(transactionDTO.getPostDate(), transactionDTO.getTransactionId());
+	}
+
+	public static TransactionCursor decode(String cursor) {
+		try {
+			String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("/", -1);
+			if (parts.length != 2) throw new InvalidRequestException("Invalid cursor");
+			return new TransactionCursor(LocalDate.parse(parts[0]), Integer.valueOf(parts[1]));
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			throw new InvalidRequestException("Invalid cursor");
+		}
+	}
+
+	public String encode() {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString((postDate + "/" + transactionId).getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,9 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import za.co.cbank.securefilestatementdelivery.dto.TransactionDTO;
+
+import java.util.List;
+
+//nextCursor is null on the last page
+public record TransactionPage(List<TransactionDTO> transactions, String nextCursor) {
+}
@@ -3,37 +3,96 @@ package za.co.cbank.securefilestatementdelivery.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.ObjectMapper;
 import za.co.cbank.securefilestatementdelivery.Audit.annotation.Auditable;
 import za.co.cbank.securefilestatementdelivery.dto.TransactionDTO;
 import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
 import za.co.cbank.securefilestatementdelivery.exception.DatabaseEntityException;
+import za.co.cbank.securefilestatementdelivery.exception.InvalidRequestException;
 import za.co.cbank.securefilestatementdelivery.entity.Transaction;
 import za.co.cbank.securefilestatementdelivery.mapper.TransactionMapper;
 import za.co.cbank.securefilestatementdelivery.repository.CustomerAccountRepository;
 import za.co.cbank.securefilestatementdelivery.repository.TransactionRepository;
 
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class TransactionService {
+	//Bounds used when a listing is not given a date filter
+	private static final LocalDate EARLIEST_POST_DATE = LocalDate.of(1900, 1, 1);
+	private static final LocalDate LATEST_POST_DATE = LocalDate.of(9999, 12, 31);
+
 	private final TransactionRepository transactionRepository;
 	private final CustomerAccountRepository customerAccountRepository;
 	private final TransactionMapper transactionMapper;
+	private final BalanceCheckpointService balanceCheckpointService;
+	private final PlatformTransactionManager transactionManager;
+	private final ObjectMapper objectMapper;
+
+	@Value("${config.transaction.page.default_size}")
+	private int defaultPageSize;
 
+	@Value("${config.transaction.page.max_size}")
+	private int maxPageSize;
+
+	//One page in (postDate, transactionId) order, starting after the cursor when one is given
 	@Auditable(action = "Transactions fetched by accountId",detail = "#accountId")
-	public List<TransactionDTO> getTransactionsByAccountId(Integer accountId){
-		log.info("Fetching transactions for accountId: {}", accountId);
-		return transactionRepository.findByCustomerAccount_AccountId(accountId)
-				.stream()
-				.map(transactionMapper::toDto)
-				.collect(Collectors.toList());
+	public TransactionPage getTransactionPage(Integer accountId, LocalDate fromDate, LocalDate toDate, String cursor, Integer limit) {
+		int pageSize = limit != null ? limit : defaultPageSize;
+		if (pageSize < 1 || pageSize > maxPageSize) throw new InvalidRequestException("limit must be between 1 and " + maxPageSize);
+		LocalDate from = fromDate != null ? fromDate : EARLIEST_POST_DATE;
+		LocalDate to = toDate != null ? toDate : LATEST_POST_DATE;
+		if (from.isAfter(to)) throw new InvalidRequestException("from must not be after to");
+		log.info("Fetching a page of {} transactions for accountId: {}", pageSize, accountId);
+
+		//One row more than the page tells whether there is a next one
+		Limit rows = Limit.of(pageSize + 1);
+		List<TransactionDTO> transactions;
+		if (cursor == null) {
+			transactions = transactionRepository.findTransactionPage(accountId, from, to, rows);
+		} else {
+			TransactionCursor after = TransactionCursor.decode(cursor);
+			transactions = transactionRepository.findTransactionPageAfter(accountId, from, to, after.postDate(), after.transactionId(), rows);
+		}
+		if (transactions.size() <= pageSize) return new TransactionPage(transactions, null);
+		List<TransactionDTO> page = new ArrayList<>(transactions.subList(0, pageSize));
+		return new TransactionPage(page, TransactionCursor.after(page.getLast()).encode());
+	}
+
+	//Every matching transaction as one JSON object per line, written as rows come off the database cursor
+	@Auditable(action = "Transactions streamed by accountId",detail = "#accountId")
+	public void writeTransactions(Integer accountId, LocalDate fromDate, LocalDate toDate, OutputStream outputStream) {
+		LocalDate from = fromDate != null ? fromDate : EARLIEST_POST_DATE;
+		LocalDate to = toDate != null ? toDate : LATEST_POST_DATE;
+		log.info("Streaming transactions for accountId: {}", accountId);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setReadOnly(true);
+		transactionTemplate.executeWithoutResult(status -> {
+			try (Stream<TransactionDTO> rows = transactionRepository.streamTransactions(accountId, from, to);
+				 JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+				Iterator<TransactionDTO> iterator = rows.iterator();
+				while (iterator.hasNext()) {
+					objectMapper.writeValue(generator, iterator.next());
+					generator.writeRaw('\n');
+				}
+			}
+		});
 	}
 
 	@Auditable(action = "Transaction fetched by transactionId",detail = "#transactionId")
@@ -45,14 +104,20 @@ public class TransactionService {
 	}
 
 	@Auditable(action = "Transaction created")
+	@Transactional
 	public TransactionDTO createTransaction(TransactionDTO transactionDTO) {
 		try {
 			Transaction transaction = transactionMapper.toEntity(transactionDTO);
-			CustomerAccount account = customerAccountRepository.findByAccountId(transactionDTO.getAccountId());
+			//Locked until commit so postings to the same account update its balance checkpoints in turn
+			CustomerAccount account = customerAccountRepository.lockByAccountId(transactionDTO.getAccountId())
+					.orElseThrow(() -> new DatabaseEntityException("Account not found"));
 
 			transaction.setCustomerAccount(account);
+			//A transaction needs a post date to fall into a statement period
+			if (transaction.getPostDate() == null) transaction.setPostDate(LocalDate.now());
 
 			Transaction savedTransaction = transactionRepository.save(transaction);
+			balanceCheckpointService.applyTransaction(savedTransaction);
 			log.info("Transaction created successfully.");
 
 			return transactionMapper.toDto(savedTransaction);
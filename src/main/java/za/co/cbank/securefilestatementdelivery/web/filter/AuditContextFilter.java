@@ -5,21 +5,27 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 @Component
 public class AuditContextFilter extends OncePerRequestFilter {
+	private final ClientIpResolver clientIpResolver;
+
+	public AuditContextFilter(@Value("${config.web.trusted_proxies}") List<String> trustedProxies) {
+		this.clientIpResolver = new ClientIpResolver(trustedProxies);
+	}
+
 	@Override
 	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
 			throws ServletException, IOException {
 
-		String ip = request.getHeader("X-Forwarded-For");
-		if (ip == null) ip = request.getRemoteAddr();
-
+		String ip = clientIpResolver.resolve(request);
 
 		String user = (SecurityContextHolder.getContext().getAuthentication() != null)
 				? SecurityContextHolder.getContext().getAuthentication().getName()
@@ -0,0 +1,53 @@
+package za.co.cbank.securefilestatementdelivery.web.filter;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+
+import java.util.List;
+
+/**
+ * Works out which address a request came from. {@code X-Forwarded-For} is only read when the direct peer is
+ * one of our trusted proxies, and is then walked from the right so that the client is the first hop our own
+ * proxies did not add. Anything a client puts at the left of the header is ignored.
+ */
+public class ClientIpResolver {
+	private static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+
+	private final List<IpAddressMatcher> trustedProxies;
+
+	public ClientIpResolver(List<String> trustedProxies) {
+		this.trustedProxies = trustedProxies.stream()
+				.map(String::trim)
+				.filter(proxy -> !proxy.isEmpty())
+				.map(IpAddressMatcher::new)
+				.toList();
+	}
+
+	public String resolve(HttpServletRequest request) {
+		String remoteAddress = request.getRemoteAddr();
+		String forwardedFor = request.getHeader(FORWARDED_FOR_HEADER);
+		if (forwardedFor == null || forwardedFor.isBlank() || !isTrusted(remoteAddress)) return remoteAddress;
+
+		String[] hops = forwardedFor.split(",");
+		String client = remoteAddress;
+		for (int i = hops.length - 1; i >= 0; i--) {
+			String hop = hops[i].trim();
+			if (hop.isEmpty()) continue;
+			client = hop;
+			if (!isTrusted(hop)) break;
+		}
+		return client;
+	}
+
+	private boolean isTrusted(String address) {
+		for (IpAddressMatcher trustedProxy : trustedProxies) {
+			try {
+				if (trustedProxy.matches(address)) return true;
+			} catch (IllegalArgumentException e) {
+				//Not an IP address, so it cannot be one of our proxies
+				return false;
+			}
+		}
+		return false;
+	}
+}
@@ -1,25 +1,78 @@
 package za.co.cbank.securefilestatementdelivery.web.filter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
-import io.github.bucket4j.Bucket4j;
-import io.github.bucket4j.Refill;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.proxy.ExpiredEntriesCleaner;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimization;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.time.Duration;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits each client IP to {@code config.rate_limit.requests_per_minute}. Buckets live in a size-capped cache
+ * that forgets clients once they have been idle long enough for their bucket to refill, so a flood of distinct
+ * or spoofed addresses cannot grow it without bound. With {@code config.rate_limit.store=postgres} each cached
+ * bucket is a proxy for a row shared by all replicas; consumption is tracked locally and written back in batches,
+ * so the database is not touched on every request.
+ */
 @Component
 public class RateLimitingFilter implements Filter {
+	private static final Duration REFILL_PERIOD = Duration.ofMinutes(1);
+	private static final int EXPIRED_BUCKETS_REMOVED_PER_RUN = 1000;
+
+	private final Cache<String, Bucket> buckets;
+	private final Bandwidth limit;
+	private final BucketConfiguration bucketConfiguration;
+	private final ProxyManager<String> proxyManager;
+	private final Optimization syncOptimization;
+	private final ClientIpResolver clientIpResolver;
 
-	private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+	public RateLimitingFilter(@Value("${config.rate_limit.requests_per_minute}") Integer requestsPerMinute,
+							  @Value("${config.rate_limit.max_tracked_clients}") Long maxTrackedClients,
+							  @Value("${config.rate_limit.idle_expiry_mins}") Integer idleExpiryMins,
+							  @Value("${config.rate_limit.sync_max_unsynchronized_tokens}") Integer syncMaxUnsynchronizedTokens,
+							  @Value("${config.rate_limit.sync_interval_ms}") Long syncIntervalMs,
+							  @Value("${config.web.trusted_proxies}") List<String> trustedProxies,
+							  ObjectProvider<ProxyManager<String>> proxyManager,
+							  ObjectProvider<MeterRegistry> meterRegistry) {
+		this.limit = Bandwidth.builder().capacity(requestsPerMinute).refillGreedy(requestsPerMinute, REFILL_PERIOD).build();
+		this.bucketConfiguration = BucketConfiguration.builder().addLimit(limit).build();
+		this.proxyManager = proxyManager.getIfAvailable();
+		this.syncOptimization = Optimizations.delaying(
+				new DelayParameters(syncMaxUnsynchronizedTokens, Duration.ofMillis(syncIntervalMs)));
+		this.clientIpResolver = new ClientIpResolver(trustedProxies);
+		//An idle bucket is full again after REFILL_PERIOD, so forgetting it any later than that loses nothing
+		this.buckets = Caffeine.newBuilder()
+				.maximumSize(maxTrackedClients)
+				.expireAfterAccess(Duration.ofMinutes(Math.max(idleExpiryMins, REFILL_PERIOD.toMinutes())))
+				.recordStats()
+				.build();
+		meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, buckets, "rateLimitBuckets"));
+	}
 
-	private Bucket createNewBucket() {
-		Bandwidth limit = Bandwidth.classic(10, Refill.greedy(10, Duration.ofMinutes(1)));
-		return Bucket4j.builder().addLimit(limit).build();
+	private Bucket createNewBucket(String ip) {
+		if (proxyManager == null) {
+			return Bucket.builder().addLimit(limit).build();
+		}
+		return proxyManager.builder()
+				.withOptimization(syncOptimization)
+				.build(ip, () -> bucketConfiguration);
 	}
 
 	@Override
@@ -27,9 +80,9 @@ public class RateLimitingFilter implements Filter {
 			throws IOException, ServletException {
 
 		HttpServletRequest httpRequest = (HttpServletRequest) request;
-		String ip = getClientIP(httpRequest);
+		String ip = clientIpResolver.resolve(httpRequest);
 
-		Bucket bucket = buckets.computeIfAbsent(ip, k -> createNewBucket());
+		Bucket bucket = buckets.get(ip, this::createNewBucket);
 
 		if (bucket.tryConsume(1)) {
 			chain.doFilter(request, response);
@@ -41,11 +94,18 @@ public class RateLimitingFilter implements Filter {
 		}
 	}
 
-	private String getClientIP(HttpServletRequest request) {
-		String xfHeader = request.getHeader("X-Forwarded-For");
-		if (xfHeader == null || xfHeader.isEmpty()) {
-			return request.getRemoteAddr();
-		}
-		return xfHeader.split(",")[0]; // Use the first IP in the list
+	//Shared buckets outlive the local cache, so expired rows are deleted here rather than by eviction
+	@Scheduled(fixedDelayString = "${config.rate_limit.cleanup_interval_secs}", timeUnit = TimeUnit.SECONDS)
+	public void removeExpiredBuckets() {
+		if (!(proxyManager instanceof ExpiredEntriesCleaner cleaner)) return;
+		int removed;
+		do {
+			removed = cleaner.removeExpired(EXPIRED_BUCKETS_REMOVED_PER_RUN);
+		} while (removed == EXPIRED_BUCKETS_REMOVED_PER_RUN);
+	}
+
+	long trackedClients() {
+		buckets.cleanUp();
+		return buckets.estimatedSize();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,78 @@
+package za.co.cbank.securefilestatementdelivery.Audit.aspect;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import za.co.cbank.securefilestatementdelivery.Audit.annotation.Auditable;
+import za.co.cbank.securefilestatementdelivery.Audit.aspect.aspect.AuditAspect;
+import za.co.cbank.securefilestatementdelivery.Audit.service.AuditLogService;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class AuditAspectTest {
+
+	@Mock
+	private AuditLogService auditLogService;
+
+	private AuditedCalls auditedCalls;
+
+	@BeforeEach
+	void setUp() {
+		AspectJProxyFactory factory = new AspectJProxyFactory(new AuditedCalls());
+		factory.setProxyTargetClass(true);
+		factory.addAspect(new AuditAspect(auditLogService));
+		auditedCalls = factory.getProxy();
+	}
+
+	@Test
+	void auditAction_ShouldEvaluateDetailAgainstArguments_OnEveryCall() {
+		auditedCalls.fetch(1000000001);
+		auditedCalls.fetch(1000000002);
+
+		verify(auditLogService).logAction(any(), any(), any(), eq("Fetched: 1000000001"));
+		verify(auditLogService).logAction(any(), any(), any(), eq("Fetched: 1000000002"));
+	}
+
+	@Test
+	void auditAction_ShouldResolvePropertyPaths_AndSkipEmptyDetail() {
+		auditedCalls.notify(CustomerAccount.builder().emailAddress("john.doe@cbank.co.za").build());
+		auditedCalls.ping();
+		auditedCalls.ping();
+
+		verify(auditLogService).logAction(any(), any(), any(), eq("Notified: john.doe@cbank.co.za"));
+		verify(auditLogService, times(2)).logAction(any(), any(), any(), eq("Pinged: "));
+	}
+
+	@Test
+	void auditAction_ShouldRecordNothing_WhileAuditingIsSuppressed() {
+		AuditAspect.withoutAuditing(() -> auditedCalls.fetch(1000000001));
+		auditedCalls.fetch(1000000002);
+
+		verify(auditLogService, never()).logAction(any(), any(), any(), eq("Fetched: 1000000001"));
+		verify(auditLogService).logAction(any(), any(), any(), eq("Fetched: 1000000002"));
+	}
+
+	static class AuditedCalls {
+		@Auditable(action = "Fetched", detail = "#accountId")
+		public Integer fetch(Integer accountId) {
+			return accountId;
+		}
+
+		@Auditable(action = "Notified", detail = "#account.emailAddress")
+		public void notify(CustomerAccount account) {
+		}
+
+		@Auditable(action = "Pinged")
+		public void ping() {
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package za.co.cbank.securefilestatementdelivery.Audit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import tools.jackson.databind.json.JsonMapper;
+import za.co.cbank.securefilestatementdelivery.Audit.entity.AuditLog;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogWriterTest {
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	@TempDir
+	private Path spillDir;
+
+	private SimpleMeterRegistry meterRegistry;
+	private AuditLogWriter auditLogWriter;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		auditLogWriter = new AuditLogWriter(jdbcTemplate, JsonMapper.builder().build(), meterRegistry);
+		ReflectionTestUtils.setField(auditLogWriter, "queueCapacity", 100);
+		ReflectionTestUtils.setField(auditLogWriter, "batchSize", 50);
+		ReflectionTestUtils.setField(auditLogWriter, "flushIntervalMs", 50L);
+		ReflectionTestUtils.setField(auditLogWriter, "spillDir", spillDir);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void stop_ShouldFlushQueuedRecords_UsingPooledIds() {
+		ReflectionTestUtils.setField(auditLogWriter, "overflowMode", AuditLogWriter.OverflowMode.BLOCK);
+		when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(1L, 51L);
+
+		auditLogWriter.start();
+		auditLogWriter.write(auditLog("one"));
+		auditLogWriter.write(auditLog("two"));
+		auditLogWriter.write(auditLog("three"));
+		auditLogWriter.stop();
+
+		ArgumentCaptor<List<Object[]>> rowsCaptor = ArgumentCaptor.forClass(List.class);
+		verify(jdbcTemplate, atLeastOnce()).batchUpdate(anyString(), rowsCaptor.capture());
+		List<Object> ids = rowsCaptor.getAllValues().stream().flatMap(List::stream).map(row -> row[0]).toList();
+		assertEquals(List.of(1, 2, 3), ids, "A fresh sequence hands out ids from its initial value");
+		assertEquals(3, meterRegistry.counter("audit.logs.written").count());
+		assertFalse(auditLogWriter.isRunning());
+	}
+
+	@Test
+	void write_ShouldDropAndCount_WhenBufferIsFullInDropMode() {
+		ReflectionTestUtils.setField(auditLogWriter, "overflowMode", AuditLogWriter.OverflowMode.DROP);
+		ReflectionTestUtils.setField(auditLogWriter, "queue", new ArrayBlockingQueue<>(1));
+		ReflectionTestUtils.setField(auditLogWriter, "running", true);
+
+		auditLogWriter.write(auditLog("kept"));
+		auditLogWriter.write(auditLog("dropped"));
+
+		assertEquals(1, meterRegistry.counter("audit.logs.dropped").count());
+		verifyNoInteractions(jdbcTemplate);
+	}
+
+	@Test
+	void write_ShouldSpillToDisk_AndReplayWhenWriterStarts() throws Exception {
+		ReflectionTestUtils.setField(auditLogWriter, "overflowMode", AuditLogWriter.OverflowMode.SPILL);
+		ReflectionTestUtils.setField(auditLogWriter, "queue", new ArrayBlockingQueue<>(1));
+		ReflectionTestUtils.setField(auditLogWriter, "running", true);
+		when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(101L);
+
+		auditLogWriter.write(auditLog("kept"));
+		auditLogWriter.write(auditLog("spilled"));
+		assertEquals(1, Files.readAllLines(spillDir.resolve("audit-spill.ndjson")).size());
+		assertEquals(1, meterRegistry.counter("audit.logs.spilled").count());
+
+		auditLogWriter.start();
+		auditLogWriter.stop();
+
+		verify(jdbcTemplate).batchUpdate(anyString(), anyList());
+		assertFalse(Files.exists(spillDir.resolve("audit-spill.ndjson")));
+		assertFalse(Files.exists(spillDir.resolve("audit-spill.ndjson.replaying")));
+	}
+
+	private AuditLog auditLog(String metadata) {
+		AuditLog auditLog = new AuditLog();
+		auditLog.setTimestamp(LocalDateTime.now());
+		auditLog.setMetadata(metadata);
+		return auditLog;
+	}
+}
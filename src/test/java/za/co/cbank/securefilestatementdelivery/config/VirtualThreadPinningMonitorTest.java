@@ -0,0 +1,50 @@
+package za.co.cbank.securefilestatementdelivery.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadPinningMonitorTest {
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final VirtualThreadPinningMonitor monitor = new VirtualThreadPinningMonitor(meterRegistry, 10);
+	private final Object lock = new Object();
+
+	@AfterEach
+	void tearDown() {
+		monitor.stop();
+	}
+
+	@Test
+	void shouldTimeAVirtualThreadBlockedInsideSynchronized_ByItsCallingSite() throws Exception {
+		monitor.start();
+
+		Thread.ofVirtual().start(this::sleepWhileHoldingTheMonitor).join();
+
+		//JFR hands events to the stream about once a second
+		Timer timer = null;
+		for (int i = 0; i < 100 && timer == null; i++) {
+			timer = meterRegistry.find(VirtualThreadPinningMonitor.PINNED_TIMER)
+					.tag("site", VirtualThreadPinningMonitorTest.class.getName() + ".sleepWhileHoldingTheMonitor")
+					.timer();
+			if (timer == null) Thread.sleep(100);
+		}
+		assertNotNull(timer);
+		assertTrue(timer.count() >= 1);
+	}
+
+	private void sleepWhileHoldingTheMonitor() {
+		synchronized (lock) {
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -9,7 +9,11 @@ import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
 import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
@@ -17,11 +21,15 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import za.co.cbank.securefilestatementdelivery.config.SecurityConfig;
 import za.co.cbank.securefilestatementdelivery.controller.api.v1.PublicController;
+import za.co.cbank.securefilestatementdelivery.service.StatementDownload;
 import za.co.cbank.securefilestatementdelivery.service.StatementService;
 import za.co.cbank.securefilestatementdelivery.web.filter.AuditContextFilter;
 
+import java.util.Arrays;
 import java.util.UUID;
 
 import static org.mockito.Mockito.when;
@@ -30,6 +38,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(controllers = PublicController.class)
+@Import(SecurityConfig.class)
 @AutoConfigureMockMvc
 @WithMockUser
 class PublicAPIv1ControllerTest {
@@ -44,26 +53,79 @@ class PublicAPIv1ControllerTest {
 	void shouldDownloadPdfSuccessfully() throws Exception {
 		UUID token = UUID.randomUUID();
 		byte[] mockPdfContent = "fake pdf content".getBytes();
-		when(statementService.downloadStatementUsingToken(token.toString()))
-				.thenReturn(Mono.just(mockPdfContent));
+		Flux<DataBuffer> content = Flux.just(
+				DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(mockPdfContent, 0, 5)),
+				DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(mockPdfContent, 5, mockPdfContent.length)));
+		when(statementService.downloadStatementUsingToken(token.toString(), null, null))
+				.thenReturn(Mono.just(new StatementDownload(mockPdfContent.length, content)));
 
 		MvcResult result = mockMvc.perform(get("/api/v1/public/" + token))
 				.andExpect(request().asyncStarted())
 				.andReturn();
 
-		mockMvc.perform(asyncDispatch(result))
+		MvcResult streamed = mockMvc.perform(asyncDispatch(result))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		mockMvc.perform(asyncDispatch(streamed))
 				.andExpect(status().isOk())
 				.andExpect(header().string(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_PDF_VALUE))
+				.andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, mockPdfContent.length))
 				.andExpect(content().bytes(mockPdfContent));
 	}
 
+	@Test
+	void shouldResumeDownloadFromTheRequestedRange() throws Exception {
+		UUID token = UUID.randomUUID();
+		byte[] remainder = "content".getBytes();
+		when(statementService.downloadStatementUsingToken(token.toString(), "bytes=9-", null))
+				.thenReturn(Mono.just(new StatementDownload(HttpStatus.PARTIAL_CONTENT, remainder.length, "bytes 9-15/16", "\"abc\"",
+						Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(remainder)))));
+
+		MvcResult result = mockMvc.perform(get("/api/v1/public/" + token).header(HttpHeaders.RANGE, "bytes=9-"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		MvcResult streamed = mockMvc.perform(asyncDispatch(result))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		mockMvc.perform(asyncDispatch(streamed))
+				.andExpect(status().isPartialContent())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 9-15/16"))
+				.andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+				.andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+				.andExpect(content().bytes(remainder));
+	}
+
+	@Test
+	void shouldReturnNotModified_WhenTheClientAlreadyHasTheStatement() throws Exception {
+		UUID token = UUID.randomUUID();
+		when(statementService.downloadStatementUsingToken(token.toString(), null, "\"abc\""))
+				.thenReturn(Mono.just(new StatementDownload(HttpStatus.NOT_MODIFIED, -1, null, "\"abc\"", Flux.empty())));
+
+		MvcResult result = mockMvc.perform(get("/api/v1/public/" + token).header(HttpHeaders.IF_NONE_MATCH, "\"abc\""))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		mockMvc.perform(asyncDispatch(result))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+				.andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+				.andExpect(content().bytes(new byte[0]));
+	}
+
 	@Test
 	void shouldReturnBadRequestOnInvalidUUID() throws Exception {
 		UUID token = UUID.randomUUID();
-		when(statementService.downloadStatementUsingToken(token.toString()))
-				.thenThrow(new IllegalArgumentException("Invalid UUID"));
+		when(statementService.downloadStatementUsingToken("444" + token, null, null))
+				.thenThrow(new Exception("Failed to retrieve Statement"));
 
-		mockMvc.perform(get("/api/v1/public/444" + token))
+		MvcResult result = mockMvc.perform(get("/api/v1/public/444" + token))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		mockMvc.perform(asyncDispatch(result))
 				.andExpect(status().isBadRequest());
 	}
 }
\ No newline at end of file
@@ -7,8 +7,11 @@ import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
@@ -26,4 +29,39 @@ class TransactionAPIv1ControllerTest {
 				.andExpect(content().contentType(MediaType.APPLICATION_JSON))
 				.andExpect(jsonPath("$").isArray());
 	}
+
+	@Test
+	@WithMockUser
+	void getTransactions_ShouldStreamNdjson_WhenAsked() throws Exception {
+		MvcResult result = mockMvc.perform(get("/api/v1/transactions/account/1000000001").accept(MediaType.APPLICATION_NDJSON))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		mockMvc.perform(asyncDispatch(result))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(MediaType.APPLICATION_NDJSON));
+	}
+
+	@Test
+	@WithMockUser
+	void getTransactions_ShouldReturnBadRequest_ForAMalformedCursor() throws Exception {
+		mockMvc.perform(get("/api/v1/transactions/account/1000000001").param("after", "not-a-cursor"))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	@WithMockUser
+	void createTransactions_ShouldReportRejectedRows_FromAnNdjsonUpload() throws Exception {
+		String ndjson = """
+				{"accountId":999,"amount":10.00,"drOrCr":"CR"}
+				{"accountId":999,"amount":10.00,"drOrCr":"CREDIT"}
+				""";
+
+		mockMvc.perform(post("/api/v1/transactions/batch").contentType(MediaType.APPLICATION_NDJSON).content(ndjson))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.received").value(2))
+				.andExpect(jsonPath("$.inserted").value(0))
+				.andExpect(jsonPath("$.failures[0].row").value(2))
+				.andExpect(jsonPath("$.failures[1].reason").value("Account not found"));
+	}
 }
\ No newline at end of file
@@ -6,6 +6,10 @@ import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
 import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
 import za.co.cbank.securefilestatementdelivery.entity.Statement;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @DataJpaTest
@@ -37,4 +41,23 @@ class StatementRepositoryTest {
 
 		assertNull(statementRepository.findByRetrievalToken("invalid-token"));
 	}
-}
\ No newline at end of file
+
+	@Test
+	void streamLiveRetrievalTokens_ShouldReturnLiveTokensAfterTheIdOrAmongThePendingIds() {
+		CustomerAccount account = accountRepository.save(CustomerAccount.builder().accountId(1000000004).idNumber("9001010000086").build());
+		LocalDateTime now = LocalDateTime.now();
+		Statement pending = statementRepository.save(Statement.builder().retrievalToken("pending").customerAccount(account).expiresAt(now.plusMinutes(5)).build());
+		statementRepository.save(Statement.builder().retrievalToken("skipped").customerAccount(account).expiresAt(now.plusMinutes(5)).build());
+		Statement expired = statementRepository.save(Statement.builder().retrievalToken("expired").customerAccount(account).expiresAt(now.minusMinutes(5)).build());
+		statementRepository.save(Statement.builder().retrievalToken("after").customerAccount(account).build());
+		statementRepository.flush();
+
+		List<String> tokens;
+		try (Stream<RetrievalTokenRow> rows = statementRepository.streamLiveRetrievalTokens(expired.getStatementId(),
+				List.of(pending.getStatementId(), expired.getStatementId()), now)) {
+			tokens = rows.map(RetrievalTokenRow::retrievalToken).sorted().toList();
+		}
+
+		assertEquals(List.of("after", "pending"), tokens);
+	}
+}
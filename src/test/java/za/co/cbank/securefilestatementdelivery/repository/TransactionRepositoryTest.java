@@ -4,12 +4,15 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
 import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.data.domain.Limit;
+import za.co.cbank.securefilestatementdelivery.dto.TransactionDTO;
 import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
 import za.co.cbank.securefilestatementdelivery.entity.Transaction;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -30,7 +33,7 @@ class TransactionRepositoryTest {
 				.firstName("Alice")
 				.idNumber("9001010000085")
 				.build();
-		accountRepository.save(account);
+		account = accountRepository.save(account);
 
 		Transaction t_newer = Transaction.builder()
 				.postDate(LocalDate.of(2025, 2, 1))
@@ -55,4 +58,99 @@ class TransactionRepositoryTest {
 		assertEquals(LocalDate.of(2025, 1, 1), results.get(0).getPostDate(), "Older transaction should be first");
 		assertEquals(LocalDate.of(2025, 2, 1), results.get(1).getPostDate(), "Newer transaction should be second");
 	}
+
+	@Test
+	void streamStatementTransactions_ShouldReturnSortedTransactionsWithinPeriod() {
+		CustomerAccount account = CustomerAccount.builder()
+				.accountId(1000000004)
+				.firstName("Bob")
+				.idNumber("9001010000086")
+				.build();
+		account = accountRepository.save(account);
+		transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 2, 1)).amount(new BigDecimal("500.00")).customerAccount(account).drOrCr("CR").build());
+		transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 1)).amount(new BigDecimal("200.00")).customerAccount(account).drOrCr("DR").build());
+		transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2024, 12, 31)).amount(new BigDecimal("75.00")).customerAccount(account).drOrCr("DR").build());
+		transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 2, 2)).amount(new BigDecimal("10.00")).customerAccount(account).drOrCr("DR").build());
+
+		List<LocalDate> postDates;
+		try (Stream<Transaction> results = transactionRepository.streamStatementTransactions(1000000004, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 2, 1))) {
+			postDates = results.map(Transaction::getPostDate).toList();
+		}
+
+		assertEquals(List.of(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 2, 1)), postDates);
+	}
+
+	@Test
+	void findTransactionPageAfter_ShouldContinueFromTheCursor_OrderedByPostDateThenId() {
+		CustomerAccount account = CustomerAccount.builder()
+				.accountId(1000000005)
+				.firstName("Carol")
+				.idNumber("9001010000087")
+				.build();
+		account = accountRepository.save(account);
+		Transaction first = transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 1)).amount(new BigDecimal("1.00")).customerAccount(account).drOrCr("CR").build());
+		Transaction second = transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 1)).amount(new BigDecimal("2.00")).customerAccount(account).drOrCr("CR").build());
+		Transaction third = transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 2)).amount(new BigDecimal("3.00")).customerAccount(account).drOrCr("DR").build());
+		transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 3, 1)).amount(new BigDecimal("4.00")).customerAccount(account).drOrCr("DR").build());
+		transactionRepository.flush();
+
+		LocalDate from = LocalDate.of(2025, 1, 1);
+		LocalDate to = LocalDate.of(2025, 2, 28);
+		List<TransactionDTO> firstPage = transactionRepository.findTransactionPage(1000000005, from, to, Limit.of(1));
+		List<TransactionDTO> nextPage = transactionRepository.findTransactionPageAfter(1000000005, from, to,
+				firstPage.getLast().getPostDate(), firstPage.getLast().getTransactionId(), Limit.of(10));
+
+		assertEquals(List.of(first.getTransactionId()), firstPage.stream().map(TransactionDTO::getTransactionId).toList());
+		assertEquals(List.of(second.getTransactionId(), third.getTransactionId()), nextPage.stream().map(TransactionDTO::getTransactionId).toList());
+		assertEquals(1000000005, nextPage.getFirst().getAccountId());
+	}
+
+	@Test
+	void streamStatementSegment_ShouldReturnTheRowsFromItsStartUpToTheNextSegment() {
+		CustomerAccount account = accountRepository.save(CustomerAccount.builder()
+				.accountId(1000000006)
+				.firstName("Dave")
+				.idNumber("9001010000088")
+				.build());
+		transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 1)).amount(new BigDecimal("1.00")).customerAccount(account).drOrCr("CR").build());
+		Transaction second = transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 1)).amount(new BigDecimal("2.00")).customerAccount(account).drOrCr("CR").build());
+		Transaction third = transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 2)).amount(new BigDecimal("3.00")).customerAccount(account).drOrCr("DR").build());
+		Transaction fourth = transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 2)).amount(new BigDecimal("4.00")).customerAccount(account).drOrCr("DR").build());
+		transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 2, 1)).amount(new BigDecimal("5.00")).customerAccount(account).drOrCr("DR").build());
+		transactionRepository.flush();
+
+		List<Integer> middle;
+		try (Stream<Transaction> rows = transactionRepository.streamStatementSegment(1000000006,
+				LocalDate.of(2025, 1, 1), second.getTransactionId(), LocalDate.of(2025, 1, 2), fourth.getTransactionId())) {
+			middle = rows.map(Transaction::getTransactionId).toList();
+		}
+		//The last segment runs to the day after the period, before any transaction id
+		List<Integer> last;
+		try (Stream<Transaction> rows = transactionRepository.streamStatementSegment(1000000006,
+				LocalDate.of(2025, 1, 2), fourth.getTransactionId(), LocalDate.of(2025, 2, 1), Integer.MIN_VALUE)) {
+			last = rows.map(Transaction::getTransactionId).toList();
+		}
+
+		assertEquals(List.of(second.getTransactionId(), third.getTransactionId()), middle);
+		assertEquals(List.of(fourth.getTransactionId()), last);
+	}
+
+	@Test
+	void sumMovementBetween_ShouldNetCreditsAgainstDebits_AndIgnoreOtherRows() {
+		CustomerAccount account = accountRepository.save(CustomerAccount.builder()
+				.accountId(1000000007)
+				.firstName("Erin")
+				.idNumber("9001010000089")
+				.build());
+		transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 3)).amount(new BigDecimal("100.00")).customerAccount(account).drOrCr("CR").build());
+		transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 4)).amount(new BigDecimal("30.00")).customerAccount(account).drOrCr("dr").build());
+		transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 5)).amount(new BigDecimal("50.00")).customerAccount(account).build());
+		transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 6)).amount(new BigDecimal("20.00")).customerAccount(account).drOrCr("XX").build());
+		transactionRepository.save(Transaction.builder().postDate(LocalDate.of(2025, 1, 10)).amount(new BigDecimal("5.00")).customerAccount(account).drOrCr("DR").build());
+		transactionRepository.flush();
+
+		BigDecimal movement = transactionRepository.sumMovementBetween(1000000007, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 10));
+
+		assertEquals(0, new BigDecimal("70.00").compareTo(movement));
+	}
 }
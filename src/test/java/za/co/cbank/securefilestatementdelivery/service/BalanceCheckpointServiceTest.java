@@ -0,0 +1,110 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import za.co.cbank.securefilestatementdelivery.entity.BalanceCheckpoint;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.repository.BalanceCheckpointRepository;
+import za.co.cbank.securefilestatementdelivery.repository.CustomerAccountRepository;
+import za.co.cbank.securefilestatementdelivery.repository.TransactionRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//The application config pins the Postgres dialect, whose lock clauses H2 cannot parse
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import(BalanceCheckpointService.class)
+class BalanceCheckpointServiceTest {
+
+	@Autowired
+	private BalanceCheckpointService balanceCheckpointService;
+
+	@Autowired
+	private BalanceCheckpointRepository balanceCheckpointRepository;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private CustomerAccountRepository accountRepository;
+
+	@Test
+	void applyTransaction_ShouldShiftLaterPeriods_WhenPostingIsBackDated() {
+		CustomerAccount account = account(1000000005, "9001010000087");
+		post(account, LocalDate.of(2025, 1, 10), "1000.00", "CR");
+		post(account, LocalDate.of(2025, 3, 5), "200.00", "DR");
+		post(account, LocalDate.of(2025, 2, 20), "50.00", "DR");
+
+		List<BalanceCheckpoint> checkpoints = checkpoints(account);
+
+		assertEquals(List.of(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 2, 1), LocalDate.of(2025, 3, 1)),
+				checkpoints.stream().map(BalanceCheckpoint::getPeriodStart).toList());
+		assertBalances(checkpoints.get(0), "0", "1000.00");
+		assertBalances(checkpoints.get(1), "1000.00", "950.00");
+		assertBalances(checkpoints.get(2), "950.00", "750.00");
+	}
+
+	@Test
+	void findLatestCheckpoint_ShouldBuildCheckpoints_ForTransactionsLoadedDirectly() {
+		CustomerAccount account = account(1000000006, "9001010000088");
+		save(account, LocalDate.of(2024, 11, 30), "300.00", "CR");
+		save(account, LocalDate.of(2025, 1, 2), "100.00", "DR");
+		save(account, LocalDate.of(2025, 1, 15), "40.00", "CR");
+		//Neither CR nor DR, so it moves no balance, as when rows are posted one by one
+		save(account, LocalDate.of(2025, 1, 20), "999.00", null);
+
+		BalanceCheckpoint latest = balanceCheckpointService.findLatestCheckpoint(account.getAccountId()).orElseThrow();
+
+		assertEquals(LocalDate.of(2025, 1, 1), latest.getPeriodStart());
+		assertBalances(latest, "300.00", "240.00");
+		assertEquals(2, checkpoints(account).size(), "Months without activity get no checkpoint");
+	}
+
+	@Test
+	void findOpeningBalance_ShouldAddMovementSinceTheMonthOpened() {
+		CustomerAccount account = account(1000000007, "9001010000089");
+		post(account, LocalDate.of(2025, 1, 10), "1000.00", "CR");
+		post(account, LocalDate.of(2025, 3, 5), "200.00", "DR");
+		post(account, LocalDate.of(2025, 3, 20), "50.00", "DR");
+
+		assertEquals(0, new BigDecimal("800.00").compareTo(balanceCheckpointService.findOpeningBalance(account.getAccountId(), LocalDate.of(2025, 3, 20))));
+		assertEquals(0, new BigDecimal("1000.00").compareTo(balanceCheckpointService.findOpeningBalance(account.getAccountId(), LocalDate.of(2025, 2, 14))),
+				"A month without activity opens at the previous closing balance");
+		assertEquals(0, BigDecimal.ZERO.compareTo(balanceCheckpointService.findOpeningBalance(account.getAccountId(), LocalDate.of(2024, 6, 1))));
+	}
+
+	private CustomerAccount account(Integer accountId, String idNumber) {
+		return accountRepository.save(CustomerAccount.builder().accountId(accountId).firstName("Carol").idNumber(idNumber).build());
+	}
+
+	private Transaction save(CustomerAccount account, LocalDate postDate, String amount, String drOrCr) {
+		return transactionRepository.save(Transaction.builder()
+				.postDate(postDate)
+				.amount(new BigDecimal(amount))
+				.drOrCr(drOrCr)
+				.customerAccount(account)
+				.build());
+	}
+
+	private void post(CustomerAccount account, LocalDate postDate, String amount, String drOrCr) {
+		balanceCheckpointService.applyTransaction(save(account, postDate, amount, drOrCr));
+	}
+
+	private List<BalanceCheckpoint> checkpoints(CustomerAccount account) {
+		return balanceCheckpointRepository.findAll().stream()
+				.filter(checkpoint -> checkpoint.getCustomerAccount().getAccountId().equals(account.getAccountId()))
+				.sorted((a, b) -> a.getPeriodStart().compareTo(b.getPeriodStart()))
+				.toList();
+	}
+
+	private void assertBalances(BalanceCheckpoint checkpoint, String opening, String closing) {
+		assertEquals(0, new BigDecimal(opening).compareTo(checkpoint.getOpeningBalance()), "opening balance for " + checkpoint.getPeriodStart());
+		assertEquals(0, new BigDecimal(closing).compareTo(checkpoint.getClosingBalance()), "closing balance for " + checkpoint.getPeriodStart());
+	}
+}
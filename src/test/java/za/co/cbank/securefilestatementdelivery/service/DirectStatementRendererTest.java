@@ -0,0 +1,91 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectStatementRendererTest {
+	private static final LocalDate PERIOD_FROM = LocalDate.of(2025, 1, 1);
+	private static final LocalDate PERIOD_TO = LocalDate.of(2025, 1, 31);
+
+	private final DirectStatementRenderer renderer = new DirectStatementRenderer();
+	private final CustomerAccount account = CustomerAccount.builder()
+			.accountId(1000000001)
+			.firstName("John")
+			.lastName("Doe")
+			.emailAddress("john.doe@cbank.co.za")
+			.idNumber("9001010000083")
+			.build();
+
+	@Test
+	void render_ShouldPrintTheStatementTable_WithTheClosingBalance() throws IOException {
+		List<Transaction> transactions = List.of(
+				transaction("Salary", "1000.00", "CR"),
+				transaction("Groceries", "500.00", "DR"));
+
+		DirectStatementRenderer.Layout layout = renderer.format(new StatementContent(account, PERIOD_FROM, PERIOD_TO,
+				new BigDecimal("250.00"), transactions.iterator()));
+
+		assertEquals("750.00", layout.closingBalance());
+		try (PDDocument document = renderer.render(layout)) {
+			String text = new PDFTextStripper().getText(document);
+			assertEquals(1, document.getNumberOfPages());
+			assertTrue(text.contains("John Doe"));
+			assertTrue(text.contains("Account Statement"));
+			assertTrue(text.contains("Transactions from 2025-01-01 to 2025-01-31"));
+			assertTrue(text.contains("Opening balance 250.00"));
+			assertTrue(text.contains("2025-01-10 Salary 1000.00 CR"));
+			assertTrue(text.contains("Balance 750.00"));
+		}
+	}
+
+	@Test
+	void render_ShouldRepeatTheHeadingOnEveryPage_AndFitDescriptionsToTheirColumn() throws IOException {
+		List<Transaction> transactions = new ArrayList<>();
+		transactions.add(transaction("Card purchase € 中 café", "10.00", "DR"));
+		transactions.add(transaction("X".repeat(300), "10.00", "DR"));
+		for (int i = 0; i < 200; i++) {
+			transactions.add(transaction("POS PURCHASE " + i, "1.00", "DR"));
+		}
+
+		DirectStatementRenderer.Layout layout = renderer.format(new StatementContent(account, PERIOD_FROM, PERIOD_TO,
+				BigDecimal.ZERO, transactions.iterator()));
+
+		try (PDDocument document = renderer.render(layout)) {
+			assertTrue(document.getNumberOfPages() > 1);
+			PDFTextStripper stripper = new PDFTextStripper();
+			for (int page = 1; page <= document.getNumberOfPages(); page++) {
+				stripper.setStartPage(page);
+				stripper.setEndPage(page);
+				assertTrue(stripper.getText(document).contains("Date Transaction Description Amount"), "Heading on page " + page);
+			}
+			stripper.setStartPage(1);
+			stripper.setEndPage(document.getNumberOfPages());
+			String text = stripper.getText(document);
+			assertTrue(text.contains("Card purchase € ? café"));
+			assertTrue(text.contains("XXX..."));
+			assertFalse(text.contains("X".repeat(300)));
+			assertTrue(text.contains("POS PURCHASE 199"));
+		}
+	}
+
+	private Transaction transaction(String description, String amount, String drOrCr) {
+		return Transaction.builder()
+				.postDate(LocalDate.of(2025, 1, 10))
+				.description(description)
+				.amount(new BigDecimal(amount))
+				.drOrCr(drOrCr)
+				.customerAccount(account)
+				.build();
+	}
+}
@@ -0,0 +1,62 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+import za.co.cbank.securefilestatementdelivery.exception.FileCreationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileCreationServiceTest {
+	private static final String MASTER_SECRET_KEY = "master-key";
+
+	private final FileCreationService fileCreationService = new FileCreationService(new PdfRenderingResources(MASTER_SECRET_KEY, List.of()));
+
+	@Test
+	void renderPdfDocument_ShouldLayOutStatementXhtmlReadFromAStream() throws IOException {
+		String xhtml = "<html><head><meta charset=\"UTF-8\"></meta></head><body><h2>Account Statement</h2>" +
+				"<table><tbody><tr><td>Opening balance</td><td>250.00 &amp; more</td></tr></tbody></table></body></html>";
+
+		try (PDDocument document = fileCreationService.renderPdfDocument(new ByteArrayInputStream(xhtml.getBytes(StandardCharsets.UTF_8)))) {
+			String text = new PDFTextStripper().getText(document);
+			assertEquals(1, document.getNumberOfPages());
+			assertTrue(text.contains("Account Statement"));
+			assertTrue(text.contains("250.00 & more"));
+		}
+	}
+
+	@Test
+	void renderPdfDocument_ShouldRefuseADoctype() {
+		String xhtml = "<!DOCTYPE html [<!ENTITY x SYSTEM \"file:///etc/passwd\">]><html><body>&x;</body></html>";
+
+		assertThrows(FileCreationException.class,
+				() -> fileCreationService.renderPdfDocument(new ByteArrayInputStream(xhtml.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	void writeProtectedPdf_ShouldUseTheConfiguredMasterKeyAsTheOwnerPassword() throws IOException {
+		ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+		try (PDDocument document = fileCreationService.renderPdfDocument("<html><body><p>Statement</p></body></html>")) {
+			fileCreationService.writeProtectedPdf(document, "9001010000083", pdf);
+		}
+
+		try (PDDocument owner = PDDocument.load(pdf.toByteArray(), MASTER_SECRET_KEY);
+			 PDDocument customer = PDDocument.load(pdf.toByteArray(), "9001010000083")) {
+			assertTrue(owner.getCurrentAccessPermission().isOwnerPermission());
+			assertFalse(customer.getCurrentAccessPermission().isOwnerPermission());
+			assertTrue(customer.getCurrentAccessPermission().canPrint());
+			assertFalse(customer.getCurrentAccessPermission().canModify());
+		}
+	}
+
+	@Test
+	void pdfRenderingResources_ShouldRefuseAFontWithoutAFamily() {
+		assertThrows(IllegalStateException.class, () -> new PdfRenderingResources(MASTER_SECRET_KEY, List.of("/fonts/statement.ttf")));
+	}
+}
@@ -0,0 +1,66 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+
+import java.net.URI;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FileStorageServiceTest {
+
+	@Mock
+	private S3Client s3Client;
+
+	@Mock
+	private S3Presigner s3Presigner;
+
+	private FileStorageService fileStorageService;
+
+	@BeforeEach
+	void setUp() {
+		fileStorageService = new FileStorageService(s3Client, s3Presigner, ObservationRegistry.NOOP, new SimpleMeterRegistry(), 3600, 100L);
+		ReflectionTestUtils.setField(fileStorageService, "bucketName", "files");
+	}
+
+	@Test
+	void createPresignedLink_ShouldSignEachObjectOncePerWindow() throws Exception {
+		PresignedGetObjectRequest first = presigned("http://localhost:9000/files/a.pdf?X-Amz-Signature=1");
+		PresignedGetObjectRequest second = presigned("http://localhost:9000/files/b.pdf?X-Amz-Signature=2");
+		when(s3Presigner.presignGetObject(any(Consumer.class))).thenReturn(first, second);
+
+		String link = fileStorageService.createPresignedLink("a.pdf");
+
+		assertEquals(link, fileStorageService.createPresignedLink("a.pdf"), "A burst of downloads should share one signature");
+		assertNotEquals(link, fileStorageService.createPresignedLink("b.pdf"));
+		verify(s3Presigner, times(2)).presignGetObject(any(Consumer.class));
+	}
+
+	@Test
+	void statementExists_ShouldBeFalse_WhenObjectIsGone() {
+		when(s3Client.headObject(any(HeadObjectRequest.class))).thenThrow(NoSuchKeyException.builder().statusCode(404).build());
+
+		assertFalse(fileStorageService.statementExists("deleted.pdf"));
+	}
+
+	private PresignedGetObjectRequest presigned(String url) throws Exception {
+		PresignedGetObjectRequest request = mock(PresignedGetObjectRequest.class);
+		when(request.url()).thenReturn(URI.create(url).toURL());
+		return request;
+	}
+}
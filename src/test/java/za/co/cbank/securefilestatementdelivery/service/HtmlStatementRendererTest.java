@@ -0,0 +1,141 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.context.LazyContextVariable;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class HtmlStatementRendererTest {
+
+	@Mock
+	private TemplateEngine templateEngine;
+
+	@Mock
+	private FileCreationService fileCreationService;
+
+	@InjectMocks
+	private HtmlStatementRenderer htmlStatementRenderer;
+
+	private CustomerAccount testAccount;
+
+	@BeforeEach
+	void setUp() {
+		testAccount = CustomerAccount.builder()
+				.accountId(1000000001)
+				.firstName("John")
+				.idNumber("9001010000083")
+				.build();
+	}
+
+	@Test
+	void formatStatementTransactions_ShouldCalculateCorrectBalance() {
+		List<Transaction> transactions = Arrays.asList(
+				Transaction.builder().amount(new BigDecimal("1000.00")).drOrCr("CR").customerAccount(testAccount).build(),
+				Transaction.builder().amount(new BigDecimal("500.00")).drOrCr("DR").customerAccount(testAccount).build(),
+				Transaction.builder().amount(new BigDecimal("50.00")).drOrCr("CR").customerAccount(testAccount).build()
+		);
+		ArgumentCaptor<Context> contextCaptor = ArgumentCaptor.forClass(Context.class);
+
+		htmlStatementRenderer.formatStatementTransactions(transactions);
+
+		verify(templateEngine).process(eq("statement"), contextCaptor.capture(), any(Writer.class));
+
+		Context capturedContext = contextCaptor.getValue();
+
+		BigDecimal capturedBalance = (BigDecimal) capturedContext.getVariable("totalBalance");
+		CustomerAccount capturedAccount = (CustomerAccount) capturedContext.getVariable("customerAccount");
+
+		assertEquals(0, new BigDecimal("550.00").compareTo(capturedBalance),
+				"The balance should be 550.00");
+		assertEquals("John", capturedAccount.getFirstName());
+	}
+
+	@Test
+	void formatStatementTransactions_ShouldTotalBalanceAsRowsAreRead() {
+		List<Transaction> transactions = Arrays.asList(
+				Transaction.builder().amount(new BigDecimal("1000.00")).drOrCr("CR").customerAccount(testAccount).build(),
+				Transaction.builder().amount(new BigDecimal("500.00")).drOrCr("DR").customerAccount(testAccount).build()
+		);
+		ArgumentCaptor<Context> contextCaptor = ArgumentCaptor.forClass(Context.class);
+
+		htmlStatementRenderer.formatStatementTransactions(testAccount, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31), new BigDecimal("250.00"),
+				transactions.iterator(), Writer.nullWriter());
+
+		verify(templateEngine).process(eq("statement"), contextCaptor.capture(), any(Writer.class));
+		Context capturedContext = contextCaptor.getValue();
+		Iterator<?> rows = (Iterator<?>) capturedContext.getVariable("transactions");
+		rows.forEachRemaining(row -> { });
+		BigDecimal capturedBalance = (BigDecimal) ((LazyContextVariable<?>) capturedContext.getVariable("totalBalance")).getValue();
+
+		assertEquals(0, new BigDecimal("750.00").compareTo(capturedBalance),
+				"The balance should be the opening balance plus every row once they have been written");
+		assertEquals(new BigDecimal("250.00"), capturedContext.getVariable("openingBalance"));
+	}
+
+	@Test
+	void render_ShouldLayOutTheStatementTemplate_IntoAPdf() throws IOException {
+		//The real template and PDF builder rather than mocks, as Spring Boot configures the template engine
+		ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+		resolver.setPrefix("templates/");
+		resolver.setSuffix(".html");
+		resolver.setTemplateMode(TemplateMode.HTML);
+		resolver.setCharacterEncoding("UTF-8");
+		SpringTemplateEngine engine = new SpringTemplateEngine();
+		engine.setTemplateResolver(resolver);
+		HtmlStatementRenderer renderer = new HtmlStatementRenderer(engine, new FileCreationService(new PdfRenderingResources("passwd", List.of())));
+		List<Transaction> transactions = Arrays.asList(
+				Transaction.builder().postDate(LocalDate.of(2025, 1, 2)).description("SALARY CBANK").amount(new BigDecimal("1000.00"))
+						.drOrCr("CR").customerAccount(testAccount).build(),
+				Transaction.builder().postDate(LocalDate.of(2025, 1, 3)).description("POS PURCHASE GROCER").amount(new BigDecimal("200.50"))
+						.drOrCr("DR").customerAccount(testAccount).build()
+		);
+
+		try (PDDocument document = renderer.render(renderer.format(new StatementContent(testAccount, LocalDate.of(2025, 1, 1),
+				LocalDate.of(2025, 1, 31), new BigDecimal("50.00"), transactions.iterator())))) {
+			String text = new PDFTextStripper().getText(document);
+			assertEquals(1, document.getNumberOfPages());
+			assertTrue(text.contains("Account Statement"));
+			assertTrue(text.contains("Transactions from 2025-01-01 to 2025-01-31"));
+			assertTrue(text.contains("SALARY CBANK"));
+			assertTrue(text.contains("POS PURCHASE GROCER"));
+			assertTrue(text.contains("849.50"), "The closing balance is the opening balance plus the rows");
+		}
+	}
+
+	@Test
+	void formatStatementTransactions_ShouldReturnEmpty_WhenListIsEmpty() {
+		// Act
+		String result = htmlStatementRenderer.formatStatementTransactions(List.of());
+
+		// Assert
+		assertEquals("No transactions, cannot generate statement", result);
+	}
+}
@@ -0,0 +1,170 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import za.co.cbank.securefilestatementdelivery.repository.RetrievalTokenRow;
+import za.co.cbank.securefilestatementdelivery.repository.StatementRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RetrievalTokenFilterTest {
+
+	@Mock
+	private StatementRepository statementRepository;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	private final RetrievalTokenService retrievalTokenService = new RetrievalTokenService(RetrievalTokenService.Format.UUID, List.of(), "", null);
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private RetrievalTokenFilter retrievalTokenFilter;
+
+	@BeforeEach
+	void setUp() {
+		retrievalTokenFilter = new RetrievalTokenFilter(statementRepository, retrievalTokenService, transactionManager, meterRegistry, true, 1000, 0.001, 5, 30);
+	}
+
+	@Test
+	void mightContain_ShouldLetEveryTokenThrough_UntilTheFilterIsBuilt() {
+		assertTrue(retrievalTokenFilter.mightContain(UUID.randomUUID().toString()));
+		assertEquals(0, meterRegistry.counter(RetrievalTokenFilter.REJECTIONS_COUNTER).count());
+	}
+
+	@Test
+	void mightContain_ShouldRejectUnknownTokens_AndKeepLiveOnes() {
+		List<String> live = IntStream.range(0, 500).mapToObj(i -> UUID.randomUUID().toString()).toList();
+		when(statementRepository.countLiveRetrievalTokens(any())).thenReturn((long) live.size());
+		when(statementRepository.streamLiveRetrievalTokens(eq(0), any()))
+				.thenReturn(IntStream.range(0, live.size()).mapToObj(i -> new RetrievalTokenRow(i + 1, live.get(i))));
+
+		retrievalTokenFilter.rebuild();
+
+		assertTrue(live.stream().allMatch(retrievalTokenFilter::mightContain), "A Bloom filter never forgets a token it holds");
+		long letThrough = IntStream.range(0, 10000).filter(i -> retrievalTokenFilter.mightContain(UUID.randomUUID().toString())).count();
+		assertTrue(letThrough < 50, "Made-up tokens should almost all be rejected, let through " + letThrough);
+		assertEquals(10000 - letThrough, meterRegistry.counter(RetrievalTokenFilter.REJECTIONS_COUNTER).count());
+	}
+
+	@Test
+	void mightContain_ShouldKnowTokensIssuedHereAndOnOtherReplicas_SinceTheLastBuild() {
+		when(statementRepository.countLiveRetrievalTokens(any())).thenReturn(0L);
+		when(statementRepository.streamLiveRetrievalTokens(eq(0), any())).thenReturn(Stream.empty());
+		retrievalTokenFilter.rebuild();
+		String issuedHere = UUID.randomUUID().toString();
+		String issuedElsewhere = UUID.randomUUID().toString();
+		when(statementRepository.streamLiveRetrievalTokens(eq(0), any())).thenReturn(Stream.of(new RetrievalTokenRow(7, issuedElsewhere)));
+
+		retrievalTokenFilter.add(issuedHere);
+		retrievalTokenFilter.sync();
+
+		assertTrue(retrievalTokenFilter.mightContain(issuedHere));
+		assertTrue(retrievalTokenFilter.mightContain(issuedElsewhere));
+	}
+
+	@Test
+	void mightContain_ShouldWaitForTheNextSync_SoATokenJustIssuedElsewhereIsKept() throws Exception {
+		when(statementRepository.countLiveRetrievalTokens(any())).thenReturn(0L);
+		when(statementRepository.streamLiveRetrievalTokens(eq(0), any())).thenReturn(Stream.empty());
+		retrievalTokenFilter.rebuild();
+		String issuedElsewhere = retrievalTokenService.issue(null, null, null);
+		when(statementRepository.streamLiveRetrievalTokens(eq(0), any())).thenReturn(Stream.of(new RetrievalTokenRow(3, issuedElsewhere)));
+
+		try (ExecutorService downloads = Executors.newSingleThreadExecutor()) {
+			Future<Boolean> download = downloads.submit(() -> retrievalTokenFilter.mightContain(issuedElsewhere));
+			awaitWaitingMisses(1);
+			retrievalTokenFilter.sync();
+
+			assertTrue(download.get(5, TimeUnit.SECONDS), "Stored after the last sync, but before the download");
+		}
+		assertEquals(0, meterRegistry.counter(RetrievalTokenFilter.REJECTIONS_COUNTER).count());
+	}
+
+	@Test
+	void mightContain_ShouldShareOneSync_WhenManyRecentTokensMissAtOnce() throws Exception {
+		when(statementRepository.countLiveRetrievalTokens(any())).thenReturn(0L);
+		when(statementRepository.streamLiveRetrievalTokens(eq(0), any())).thenReturn(Stream.empty());
+		retrievalTokenFilter.rebuild();
+		clearInvocations(statementRepository);
+		List<String> misses = IntStream.range(0, 32).mapToObj(i -> retrievalTokenService.issue(null, null, null)).toList();
+		when(statementRepository.streamLiveRetrievalTokens(eq(0), any())).thenReturn(Stream.of(new RetrievalTokenRow(3, misses.get(0))));
+
+		List<Boolean> results = new ArrayList<>();
+		try (ExecutorService downloads = Executors.newFixedThreadPool(misses.size())) {
+			List<Future<Boolean>> pending = misses.stream().map(token -> downloads.submit(() -> retrievalTokenFilter.mightContain(token))).toList();
+			awaitWaitingMisses(misses.size());
+			retrievalTokenFilter.sync();
+			for (Future<Boolean> result : pending) results.add(result.get(5, TimeUnit.SECONDS));
+		}
+
+		//The scheduled sync answers every waiting miss; none of them reads statements itself
+		verify(statementRepository, times(1)).streamLiveRetrievalTokens(eq(0), any());
+		verifyNoMoreInteractions(statementRepository);
+		assertTrue(results.get(0));
+		assertEquals(misses.size() - 1, meterRegistry.counter(RetrievalTokenFilter.REJECTIONS_COUNTER).count());
+	}
+
+	@Test
+	void mightContain_ShouldRefuseAtOnce_TokensIssuedBeforeTheLastLoad() {
+		when(statementRepository.countLiveRetrievalTokens(any())).thenReturn(0L);
+		when(statementRepository.streamLiveRetrievalTokens(eq(0), any())).thenReturn(Stream.empty());
+		retrievalTokenFilter.rebuild();
+		clearInvocations(statementRepository);
+
+		assertFalse(retrievalTokenFilter.mightContain(retrievalTokenService.timeOrderedUuid(System.currentTimeMillis() - 60_000).toString()));
+		assertFalse(retrievalTokenFilter.mightContain(UUID.randomUUID().toString()), "Not time-ordered, so never issued here");
+		verifyNoInteractions(statementRepository);
+		assertEquals(2, meterRegistry.counter(RetrievalTokenFilter.REJECTIONS_COUNTER).count());
+	}
+
+	@Test
+	void sync_ShouldPickUpAnInsertThatCommitsAfterHigherIds() {
+		String early = UUID.randomUUID().toString();
+		String late = UUID.randomUUID().toString();
+		when(statementRepository.countLiveRetrievalTokens(any())).thenReturn(2L);
+		when(statementRepository.streamLiveRetrievalTokens(eq(0), any()))
+				.thenReturn(Stream.of(new RetrievalTokenRow(1, early), new RetrievalTokenRow(5000, UUID.randomUUID().toString())));
+		retrievalTokenFilter.rebuild();
+		//Id 2 was handed out before 5000 but committed after the build read past it
+		when(statementRepository.streamLiveRetrievalTokens(eq(5000), any(), any()))
+				.thenReturn(Stream.of(new RetrievalTokenRow(2, late)));
+
+		retrievalTokenFilter.sync();
+
+		verify(statementRepository).streamLiveRetrievalTokens(eq(5000), argThat(ids -> ids.size() == 4998 && ids.contains(2)), any());
+		assertTrue(retrievalTokenFilter.mightContain(early));
+		assertTrue(retrievalTokenFilter.mightContain(late));
+	}
+
+	private void awaitWaitingMisses(int count) throws InterruptedException {
+		for (int i = 0; i < 100 && meterRegistry.get(RetrievalTokenFilter.WAITING_GAUGE).gauge().value() < count; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(count, meterRegistry.get(RetrievalTokenFilter.WAITING_GAUGE).gauge().value());
+	}
+}
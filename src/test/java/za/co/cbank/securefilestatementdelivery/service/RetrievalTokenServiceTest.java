@@ -0,0 +1,110 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import za.co.cbank.securefilestatementdelivery.entity.RevokedRetrievalToken;
+import za.co.cbank.securefilestatementdelivery.exception.InvalidRequestException;
+import za.co.cbank.securefilestatementdelivery.repository.RevokedRetrievalTokenRepository;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RetrievalTokenServiceTest {
+
+	private static final String OLD_KEY = "2024:MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY=";
+	private static final String NEW_KEY = "2025:ZmVkY2JhOTg3NjU0MzIxMGZlZGNiYTk4NzY1NDMyMTA=";
+
+	@Mock
+	private RevokedRetrievalTokenRepository revokedTokenRepository;
+
+	@Test
+	void verify_ShouldReturnClaims_ForTokenSignedWithARetiringKey() {
+		String token = service(List.of(OLD_KEY), "2024").issue(1000000003, "a.pdf", Instant.now().plus(1, ChronoUnit.HOURS));
+
+		RetrievalTokenClaims claims = service(List.of(NEW_KEY, OLD_KEY), "2025").verify(token);
+
+		assertEquals(1000000003, claims.accountId());
+		assertEquals("a.pdf", claims.filename());
+		assertThrows(InvalidRequestException.class, () -> service(List.of(NEW_KEY), "2025").verify(token),
+				"Tokens signed with a key that has been removed should be refused");
+	}
+
+	@Test
+	void issue_ShouldReturnATimeOrderedUuid_WhoseIssueTimeCanBeReadBack() {
+		RetrievalTokenService retrievalTokenService = new RetrievalTokenService(RetrievalTokenService.Format.UUID, List.of(), "", revokedTokenRepository);
+		long before = System.currentTimeMillis();
+
+		String token = retrievalTokenService.issue(1000000003, "a.pdf", Instant.now().plus(1, ChronoUnit.HOURS));
+
+		UUID uuid = UUID.fromString(token);
+		assertEquals(7, uuid.version());
+		assertEquals(2, uuid.variant());
+		long issuedAt = retrievalTokenService.issuedAtMillis(token);
+		assertTrue(issuedAt >= before && issuedAt <= System.currentTimeMillis());
+		assertEquals(-1, retrievalTokenService.issuedAtMillis(UUID.randomUUID().toString()));
+		assertEquals(-1, retrievalTokenService.issuedAtMillis("not-a-token"));
+	}
+
+	@Test
+	void verify_ShouldRejectTamperedAndExpiredTokens() {
+		RetrievalTokenService retrievalTokenService = service(List.of(NEW_KEY), "2025");
+		String token = retrievalTokenService.issue(1000000003, "a.pdf", Instant.now().plus(1, ChronoUnit.HOURS));
+		String otherFile = retrievalTokenService.issue(1000000003, "b.pdf", Instant.now().plus(1, ChronoUnit.HOURS));
+		String tampered = token.substring(0, token.lastIndexOf('.')) + otherFile.substring(otherFile.lastIndexOf('.'));
+		String expired = retrievalTokenService.issue(1000000003, "a.pdf", Instant.now().minusSeconds(1));
+
+		assertTrue(retrievalTokenService.isSigned(token));
+		assertThrows(InvalidRequestException.class, () -> retrievalTokenService.verify(tampered));
+		assertThrows(InvalidRequestException.class, () -> retrievalTokenService.verify(expired));
+		assertThrows(InvalidRequestException.class, () -> retrievalTokenService.verify("2025.not-a-token.at-all"));
+	}
+
+	@Test
+	void revoke_ShouldRejectTokenUntilItWouldHaveExpired() {
+		RetrievalTokenService retrievalTokenService = service(List.of(NEW_KEY), "2025");
+		String token = retrievalTokenService.issue(1000000003, "a.pdf", Instant.now().plus(1, ChronoUnit.HOURS));
+		String tokenId = retrievalTokenService.verify(token).tokenId();
+
+		retrievalTokenService.revoke(token);
+
+		verify(revokedTokenRepository).save(any(RevokedRetrievalToken.class));
+		assertThrows(InvalidRequestException.class, () -> retrievalTokenService.verify(token));
+
+		when(revokedTokenRepository.findByExpiresAtAfter(any())).thenReturn(List.of(
+				RevokedRetrievalToken.builder().tokenId(tokenId).expiresAt(Instant.now().plus(1, ChronoUnit.HOURS)).build()));
+		retrievalTokenService.refreshRevocations();
+		assertEquals(1, retrievalTokenService.revokedTokenCount());
+		assertThrows(InvalidRequestException.class, () -> retrievalTokenService.verify(token));
+	}
+
+	@Test
+	void issue_ShouldUseUuids_WhenSignedTokensAreOff() {
+		RetrievalTokenService retrievalTokenService = new RetrievalTokenService(RetrievalTokenService.Format.UUID, List.of(), "", revokedTokenRepository);
+
+		String token = retrievalTokenService.issue(1000000003, "a.pdf", Instant.now());
+
+		assertFalse(retrievalTokenService.isSigned(token));
+		assertDoesNotThrow(() -> java.util.UUID.fromString(token));
+	}
+
+	@Test
+	void constructor_ShouldRefuseSignedTokens_WithoutAConfiguredKey() {
+		IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> service(List.of(""), ""));
+
+		assertTrue(thrown.getMessage().contains("CONFIG_RETRIEVAL_TOKEN_SIGNING_KEYS"));
+	}
+
+	private RetrievalTokenService service(List<String> keys, String activeKeyId) {
+		return new RetrievalTokenService(RetrievalTokenService.Format.SIGNED, keys, activeKeyId, revokedTokenRepository);
+	}
+}
@@ -0,0 +1,114 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.tck.TestObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.util.List;
+
+import static io.micrometer.observation.tck.TestObservationRegistryAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class S3MultipartUploadOutputStreamTest {
+
+	private static final int PART_SIZE = S3MultipartUploadOutputStream.MIN_PART_SIZE;
+
+	@Mock
+	private S3Client s3Client;
+
+	@Test
+	void close_ShouldUseSinglePut_WhenObjectFitsInOnePart() throws Exception {
+		S3MultipartUploadOutputStream stream = new S3MultipartUploadOutputStream(s3Client, "files", "a.pdf", "application/pdf", PART_SIZE, ObservationRegistry.NOOP);
+
+		stream.write(new byte[1024]);
+		stream.close();
+
+		ArgumentCaptor<RequestBody> bodyCaptor = ArgumentCaptor.forClass(RequestBody.class);
+		verify(s3Client).putObject(any(PutObjectRequest.class), bodyCaptor.capture());
+		assertEquals(1024L, bodyCaptor.getValue().optionalContentLength().orElseThrow());
+		verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+	}
+
+	@Test
+	void close_ShouldCompleteMultipartUpload_WhenObjectSpansParts() throws Exception {
+		when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+				.thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+		when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+				.thenReturn(UploadPartResponse.builder().eTag("etag").build());
+		S3MultipartUploadOutputStream stream = new S3MultipartUploadOutputStream(s3Client, "files", "a.pdf", "application/pdf", PART_SIZE, ObservationRegistry.NOOP);
+
+		stream.write(new byte[PART_SIZE * 2 + 10]);
+		stream.close();
+
+		verify(s3Client, times(3)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+		ArgumentCaptor<CompleteMultipartUploadRequest> completeCaptor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+		verify(s3Client).completeMultipartUpload(completeCaptor.capture());
+		List<CompletedPart> parts = completeCaptor.getValue().multipartUpload().parts();
+		assertEquals(List.of(1, 2, 3), parts.stream().map(CompletedPart::partNumber).toList());
+		verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+	}
+
+	@Test
+	void close_ShouldObserveEachStorageRequest() throws Exception {
+		when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+				.thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+		when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+				.thenReturn(UploadPartResponse.builder().eTag("etag").build());
+		TestObservationRegistry observationRegistry = TestObservationRegistry.create();
+		S3MultipartUploadOutputStream stream = new S3MultipartUploadOutputStream(s3Client, "files", "a.pdf", "application/pdf", PART_SIZE, observationRegistry);
+
+		stream.write(new byte[PART_SIZE + 1]);
+		stream.close();
+
+		assertThat(observationRegistry)
+				.hasNumberOfObservationsWithNameEqualTo(S3MultipartUploadOutputStream.REQUEST_OBSERVATION, 4)
+				.hasObservationWithNameEqualTo(S3MultipartUploadOutputStream.REQUEST_OBSERVATION)
+				.that()
+				.hasLowCardinalityKeyValue("operation", "create_multipart_upload");
+	}
+
+	@Test
+	void abort_ShouldDiscardPartsAlreadyUploaded() throws Exception {
+		when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+				.thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+		when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+				.thenReturn(UploadPartResponse.builder().eTag("etag").build());
+		S3MultipartUploadOutputStream stream = new S3MultipartUploadOutputStream(s3Client, "files", "a.pdf", "application/pdf", PART_SIZE, ObservationRegistry.NOOP);
+
+		stream.write(new byte[PART_SIZE + 1]);
+		stream.abort();
+		stream.close();
+
+		verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+		verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+	}
+
+	@Test
+	void close_ShouldAbortTheUpload_WhenCompletingFailsOnTheClientSide() throws Exception {
+		when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+				.thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+		when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+				.thenReturn(UploadPartResponse.builder().eTag("etag").build());
+		when(s3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+				.thenThrow(SdkClientException.create("Connection reset"));
+		S3MultipartUploadOutputStream stream = new S3MultipartUploadOutputStream(s3Client, "files", "a.pdf", "application/pdf", PART_SIZE, ObservationRegistry.NOOP);
+
+		stream.write(new byte[PART_SIZE + 1]);
+		assertThrows(SdkClientException.class, stream::close);
+		stream.abort();
+
+		verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+	}
+}
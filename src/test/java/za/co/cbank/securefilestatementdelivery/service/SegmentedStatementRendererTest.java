@@ -0,0 +1,127 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.exception.FileCreationException;
+import za.co.cbank.securefilestatementdelivery.repository.TransactionDigestRow;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedStatementRendererTest {
+	private static final LocalDate PERIOD_FROM = LocalDate.of(2025, 1, 1);
+	private static final LocalDate PERIOD_TO = LocalDate.of(2025, 1, 31);
+	private static final int ROWS_PER_SEGMENT = 100;
+
+	private final ForkJoinPool segmentPool = new ForkJoinPool(2);
+	private final DirectStatementRenderer renderer = new DirectStatementRenderer();
+	private final CustomerAccount account = CustomerAccount.builder()
+			.accountId(1000000001)
+			.firstName("John")
+			.lastName("Doe")
+			.idNumber("9001010000083")
+			.build();
+
+	@TempDir
+	private Path scratchDir;
+
+	@AfterEach
+	void tearDown() {
+		segmentPool.shutdownNow();
+	}
+
+	@Test
+	void render_ShouldMergeTheSegmentsInOrder_WithOneHeaderAndOneClosingBalance() throws IOException {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < 5 * ROWS_PER_SEGMENT; i++) {
+			transactions.add(Transaction.builder().transactionId(i).postDate(PERIOD_FROM.plusDays(i / 20))
+					.description("ROW " + i + " END").amount(new BigDecimal("1.00")).drOrCr("CR").customerAccount(account).build());
+		}
+		List<StatementSegment> segments = segments(transactions);
+
+		try (PDDocument document = segmentedRenderer().render(renderer, segments,
+				segment -> renderer.format(content(transactions, segment)))) {
+			String text = new PDFTextStripper().getText(document);
+			assertEquals(1, occurrences(text, "Account Statement"));
+			assertEquals(1, occurrences(text, "Opening balance 10.00"));
+			assertTrue(text.contains("Balance 510.00"));
+			int previous = -1;
+			for (int i = 0; i < transactions.size(); i++) {
+				int position = text.indexOf("ROW " + i + " END");
+				assertTrue(position > previous, "Row " + i + " in order");
+				previous = position;
+			}
+		}
+	}
+
+	@Test
+	void render_ShouldReadEachSegmentOnTheCallingThread_InOrder() throws IOException {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < 4 * ROWS_PER_SEGMENT; i++) {
+			transactions.add(Transaction.builder().transactionId(i).postDate(PERIOD_FROM).description("ROW " + i)
+					.amount(BigDecimal.ONE).drOrCr("CR").customerAccount(account).build());
+		}
+		Thread caller = Thread.currentThread();
+		List<Integer> formatted = new ArrayList<>();
+
+		try (PDDocument document = segmentedRenderer().render(renderer, segments(transactions), segment -> {
+			assertSame(caller, Thread.currentThread(), "Segments are read in the caller's transaction");
+			formatted.add(segment.index());
+			return renderer.format(content(transactions, segment));
+		})) {
+			assertTrue(document.getNumberOfPages() >= 4);
+		}
+		assertEquals(List.of(0, 1, 2, 3), formatted);
+	}
+
+	@Test
+	void render_ShouldFail_WhenASegmentFails() {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < 3 * ROWS_PER_SEGMENT; i++) {
+			transactions.add(Transaction.builder().transactionId(i).postDate(PERIOD_FROM).description("ROW " + i)
+					.amount(BigDecimal.ONE).drOrCr("DR").customerAccount(account).build());
+		}
+		SegmentedStatementRenderer segmentedRenderer = segmentedRenderer();
+
+		assertThrows(FileCreationException.class, () -> segmentedRenderer.render(renderer, segments(transactions), segment -> {
+			if (segment.index() == 1) throw new FileCreationException("Segment failed");
+			return renderer.format(content(transactions, segment));
+		}));
+	}
+
+	private SegmentedStatementRenderer segmentedRenderer() {
+		return new SegmentedStatementRenderer(segmentPool, 0, scratchDir.toString(), 1);
+	}
+
+	private List<StatementSegment> segments(List<Transaction> transactions) {
+		StatementSegment.Planner planner = new StatementSegment.Planner(new BigDecimal("10.00"), ROWS_PER_SEGMENT);
+		transactions.forEach(trn -> planner.add(new TransactionDigestRow(
+				trn.getTransactionId(), trn.getPostDate(), trn.getAmount(), trn.getDrOrCr())));
+		return planner.segments(PERIOD_TO);
+	}
+
+	//Stands in for the repository's keyset query
+	private StatementContent content(List<Transaction> transactions, StatementSegment segment) {
+		List<Transaction> rows = transactions.subList(segment.index() * ROWS_PER_SEGMENT,
+				Math.min(transactions.size(), (segment.index() + 1) * ROWS_PER_SEGMENT));
+		return new StatementContent(account, PERIOD_FROM, PERIOD_TO, segment.openingBalance(), rows.iterator(), segment.first(), segment.last());
+	}
+
+	private static int occurrences(String text, String part) {
+		int count = 0;
+		for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) count++;
+		return count;
+	}
+}
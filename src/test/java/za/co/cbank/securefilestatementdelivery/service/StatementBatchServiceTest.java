@@ -0,0 +1,139 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import za.co.cbank.securefilestatementdelivery.dto.StatementBatchJobDTO;
+import za.co.cbank.securefilestatementdelivery.dto.StatementBatchRequestDTO;
+import za.co.cbank.securefilestatementdelivery.exception.DatabaseEntityException;
+import za.co.cbank.securefilestatementdelivery.exception.InvalidRequestException;
+import za.co.cbank.securefilestatementdelivery.repository.CustomerAccountRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StatementBatchServiceTest {
+
+	@Mock
+	private StatementService statementService;
+
+	@Mock
+	private CustomerAccountRepository customerAccountRepository;
+
+	private ThreadPoolTaskExecutor renderExecutor;
+	private ThreadPoolTaskExecutor uploadExecutor;
+	private StatementBatchService statementBatchService;
+
+	@BeforeEach
+	void setUp() {
+		renderExecutor = executor(2);
+		uploadExecutor = executor(2);
+		StatementPipeline statementPipeline = new StatementPipeline(renderExecutor, uploadExecutor, new SimpleMeterRegistry(), 2);
+		statementBatchService = new StatementBatchService(statementService, customerAccountRepository, statementPipeline);
+		ReflectionTestUtils.setField(statementBatchService, "maxAccounts", 100);
+		ReflectionTestUtils.setField(statementBatchService, "jobRetentionMins", 60);
+		ReflectionTestUtils.setField(statementBatchService, "maxReportedFailures", 100);
+	}
+
+	@AfterEach
+	void tearDown() {
+		renderExecutor.shutdown();
+		uploadExecutor.shutdown();
+	}
+
+	@Test
+	void submitBatch_ShouldRecordPerAccountFailures() throws Exception {
+		when(statementService.renderStatement(1, null, null)).thenReturn(new RenderedStatement(1, "9001010000083", null, null, null, null, new PDDocument()));
+		when(statementService.renderStatement(2, null, null)).thenThrow(new DatabaseEntityException("No transactions found for account"));
+		when(statementService.publishStatement(any(RenderedStatement.class))).thenReturn(Map.of("retrievalLink", "link"));
+
+		StatementBatchJobDTO submitted = statementBatchService.submitBatch(
+				StatementBatchRequestDTO.builder().accountIds(List.of(1, 2, 1)).build());
+		StatementBatchJobDTO finished = awaitFinished(submitted.getJobId());
+
+		assertEquals(2, finished.getTotalAccounts(), "Duplicate account ids should be ignored");
+		assertEquals(1, finished.getCompletedAccounts());
+		assertEquals(1, finished.getFailedAccounts());
+		assertEquals("COMPLETED_WITH_FAILURES", finished.getStatus());
+		assertEquals(2, finished.getFailures().getFirst().getAccountId());
+		assertEquals("No transactions found for account", finished.getFailures().getFirst().getReason());
+	}
+
+	@Test
+	void submitBatch_ShouldCountEveryFailure_ButOnlyListTheFirstFew() throws Exception {
+		ReflectionTestUtils.setField(statementBatchService, "maxReportedFailures", 3);
+		when(statementService.renderStatement(any(), any(), any())).thenThrow(new DatabaseEntityException("No transactions found for account"));
+
+		StatementBatchJobDTO submitted = statementBatchService.submitBatch(
+				StatementBatchRequestDTO.builder().accountIds(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10)).build());
+		StatementBatchJobDTO finished = awaitFinished(submitted.getJobId());
+
+		assertEquals(10, finished.getFailedAccounts());
+		assertEquals(3, finished.getFailures().size());
+		assertEquals("COMPLETED_WITH_FAILURES", finished.getStatus());
+	}
+
+	@Test
+	void submitBatch_ShouldUseEveryAccount_WhenAllAccountsSelected() throws Exception {
+		when(customerAccountRepository.findAllAccountIds()).thenReturn(List.of(1, 2, 3));
+		when(statementService.renderStatement(any(), any(), any())).thenAnswer(invocation ->
+				new RenderedStatement(invocation.getArgument(0), "9001010000083", null, null, null, null, new PDDocument()));
+
+		StatementBatchJobDTO submitted = statementBatchService.submitBatch(
+				StatementBatchRequestDTO.builder().allAccounts(true).build());
+		StatementBatchJobDTO finished = awaitFinished(submitted.getJobId());
+
+		assertEquals(3, finished.getCompletedAccounts());
+		assertEquals("COMPLETED", finished.getStatus());
+		verify(statementService, times(3)).publishStatement(any(RenderedStatement.class));
+	}
+
+	@Test
+	void submitBatch_ShouldRejectEmptySelection() {
+		assertThrows(InvalidRequestException.class,
+				() -> statementBatchService.submitBatch(new StatementBatchRequestDTO()));
+	}
+
+	@Test
+	void submitBatch_ShouldRejectPeriodEndingBeforeItStarts() {
+		StatementBatchRequestDTO request = StatementBatchRequestDTO.builder()
+				.accountIds(List.of(1))
+				.periodFrom(LocalDate.of(2025, 2, 1))
+				.periodTo(LocalDate.of(2025, 1, 1))
+				.build();
+
+		assertThrows(InvalidRequestException.class, () -> statementBatchService.submitBatch(request));
+		verifyNoInteractions(statementService);
+	}
+
+	private StatementBatchJobDTO awaitFinished(String jobId) throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			StatementBatchJobDTO job = statementBatchService.getBatchJob(jobId);
+			if (job.getFinishedAt() != null) return job;
+			Thread.sleep(50);
+		}
+		fail("Batch did not finish in time");
+		return null;
+	}
+
+	private ThreadPoolTaskExecutor executor(int threads) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.initialize();
+		return executor;
+	}
+}
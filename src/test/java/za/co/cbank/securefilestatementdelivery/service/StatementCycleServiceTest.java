@@ -0,0 +1,308 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import za.co.cbank.securefilestatementdelivery.dto.StatementCycleDTO;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.exception.DatabaseEntityException;
+import za.co.cbank.securefilestatementdelivery.repository.CustomerAccountRepository;
+import za.co.cbank.securefilestatementdelivery.repository.TransactionRepository;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+//Runs on its own in-memory H2 in PostgreSQL mode, which has the FOR UPDATE SKIP LOCKED and ON CONFLICT the claims rely on; the S3 side is mocked
+@DataJpaTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:statement_cycles;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StatementCycleServiceTest {
+	private static final List<Integer> ACCOUNT_IDS = List.of(1000000101, 1000000102, 1000000103);
+	private static final LocalDate PERIOD_FROM = LocalDate.of(2025, 1, 1);
+	private static final LocalDate PERIOD_TO = LocalDate.of(2025, 1, 31);
+
+	@Autowired
+	private CustomerAccountRepository accountRepository;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private NamedParameterJdbcTemplate jdbcTemplate;
+	private final List<ThreadPoolTaskExecutor> executors = new ArrayList<>();
+	//Whole seconds, so the database stores exactly the times the service compares against
+	private final TestClock clock = new TestClock(Instant.now().truncatedTo(ChronoUnit.SECONDS));
+	private final Set<Integer> cycleIds = new HashSet<>();
+
+	@BeforeEach
+	void setUp() {
+		jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+		//The third account has nothing in January, so it gets no item
+		transaction(account(ACCOUNT_IDS.get(0)), LocalDate.of(2025, 1, 10));
+		transaction(account(ACCOUNT_IDS.get(1)), LocalDate.of(2025, 1, 20));
+		transaction(account(ACCOUNT_IDS.get(2)), LocalDate.of(2025, 2, 5));
+	}
+
+	@AfterEach
+	void tearDown() {
+		executors.forEach(ThreadPoolTaskExecutor::shutdown);
+		cleanUp();
+	}
+
+	@Test
+	void startCycle_ShouldCreateOneItemPerAccountWithTransactions_OnlyOnce() {
+		StatementCycleService node = node("node-a", mock(StatementService.class), 600, 3);
+
+		StatementCycleDTO started = startCycle(node);
+		StatementCycleDTO again = startCycle(node);
+
+		assertEquals(started.getCycleId(), again.getCycleId());
+		assertEquals(2, again.getTotalAccounts());
+		assertEquals(2, again.getPendingAccounts());
+		assertEquals("RUNNING", again.getStatus());
+	}
+
+	@Test
+	void claim_ShouldNotHandTheSameItemToTwoNodes() {
+		StatementCycleService nodeA = node("node-a", mock(StatementService.class), 600, 3);
+		StatementCycleService nodeB = node("node-b", mock(StatementService.class), 600, 3);
+		Integer cycleId = startCycle(nodeA).getCycleId();
+
+		List<StatementCycleService.CycleItem> claimedByA = nodeA.claim(1);
+		List<StatementCycleService.CycleItem> claimedByB = nodeB.claim(5);
+
+		assertEquals(1, claimedByA.size());
+		assertEquals(1, claimedByB.size());
+		assertNotEquals(claimedByA.getFirst().accountId(), claimedByB.getFirst().accountId());
+		assertEquals(PERIOD_TO, claimedByB.getFirst().periodTo());
+		assertTrue(nodeA.claim(5).isEmpty());
+		assertEquals(Map.of("node-a", 1, "node-b", 1), nodeA.getCycle(cycleId).getActiveNodes());
+	}
+
+	@Test
+	void claimWork_ShouldCompleteTheCycle() {
+		StatementService statementService = publishingStatementService(7);
+		StatementCycleService node = node("node-a", statementService, 600, 3);
+		Integer cycleId = startCycle(node).getCycleId();
+
+		node.claimWork();
+
+		StatementCycleDTO cycle = awaitCycle(node, cycleId, c -> "COMPLETED".equals(c.getStatus()));
+		assertEquals(2, cycle.getCompletedAccounts());
+		assertEquals(0, cycle.getRetries());
+		assertNotNull(cycle.getFinishedAt());
+		verify(statementService).renderStatement(ACCOUNT_IDS.get(0), PERIOD_FROM, PERIOD_TO);
+	}
+
+	@Test
+	void claimWork_ShouldRetryAFailedStatement_UntilTheRetryBudgetIsSpent() {
+		StatementService statementService = publishingStatementService(7);
+		when(statementService.renderStatement(ACCOUNT_IDS.get(1), PERIOD_FROM, PERIOD_TO)).thenThrow(new DatabaseEntityException("Render failed"));
+		StatementCycleService node = node("node-a", statementService, 600, 2);
+		Integer cycleId = startCycle(node).getCycleId();
+
+		node.claimWork();
+		awaitCycle(node, cycleId, c -> c.getInProgressAccounts() == 0);
+		node.claimWork();
+
+		StatementCycleDTO cycle = awaitCycle(node, cycleId, c -> !"RUNNING".equals(c.getStatus()));
+		assertEquals("COMPLETED_WITH_FAILURES", cycle.getStatus());
+		assertEquals(1, cycle.getCompletedAccounts());
+		assertEquals(1, cycle.getFailedAccounts());
+		assertEquals(1, cycle.getRetries());
+		assertEquals(ACCOUNT_IDS.get(1), cycle.getFailures().getFirst().getAccountId());
+		assertEquals("Render failed", cycle.getFailures().getFirst().getReason());
+		verify(statementService, times(2)).renderStatement(ACCOUNT_IDS.get(1), PERIOD_FROM, PERIOD_TO);
+	}
+
+	@Test
+	void expireLeases_ShouldHandItemsToAnotherNode_AndIgnoreTheStaleNode() throws Exception {
+		CountDownLatch stalled = new CountDownLatch(1);
+		StatementService stalledService = publishingStatementService(1);
+		when(stalledService.renderStatement(anyInt(), any(), any())).thenAnswer(invocation -> {
+			stalled.await();
+			return rendered(invocation.getArgument(0));
+		});
+		StatementCycleService stalledNode = node("node-a", stalledService, 60, 3);
+		StatementCycleService node = node("node-b", publishingStatementService(2), 60, 3);
+		Integer cycleId = startCycle(node).getCycleId();
+
+		stalledNode.claimWork();
+		clock.advance(Duration.ofSeconds(61));
+		node.expireLeases();
+		assertEquals(2, node.getCycle(cycleId).getPendingAccounts());
+		node.claimWork();
+		awaitCycle(node, cycleId, c -> "COMPLETED".equals(c.getStatus()));
+		stalled.countDown();
+		awaitNothingHeld(stalledNode);
+
+		List<Integer> statementIds = jdbcTemplate.queryForList(
+				"SELECT statement_id FROM statement_cycle_items WHERE cycle_id = :cycleId", Map.of("cycleId", cycleId), Integer.class);
+		assertEquals(List.of(2, 2), statementIds);
+		assertEquals(2, node.getCycle(cycleId).getRetries());
+	}
+
+	@Test
+	void renewLeases_ShouldKeepItemsWithANodeThatIsStillWorkingOnThem() throws Exception {
+		CountDownLatch slow = new CountDownLatch(1);
+		StatementService slowService = publishingStatementService(3);
+		when(slowService.renderStatement(anyInt(), any(), any())).thenAnswer(invocation -> {
+			slow.await();
+			return rendered(invocation.getArgument(0));
+		});
+		StatementCycleService node = node("node-a", slowService, 60, 3);
+		StatementCycleService otherNode = node("node-b", publishingStatementService(4), 60, 3);
+		Integer cycleId = startCycle(node).getCycleId();
+
+		node.claimWork();
+		//Renewed before the first lease runs out, then swept after it would have
+		clock.advance(Duration.ofSeconds(50));
+		node.renewLeases();
+		clock.advance(Duration.ofSeconds(50));
+		otherNode.expireLeases();
+		assertEquals(Map.of("node-a", 2), otherNode.getCycle(cycleId).getActiveNodes());
+		slow.countDown();
+
+		StatementCycleDTO cycle = awaitCycle(node, cycleId, c -> "COMPLETED".equals(c.getStatus()));
+		assertEquals(0, cycle.getRetries());
+	}
+
+	private StatementCycleService node(String nodeId, StatementService statementService, long leaseSecs, int maxAttempts) {
+		ThreadPoolTaskExecutor renderExecutor = executor();
+		ThreadPoolTaskExecutor uploadExecutor = executor();
+		StatementPipeline statementPipeline = new StatementPipeline(renderExecutor, uploadExecutor, new SimpleMeterRegistry(), 1);
+		return new StatementCycleService(jdbcTemplate, transactionManager, statementService, statementPipeline,
+				true, nodeId, leaseSecs, maxAttempts, 0, 10, clock);
+	}
+
+	private StatementCycleDTO startCycle(StatementCycleService node) {
+		StatementCycleDTO cycle = node.startCycle(PERIOD_FROM, PERIOD_TO);
+		cycleIds.add(cycle.getCycleId());
+		return cycle;
+	}
+
+	private static StatementService publishingStatementService(int statementId) {
+		StatementService statementService = mock(StatementService.class);
+		when(statementService.renderStatement(anyInt(), any(), any())).thenAnswer(invocation -> rendered(invocation.getArgument(0)));
+		when(statementService.publishStatement(any(RenderedStatement.class))).thenReturn(Map.of("retrievalLink", "link", "statementId", statementId));
+		return statementService;
+	}
+
+	private static RenderedStatement rendered(Integer accountId) {
+		return new RenderedStatement(accountId, "9001010000083", PERIOD_FROM, PERIOD_TO, null, null, new PDDocument());
+	}
+
+	private static StatementCycleDTO awaitCycle(StatementCycleService node, Integer cycleId, Predicate<StatementCycleDTO> condition) {
+		StatementCycleDTO cycle = node.getCycle(cycleId);
+		for (int i = 0; i < 100 && !condition.test(cycle); i++) {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			cycle = node.getCycle(cycleId);
+		}
+		return cycle;
+	}
+
+	//The node's completion callbacks have all run once it holds no items
+	private static void awaitNothingHeld(StatementCycleService node) throws InterruptedException {
+		for (int i = 0; i < 100 && node.heldItemCount() > 0; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(0, node.heldItemCount());
+	}
+
+	private CustomerAccount account(Integer accountId) {
+		return accountRepository.saveAndFlush(CustomerAccount.builder().accountId(accountId).firstName("Cycle").idNumber("90010" + accountId).build());
+	}
+
+	private void transaction(CustomerAccount account, LocalDate postDate) {
+		transactionRepository.saveAndFlush(Transaction.builder()
+				.postDate(postDate).amount(new BigDecimal("10.00")).drOrCr("CR").customerAccount(account).build());
+	}
+
+	//Only what this test created: the cycles it started and the accounts set up for it
+	private void cleanUp() {
+		if (!cycleIds.isEmpty()) {
+			Map<String, Object> cycles = Map.of("cycleIds", cycleIds);
+			jdbcTemplate.update("DELETE FROM statement_cycle_items WHERE cycle_id IN (:cycleIds)", cycles);
+			jdbcTemplate.update("DELETE FROM statement_cycles WHERE cycle_id IN (:cycleIds)", cycles);
+		}
+		Map<String, Object> params = Map.of("accountIds", ACCOUNT_IDS);
+		jdbcTemplate.update("DELETE FROM balance_checkpoints WHERE account_id IN (:accountIds)", params);
+		jdbcTemplate.update("DELETE FROM transactions WHERE account_id IN (:accountIds)", params);
+		jdbcTemplate.update("DELETE FROM customer_accounts WHERE account_id IN (:accountIds)", params);
+	}
+
+	//Moved on by hand, so a lease runs out exactly when the test says
+	private static final class TestClock extends Clock {
+		private volatile Instant instant;
+
+		TestClock(Instant instant) {
+			this.instant = instant;
+		}
+
+		void advance(Duration duration) {
+			instant = instant.plus(duration);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneId.systemDefault();
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Instant instant() {
+			return instant;
+		}
+	}
+
+	private ThreadPoolTaskExecutor executor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(1);
+		executor.setMaxPoolSize(1);
+		executor.initialize();
+		executors.add(executor);
+		return executor;
+	}
+}
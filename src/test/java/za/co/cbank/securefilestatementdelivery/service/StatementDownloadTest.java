@@ -0,0 +1,56 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementDownloadTest {
+
+	private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(Unpooled.buffer().alloc());
+
+	@Test
+	void writeTo_ShouldCopyEveryChunkAndReleaseIt() throws Exception {
+		List<ByteBuf> chunks = List.of(chunk("%PDF-"), chunk("1.7"));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		new StatementDownload(8, Flux.fromIterable(chunks).map(bufferFactory::wrap)).writeTo(output);
+
+		assertEquals("%PDF-1.7", output.toString(StandardCharsets.UTF_8));
+		chunks.forEach(chunk -> assertEquals(0, chunk.refCnt()));
+	}
+
+	@Test
+	void writeTo_ShouldReleasePrefetchedChunks_WhenClientDisconnects() {
+		List<ByteBuf> chunks = List.of(chunk("a"), chunk("b"), chunk("c"));
+		OutputStream disconnected = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Broken pipe");
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				throw new IOException("Broken pipe");
+			}
+		};
+
+		assertThrows(IOException.class, () ->
+				new StatementDownload(3, Flux.fromIterable(chunks).map(bufferFactory::wrap)).writeTo(disconnected));
+
+		chunks.forEach(chunk -> assertEquals(0, chunk.refCnt(), "Chunks should be returned to the pool"));
+	}
+
+	private ByteBuf chunk(String content) {
+		return Unpooled.copiedBuffer(content, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,139 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementPipelineTest {
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private ThreadPoolTaskExecutor renderExecutor;
+	private ThreadPoolTaskExecutor uploadExecutor;
+	private StatementPipeline statementPipeline;
+
+	@BeforeEach
+	void setUp() {
+		renderExecutor = executor(1);
+		uploadExecutor = executor(1);
+		statementPipeline = new StatementPipeline(renderExecutor, uploadExecutor, meterRegistry, 1);
+	}
+
+	@AfterEach
+	void tearDown() {
+		renderExecutor.shutdown();
+		uploadExecutor.shutdown();
+	}
+
+	@Test
+	void submit_ShouldPauseRendering_WhileTheHandoffQueueIsFull() throws Exception {
+		CountDownLatch uploadsReleased = new CountDownLatch(1);
+		AtomicInteger rendered = new AtomicInteger();
+		AtomicInteger closed = new AtomicInteger();
+		List<CompletableFuture<Integer>> results = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			int statement = i;
+			results.add(statementPipeline.submit(() -> {
+				rendered.incrementAndGet();
+				return (Closeable) closed::incrementAndGet;
+			}, document -> {
+				await(uploadsReleased);
+				return statement;
+			}));
+		}
+
+		//One uploading, one queued and one render thread waiting for room
+		awaitValue(rendered, 3);
+		Thread.sleep(200);
+		assertEquals(3, rendered.get());
+		assertEquals(1.0, meterRegistry.get(StatementPipeline.HANDOFF_DEPTH_GAUGE).gauge().value());
+		assertEquals(1.0, meterRegistry.get(StatementPipeline.UTILISATION_GAUGE).tag("stage", "upload").gauge().value());
+
+		uploadsReleased.countDown();
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(i, results.get(i).get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(5, closed.get());
+		assertEquals(3, statementPipeline.capacity());
+	}
+
+	@Test
+	void submit_ShouldCloseTheRenderedStatementAndFail_WhenPublishingFails() {
+		AtomicInteger closed = new AtomicInteger();
+
+		CompletableFuture<Object> result = statementPipeline.submit(() -> (Closeable) closed::incrementAndGet, document -> {
+			throw new IllegalStateException("Upload failed");
+		});
+
+		ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+		assertEquals("Upload failed", error.getCause().getMessage());
+		assertEquals(1, closed.get());
+	}
+
+	@Test
+	void submit_ShouldAdmitAtMostCapacityAcrossCallers_AndQueueTheRest() throws Exception {
+		CountDownLatch uploadsReleased = new CountDownLatch(1);
+		AtomicInteger rendered = new AtomicInteger();
+		List<CompletableFuture<Integer>> results = new ArrayList<>();
+		//Two callers each asking for the whole capacity, as two batch jobs do
+		for (int i = 0; i < 2 * statementPipeline.capacity(); i++) {
+			int statement = i;
+			results.add(statementPipeline.submit(() -> {
+				rendered.incrementAndGet();
+				return (Closeable) () -> {
+				};
+			}, document -> {
+				await(uploadsReleased);
+				return statement;
+			}));
+		}
+
+		awaitValue(rendered, 3);
+		Thread.sleep(200);
+		assertEquals(3, rendered.get());
+		assertEquals(3.0, meterRegistry.get(StatementPipeline.WAITING_GAUGE).gauge().value());
+		assertEquals(0, statementPipeline.reserve(1), "Waiting submissions get freed slots first");
+
+		uploadsReleased.countDown();
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(i, results.get(i).get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(0.0, meterRegistry.get(StatementPipeline.WAITING_GAUGE).gauge().value());
+		assertEquals(3, statementPipeline.reserve(5), "Every slot is given back once its statement is published");
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void awaitValue(AtomicInteger value, int expected) throws InterruptedException {
+		for (int i = 0; i < 100 && value.get() < expected; i++) {
+			Thread.sleep(50);
+		}
+	}
+
+	private ThreadPoolTaskExecutor executor(int threads) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.initialize();
+		return executor;
+	}
+}
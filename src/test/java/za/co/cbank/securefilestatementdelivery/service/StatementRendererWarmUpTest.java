@@ -0,0 +1,44 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import za.co.cbank.securefilestatementdelivery.exception.FileCreationException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class StatementRendererWarmUpTest {
+
+	private final FileCreationService fileCreationService = new FileCreationService(new PdfRenderingResources("master-key", List.of()));
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void run_ShouldRenderWithEveryRenderer_AndCarryOnPastOneThatFails() {
+		@SuppressWarnings("unchecked")
+		StatementRenderer<Object> brokenRenderer = mock(StatementRenderer.class);
+		when(brokenRenderer.name()).thenReturn("broken");
+		when(brokenRenderer.format(any())).thenThrow(new FileCreationException("No template"));
+		StatementRenderers statementRenderers = new StatementRenderers(List.of(brokenRenderer, new DirectStatementRenderer()), new MockEnvironment());
+
+		new StatementRendererWarmUp(statementRenderers, fileCreationService, meterRegistry, true, 60).run(null);
+
+		assertEquals(1, meterRegistry.get(StatementRendererWarmUp.WARM_UP_TIMER).tags("renderer", "direct", "outcome", "success").timer().count());
+		assertEquals(1, meterRegistry.get(StatementRendererWarmUp.WARM_UP_TIMER).tags("renderer", "broken", "outcome", "failure").timer().count());
+	}
+
+	@Test
+	void run_ShouldDoNothing_WhenDisabled() {
+		@SuppressWarnings("unchecked")
+		StatementRenderer<Object> renderer = mock(StatementRenderer.class);
+		when(renderer.name()).thenReturn("html");
+		StatementRenderers statementRenderers = new StatementRenderers(List.of(renderer), new MockEnvironment());
+
+		new StatementRendererWarmUp(statementRenderers, fileCreationService, meterRegistry, false, 60).run(null);
+
+		verify(renderer, never()).format(any());
+	}
+}
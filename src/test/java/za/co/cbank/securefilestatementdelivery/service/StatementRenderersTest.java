@@ -0,0 +1,31 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementRenderersTest {
+
+	private final HtmlStatementRenderer htmlRenderer = new HtmlStatementRenderer(null, null);
+	private final DirectStatementRenderer directRenderer = new DirectStatementRenderer();
+
+	@Test
+	void forTemplate_ShouldUseTheRendererConfiguredForTheTemplate_AndHtmlOtherwise() {
+		MockEnvironment environment = new MockEnvironment().withProperty("config.statement.renderer.statement", "direct");
+		StatementRenderers statementRenderers = new StatementRenderers(List.of(htmlRenderer, directRenderer), environment);
+
+		assertSame(directRenderer, statementRenderers.forTemplate("statement"));
+		assertSame(htmlRenderer, statementRenderers.forTemplate("letter"));
+	}
+
+	@Test
+	void forTemplate_ShouldFail_ForAnUnknownRenderer() {
+		MockEnvironment environment = new MockEnvironment().withProperty("config.statement.renderer.statement", "latex");
+		StatementRenderers statementRenderers = new StatementRenderers(List.of(htmlRenderer, directRenderer), environment);
+
+		assertThrows(IllegalStateException.class, () -> statementRenderers.forTemplate("statement"));
+	}
+}
@@ -1,32 +1,102 @@
 package za.co.cbank.securefilestatementdelivery.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.persistence.EntityManager;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.context.Context;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Statement;
 import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.repository.CustomerAccountRepository;
+import za.co.cbank.securefilestatementdelivery.repository.StatementRepository;
+import za.co.cbank.securefilestatementdelivery.repository.TransactionDigestRow;
+import za.co.cbank.securefilestatementdelivery.repository.TransactionRepository;
 
 import java.math.BigDecimal;
-import java.util.Arrays;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class StatementServiceTest {
 
 	@Mock
-	private TemplateEngine templateEngine;
+	private StatementRenderers statementRenderers;
+
+	@Mock
+	private StatementRenderer<Object> statementRenderer;
+
+	@Mock
+	private SegmentedStatementRenderer segmentedStatementRenderer;
+
+	@Mock
+	private StatementRepository statementRepository;
+
+	@Mock
+	private TransactionRepository transactionRepository;
+
+	@Mock
+	private CustomerAccountRepository customerAccountRepository;
+
+	@Mock
+	private FileCreationService fileCreationService;
+
+	@Mock
+	private FileStorageService fileStorageService;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	@Mock
+	private EntityManager entityManager;
+
+	@Mock
+	private BalanceCheckpointService balanceCheckpointService;
+
+	@Mock
+	private RetrievalTokenService retrievalTokenService;
+
+	@Mock
+	private RetrievalTokenFilter retrievalTokenFilter;
+
+	@Spy
+	private ObservationRegistry observationRegistry = ObservationRegistry.create();
+
+	@Spy
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
 
 	@InjectMocks
 	private StatementService statementService;
@@ -40,37 +110,172 @@ class StatementServiceTest {
 				.firstName("John")
 				.idNumber("9001010000083")
 				.build();
+		ReflectionTestUtils.setField(statementService, "templateVersion", "1");
 	}
 
 	@Test
-	void formatStatementTransactions_ShouldCalculateCorrectBalance() {
-		List<Transaction> transactions = Arrays.asList(
-				Transaction.builder().amount(new BigDecimal("1000.00")).drOrCr("CR").customerAccount(testAccount).build(),
-				Transaction.builder().amount(new BigDecimal("500.00")).drOrCr("DR").customerAccount(testAccount).build(),
-				Transaction.builder().amount(new BigDecimal("50.00")).drOrCr("CR").customerAccount(testAccount).build()
-		);
-		ArgumentCaptor<Context> contextCaptor = ArgumentCaptor.forClass(Context.class);
+	void renderStatement_ShouldReuseStoredFile_WhenDigestMatches() {
+		LocalDate periodFrom = LocalDate.of(2025, 1, 1);
+		LocalDate periodTo = LocalDate.of(2025, 1, 31);
+		stubPeriod(periodFrom);
+		when(transactionRepository.streamStatementDigestRows(1000000001, periodFrom, periodTo))
+				.thenReturn(Stream.of(new TransactionDigestRow(1, periodFrom, new BigDecimal("100.00"), "CR")));
+		when(statementRepository.findFirstByContentDigestOrderByStatementIdDesc(any()))
+				.thenReturn(Optional.of(Statement.builder().filename("stored.pdf").build()));
+		when(fileStorageService.statementExists("stored.pdf")).thenReturn(true);
 
-		statementService.formatStatementTransactions(transactions);
+		RenderedStatement renderedStatement = statementService.renderStatement(1000000001, periodFrom, periodTo);
 
-		verify(templateEngine).process(eq("statement"), contextCaptor.capture());
+		assertEquals("stored.pdf", renderedStatement.getStoredFilename());
+		assertNull(renderedStatement.getDocument());
+		verify(statementRenderer, never()).format(any());
+		verifyNoInteractions(fileCreationService);
+		assertEquals(1.0, meterRegistry.counter(StatementService.REUSE_COUNTER, "result", "hit").count());
+	}
+
+	@Test
+	void renderStatement_ShouldRenderAgain_WhenStoredFileIsGone() {
+		LocalDate periodFrom = LocalDate.of(2025, 1, 1);
+		LocalDate periodTo = LocalDate.of(2025, 1, 31);
+		stubPeriod(periodFrom);
+		when(transactionRepository.streamStatementDigestRows(1000000001, periodFrom, periodTo)).thenReturn(Stream.empty());
+		when(statementRepository.findFirstByContentDigestOrderByStatementIdDesc(any()))
+				.thenReturn(Optional.of(Statement.builder().filename("deleted.pdf").build()));
+		when(fileStorageService.statementExists("deleted.pdf")).thenReturn(false);
+		when(transactionRepository.streamStatementTransactions(1000000001, periodFrom, periodTo)).thenReturn(Stream.empty());
+
+		RenderedStatement renderedStatement = statementService.renderStatement(1000000001, periodFrom, periodTo);
 
-		Context capturedContext = contextCaptor.getValue();
+		assertNull(renderedStatement.getStoredFilename());
+		assertNotNull(renderedStatement.getContentDigest());
+		verify(statementRenderer).render(any());
+		assertEquals(1.0, meterRegistry.counter(StatementService.REUSE_COUNTER, "result", "miss").count());
+	}
+
+	@Test
+	void renderStatement_ShouldChangeDigest_OnlyWhenTransactionsChange() {
+		LocalDate periodFrom = LocalDate.of(2025, 1, 1);
+		LocalDate periodTo = LocalDate.of(2025, 1, 31);
+		stubPeriod(periodFrom);
+		when(transactionRepository.streamStatementDigestRows(1000000001, periodFrom, periodTo))
+				.thenReturn(Stream.of(new TransactionDigestRow(1, periodFrom, new BigDecimal("100.00"), "CR")))
+				.thenReturn(Stream.of(new TransactionDigestRow(1, periodFrom, new BigDecimal("100.0"), "CR")))
+				.thenReturn(Stream.of(new TransactionDigestRow(1, periodFrom, new BigDecimal("100.01"), "CR")));
+		when(statementRepository.findFirstByContentDigestOrderByStatementIdDesc(any()))
+				.thenReturn(Optional.of(Statement.builder().filename("stored.pdf").build()));
+		when(fileStorageService.statementExists("stored.pdf")).thenReturn(true);
 
-		BigDecimal capturedBalance = (BigDecimal) capturedContext.getVariable("totalBalance");
-		CustomerAccount capturedAccount = (CustomerAccount) capturedContext.getVariable("customerAccount");
+		String first = statementService.renderStatement(1000000001, periodFrom, periodTo).getContentDigest();
+		String sameAmount = statementService.renderStatement(1000000001, periodFrom, periodTo).getContentDigest();
+		String changedAmount = statementService.renderStatement(1000000001, periodFrom, periodTo).getContentDigest();
 
-		assertEquals(0, new BigDecimal("550.00").compareTo(capturedBalance),
-				"The balance should be 550.00");
-		assertEquals("John", capturedAccount.getFirstName());
+		assertEquals(first, sameAmount, "The amount's scale should not change the digest");
+		assertNotEquals(first, changedAmount);
 	}
 
 	@Test
-	void formatStatementTransactions_ShouldReturnEmpty_WhenListIsEmpty() {
-		// Act
-		String result = statementService.formatStatementTransactions(List.of());
+	@SuppressWarnings("unchecked")
+	void renderStatement_ShouldRenderInSegments_AboveTheThreshold() {
+		LocalDate periodFrom = LocalDate.of(2025, 1, 1);
+		LocalDate periodTo = LocalDate.of(2025, 1, 31);
+		ReflectionTestUtils.setField(statementService, "segmentThresholdRows", 4L);
+		ReflectionTestUtils.setField(statementService, "rowsPerSegment", 2);
+		stubPeriod(periodFrom);
+		when(transactionRepository.streamStatementDigestRows(1000000001, periodFrom, periodTo)).thenAnswer(invocation -> Stream.of(
+				new TransactionDigestRow(1, periodFrom, new BigDecimal("100.00"), "CR"),
+				new TransactionDigestRow(2, periodFrom, new BigDecimal("30.00"), "DR"),
+				new TransactionDigestRow(3, periodFrom.plusDays(1), new BigDecimal("5.00"), "CR"),
+				new TransactionDigestRow(4, periodFrom.plusDays(2), new BigDecimal("1.00"), "CR"),
+				new TransactionDigestRow(5, periodFrom.plusDays(2), new BigDecimal("2.00"), "DR")));
+		when(segmentedStatementRenderer.withStatementPermit(any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+		PDDocument merged = new PDDocument();
+		ArgumentCaptor<List<StatementSegment>> segmentsCaptor = ArgumentCaptor.forClass(List.class);
+		ArgumentCaptor<Function<StatementSegment, Object>> formatCaptor = ArgumentCaptor.forClass(Function.class);
+		when(segmentedStatementRenderer.render(eq(statementRenderer), segmentsCaptor.capture(), formatCaptor.capture())).thenReturn(merged);
+
+		RenderedStatement renderedStatement = statementService.renderStatement(1000000001, periodFrom, periodTo);
+
+		assertSame(merged, renderedStatement.getDocument());
+		//Planned again in the repeatable-read transaction the segments are read in
+		verify(transactionRepository, times(2)).streamStatementDigestRows(1000000001, periodFrom, periodTo);
+		verify(transactionManager).getTransaction(argThat(definition ->
+				definition.isReadOnly() && definition.getIsolationLevel() == TransactionDefinition.ISOLATION_REPEATABLE_READ));
+		List<StatementSegment> segments = segmentsCaptor.getValue();
+		assertEquals(3, segments.size());
+		assertEquals(new StatementSegment(0, periodFrom, 1, periodFrom.plusDays(1), 3, BigDecimal.ZERO, true, false), segments.get(0));
+		assertEquals(new StatementSegment(1, periodFrom.plusDays(1), 3, periodFrom.plusDays(2), 5, new BigDecimal("70.00"), false, false), segments.get(1));
+		assertEquals(new StatementSegment(2, periodFrom.plusDays(2), 5, periodTo.plusDays(1), Integer.MIN_VALUE, new BigDecimal("76.00"), false, true), segments.get(2));
+
+		//Each segment reads only its own rows
+		when(transactionRepository.streamStatementSegment(1000000001, periodFrom.plusDays(1), 3, periodFrom.plusDays(2), 5))
+				.thenReturn(Stream.of(Transaction.builder().transactionId(3).build(), Transaction.builder().transactionId(4).build()));
+		List<Integer> formattedIds = new ArrayList<>();
+		when(statementRenderer.format(any())).thenAnswer(invocation -> {
+			StatementContent content = invocation.getArgument(0);
+			assertEquals(new BigDecimal("70.00"), content.openingBalance());
+			assertFalse(content.first());
+			assertFalse(content.last());
+			content.transactions().forEachRemaining(trn -> formattedIds.add(trn.getTransactionId()));
+			return "formatted";
+		});
+
+		assertEquals("formatted", formatCaptor.getValue().apply(segments.get(1)));
+		assertEquals(List.of(3, 4), formattedIds);
+		verify(entityManager, times(2)).detach(any());
+		verify(transactionRepository, never()).streamStatementTransactions(any(), any(), any());
+	}
+
+	@Test
+	void downloadStatementUsingToken_ShouldRejectExpiredToken_WithoutSigningALink() {
+		String token = "6b0d607e-ff22-4c56-b149-f586e528977c";
+		when(retrievalTokenFilter.mightContain(token)).thenReturn(true);
+		when(statementRepository.findByRetrievalToken(token)).thenReturn(Statement.builder()
+				.filename("stored.pdf")
+				.expiresAt(LocalDateTime.now().minusMinutes(1))
+				.build());
+
+		assertThrows(Exception.class, () -> statementService.downloadStatementUsingToken(token));
+		verifyNoInteractions(fileStorageService);
+	}
+
+	@Test
+	void downloadStatementUsingToken_ShouldNotQueryTheDatabase_ForTokenMissingFromTheFilter() {
+		String token = "0f5c39a1-8a61-4d0e-9f4c-7c0b1e2d3a4b";
+		when(retrievalTokenFilter.mightContain(token)).thenReturn(false);
+
+		assertThrows(Exception.class, () -> statementService.downloadStatementUsingToken(token));
+		verifyNoInteractions(statementRepository, fileStorageService);
+	}
+
+	@Test
+	void downloadStatementUsingToken_ShouldAskStorageForTheRequestedRange() throws Exception {
+		String token = "6b0d607e-ff22-4c56-b149-f586e528977c";
+		when(retrievalTokenFilter.mightContain(token)).thenReturn(true);
+		when(statementRepository.findByRetrievalToken(token)).thenReturn(Statement.builder().filename("stored.pdf").build());
+		when(fileStorageService.createPresignedLink("stored.pdf")).thenReturn("http://localhost:9000/files/stored.pdf?X-Amz-Signature=1");
+		List<ClientRequest> requests = new ArrayList<>();
+		ReflectionTestUtils.setField(statementService, "webClient", WebClient.builder().exchangeFunction(request -> {
+			requests.add(request);
+			return Mono.just(ClientResponse.create(HttpStatus.PARTIAL_CONTENT)
+					.header(HttpHeaders.CONTENT_RANGE, "bytes 0-3/16")
+					.header(HttpHeaders.ETAG, "\"abc\"")
+					.body("%PDF")
+					.build());
+		}).build());
+
+		StatementDownload download = statementService.downloadStatementUsingToken(token, "bytes=0-3", "\"old\"").block();
+
+		assertEquals("bytes=0-3", requests.getFirst().headers().getFirst(HttpHeaders.RANGE));
+		assertEquals("\"old\"", requests.getFirst().headers().getFirst(HttpHeaders.IF_NONE_MATCH));
+		assertEquals(HttpStatus.PARTIAL_CONTENT, download.getStatus());
+		assertEquals("bytes 0-3/16", download.getContentRange());
+		assertEquals("\"abc\"", download.getEntityTag());
+	}
 
-		// Assert
-		assertEquals("No transactions, cannot generate statement", result);
+	private void stubPeriod(LocalDate periodFrom) {
+		when(customerAccountRepository.findById(1000000001)).thenReturn(Optional.of(testAccount));
+		when(balanceCheckpointService.findOpeningBalance(1000000001, periodFrom)).thenReturn(BigDecimal.ZERO);
+		when(statementRenderers.forTemplate(StatementService.STATEMENT_TEMPLATE)).thenAnswer(invocation -> statementRenderer);
+		when(statementRenderer.name()).thenReturn(HtmlStatementRenderer.NAME);
 	}
-}
\ No newline at end of file
+}
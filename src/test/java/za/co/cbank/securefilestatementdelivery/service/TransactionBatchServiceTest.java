@@ -0,0 +1,121 @@
+package za.co.cbank.securefilestatementdelivery.service;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import tools.jackson.databind.json.JsonMapper;
+import za.co.cbank.securefilestatementdelivery.dto.TransactionBatchFailureDTO;
+import za.co.cbank.securefilestatementdelivery.dto.TransactionBatchResultDTO;
+import za.co.cbank.securefilestatementdelivery.dto.TransactionDTO;
+import za.co.cbank.securefilestatementdelivery.entity.BalanceCheckpoint;
+import za.co.cbank.securefilestatementdelivery.entity.CustomerAccount;
+import za.co.cbank.securefilestatementdelivery.entity.Transaction;
+import za.co.cbank.securefilestatementdelivery.repository.CustomerAccountRepository;
+import za.co.cbank.securefilestatementdelivery.repository.TransactionRepository;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//The application config pins the Postgres dialect, whose lock clauses H2 cannot parse
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import(BalanceCheckpointService.class)
+class TransactionBatchServiceTest {
+
+	@Autowired
+	private BalanceCheckpointService balanceCheckpointService;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private CustomerAccountRepository accountRepository;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private TransactionBatchService transactionBatchService;
+
+	@BeforeEach
+	void setUp() {
+		//Chunks of two, so a small batch still spans several chunks
+		transactionBatchService = new TransactionBatchService(new NamedParameterJdbcTemplate(dataSource), transactionManager,
+				JsonMapper.builder().build(), 2, 10);
+	}
+
+	@Test
+	void ingestTransactions_ShouldStoreValidRows_AndReportTheOthersByPosition() {
+		CustomerAccount account = accountRepository.saveAndFlush(CustomerAccount.builder().accountId(1000000011).firstName("Dan").idNumber("9001010000091").build());
+		Transaction existing = transactionRepository.saveAndFlush(Transaction.builder()
+				.postDate(LocalDate.of(2025, 1, 10)).amount(new BigDecimal("100.00")).drOrCr("CR").customerAccount(account).build());
+		assertBalances(balanceCheckpointService.findLatestCheckpoint(1000000011).orElseThrow(), "0", "100.00");
+
+		TransactionBatchResultDTO result = transactionBatchService.ingestTransactions(List.of(
+				transaction(1000000011, "2025-02-03", "50.00", "CR"),
+				transaction(999, "2025-02-03", "10.00", "CR"),
+				transaction(1000000011, "2025-02-04", "30.00", "DR"),
+				transaction(1000000011, "2025-02-05", "5.00", "XX")));
+
+		assertEquals(4, result.getReceived());
+		assertEquals(2, result.getInserted());
+		assertEquals(2, result.getFailed());
+		assertEquals(List.of(2, 4), result.getFailures().stream().map(TransactionBatchFailureDTO::getRow).toList());
+		assertEquals("Account not found", result.getFailures().getFirst().getReason());
+
+		entityManager.clear();
+		List<Transaction> stored = transactionRepository.findByCustomerAccount_AccountId(1000000011);
+		assertEquals(3, stored.stream().map(Transaction::getTransactionId).distinct().count(), "Batch ids must not collide with JPA ids");
+		assertEquals(existing.getTransactionId(), stored.stream().map(Transaction::getTransactionId).min(Integer::compare).orElseThrow());
+		BalanceCheckpoint latest = balanceCheckpointService.findLatestCheckpoint(1000000011).orElseThrow();
+		assertEquals(LocalDate.of(2025, 2, 1), latest.getPeriodStart());
+		assertBalances(latest, "100.00", "120.00");
+	}
+
+	@Test
+	void ingestTransactions_ShouldReportMalformedLines_InAnNdjsonUpload() {
+		accountRepository.saveAndFlush(CustomerAccount.builder().accountId(1000000012).firstName("Eve").idNumber("9001010000092").build());
+		String ndjson = """
+				{"accountId":1000000012,"postDate":"2025-03-01","amount":12.50,"drOrCr":"CR","description":"Salary"}
+
+				{"accountId":1000000012,"amount":
+				{"accountId":1000000012,"amount":2.00,"drOrCr":"DR"}
+				""";
+
+		TransactionBatchResultDTO result = transactionBatchService.ingestTransactions(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(3, result.getReceived(), "Blank lines are not rows");
+		assertEquals(2, result.getInserted());
+		assertEquals(2, result.getFailures().getFirst().getRow());
+		assertEquals(2, transactionRepository.findByCustomerAccount_AccountId(1000000012).size());
+	}
+
+	private static TransactionDTO transaction(Integer accountId, String postDate, String amount, String drOrCr) {
+		return TransactionDTO.builder()
+				.accountId(accountId)
+				.postDate(LocalDate.parse(postDate))
+				.amount(new BigDecimal(amount))
+				.drOrCr(drOrCr)
+				.build();
+	}
+
+	private void assertBalances(BalanceCheckpoint checkpoint, String opening, String closing) {
+		assertEquals(0, new BigDecimal(opening).compareTo(checkpoint.getOpeningBalance()), "opening balance for " + checkpoint.getPeriodStart());
+		assertEquals(0, new BigDecimal(closing).compareTo(checkpoint.getClosingBalance()), "closing balance for " + checkpoint.getPeriodStart());
+	}
+}
@@ -0,0 +1,78 @@
+package za.co.cbank.securefilestatementdelivery.web.filter;
+
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitingFilterTest {
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void doFilter_ShouldRejectClient_OnceItsBucketIsEmpty() throws Exception {
+		RateLimitingFilter filter = filter(2, 100, List.of());
+
+		assertEquals(200, request(filter, "10.0.0.1", null));
+		assertEquals(200, request(filter, "10.0.0.1", null));
+		assertEquals(429, request(filter, "10.0.0.1", null));
+		assertEquals(200, request(filter, "10.0.0.2", null), "Other clients keep their own bucket");
+	}
+
+	@Test
+	void doFilter_ShouldIgnoreForwardedFor_WhenPeerIsNotATrustedProxy() throws Exception {
+		RateLimitingFilter filter = filter(1, 100, List.of());
+
+		assertEquals(200, request(filter, "203.0.113.7", "198.51.100.1"));
+		assertEquals(429, request(filter, "203.0.113.7", "198.51.100.2"), "A spoofed header must not buy a fresh bucket");
+		assertEquals(1, filter.trackedClients());
+	}
+
+	@Test
+	void doFilter_ShouldUseRightmostUntrustedHop_WhenBehindTrustedProxies() throws Exception {
+		RateLimitingFilter filter = filter(1, 100, List.of("10.0.0.0/8"));
+
+		assertEquals(200, request(filter, "10.0.0.5", "1.1.1.1, 203.0.113.7, 10.0.0.9"));
+		assertEquals(429, request(filter, "10.0.0.6", "2.2.2.2, 203.0.113.7"), "Client-supplied entries on the left are ignored");
+		assertEquals(200, request(filter, "10.0.0.5", "203.0.113.8"));
+	}
+
+	@Test
+	void buckets_ShouldStayWithinMaxTrackedClients() throws Exception {
+		RateLimitingFilter filter = filter(10, 50, List.of());
+
+		for (int i = 0; i < 1000; i++) {
+			request(filter, "10." + (i / 250) + ".0." + (i % 250), null);
+		}
+
+		assertTrue(filter.trackedClients() <= 50);
+		assertTrue(meterRegistry.get("cache.evictions").tag("cache", "rateLimitBuckets").functionCounter().count() > 0);
+	}
+
+	private int request(RateLimitingFilter filter, String remoteAddress, String forwardedFor) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/public/token");
+		request.setRemoteAddr(remoteAddress);
+		if (forwardedFor != null) request.addHeader("X-Forwarded-For", forwardedFor);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new MockFilterChain());
+		return response.getStatus();
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private RateLimitingFilter filter(int requestsPerMinute, long maxTrackedClients, List<String> trustedProxies) {
+		StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(Map.of("meterRegistry", meterRegistry));
+		ObjectProvider<ProxyManager<String>> localStore = (ObjectProvider) beanFactory.getBeanProvider(ProxyManager.class);
+		return new RateLimitingFilter(requestsPerMinute, maxTrackedClients, 10, 2, 500L, trustedProxies,
+				localStore, beanFactory.getBeanProvider(MeterRegistry.class));
+	}
+}